@@ -0,0 +1,78 @@
+// DecoderBenchmark.java
+// Copyright (c) 2002-2010 Ronald B. Cemer
+// All rights reserved.
+// This software is released under the BSD license.
+// Please see the accompanying LICENSE.txt for details.
+
+package com.roncemer.barcode;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.*;
+
+/**
+  * Benchmark of each decoder on its own.  The input is the run lengths of
+  * rows through the bar codes of both sample sets at every distinct
+  * threshold level, as the scanner would pass them, so most calls find
+  * nothing and a few decode a bar code.
+  *
+  * @author Ronald B. Cemer
+  */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = { "--add-modules", "jdk.incubator.vector" })
+public class DecoderBenchmark {
+	@Param({ "UPCA", "Code39" })
+	public String decoder;
+
+	private BarCodeDecoder barCodeDecoder;
+	private int[][] widths;
+	private int[] counts;
+	private ScanContext context;
+
+	@Setup
+	public void setup() throws Exception {
+		barCodeDecoder = decoder.equals("UPCA")
+			? (BarCodeDecoder)new UPCABarCodeDecoder()
+			: (BarCodeDecoder)new Code39BarCodeDecoder();
+		List<int[]> rows = new ArrayList<int[]>();
+		rows.addAll(Arrays.asList(SampleImages.barCodeRows(SampleImages.load("upc"))));
+		rows.addAll(Arrays.asList(SampleImages.barCodeRows(SampleImages.load("code39"))));
+		List<int[]> widthList = new ArrayList<int[]>();
+		List<Integer> countList = new ArrayList<Integer>();
+		RunLengthExtractor extractor = new RunLengthExtractor();
+		for (int[] row : rows) {
+			int nLevels = extractor.analyze(row, row.length, 16);
+			for (int level = 1; level <= nLevels; level++) {
+				if (!extractor.isDistinct(level)) continue;
+				int[] w = new int[row.length];
+				countList.add(extractor.extract(level, w));
+				widthList.add(w);
+			}
+		}
+		widths = widthList.toArray(new int[widthList.size()][]);
+		counts = new int[widths.length];
+		for (int i = 0; i < counts.length; i++) counts[i] = countList.get(i);
+		context = new ScanContext();
+	}
+
+	@Benchmark
+	public void decode(final Blackhole bh) {
+		BarCodeSink sink = new BarCodeSink() {
+			public boolean barCodeFound(
+				String barCode, BarCodeDecoder decoder, int startIdx, int endIdx) {
+
+				bh.consume(barCode);
+				return true;
+			}
+		};
+		for (int i = 0; i < widths.length; i++) {
+			bh.consume(barCodeDecoder.decode(widths[i], counts[i], false, context, sink));
+		}
+	}
+}
@@ -0,0 +1,93 @@
+// RenderBenchmark.java
+// Copyright (c) 2002-2010 Ronald B. Cemer
+// All rights reserved.
+// This software is released under the BSD license.
+// Please see the accompanying LICENSE.txt for details.
+
+package com.roncemer.barcode;
+
+import java.awt.*;
+import java.awt.image.*;
+import java.util.concurrent.*;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+  * Benchmark of rendering one label, with text, through
+  * <code>Graphics</code> into a gray <code>BufferedImage</code>, and
+  * directly into a gray or 1-bit <code>BarCodeRaster</code>.  The image
+  * and the raster are reused, as a batch renderer would.
+  *
+  * @author Ronald B. Cemer
+  */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = { "--add-modules", "jdk.incubator.vector", "-Djava.awt.headless=true" })
+public class RenderBenchmark {
+	private static final int narrowBarWidth = 2, barHeight = 80, textHeight = 16, margin = 10;
+
+	@Param({ "UPCA", "Code39" })
+	public String renderer;
+
+	private RasterBarCodeRenderer barCodeRenderer;
+	private String text;
+	private BufferedImage image;
+	private BarCodeRaster grayRaster, binaryRaster;
+	private int next = 0;
+
+	@Setup
+	public void setup() {
+		if (renderer.equals("UPCA")) {
+			barCodeRenderer = new UPCABarCodeRenderer();
+			text = "03600029145";
+		} else {
+			barCodeRenderer = new Code39BarCodeRenderer();
+			text = "SHIP-0042917";
+		}
+		Dimension size = barCodeRenderer.getSize(text, narrowBarWidth, barHeight, textHeight);
+		int w = size.width + (margin * 2), h = size.height + (margin * 2);
+		image = new BufferedImage(w, h, BufferedImage.TYPE_BYTE_GRAY);
+		grayRaster = new BarCodeRaster(w, h, false);
+		binaryRaster = new BarCodeRaster(w, h, true);
+	}
+
+	// Vary the last digit, so that each label differs from the one before.
+	private String nextText() {
+		next = (next + 1) % 10;
+		return text.substring(0, text.length() - 1) + (char)('0' + next);
+	}
+
+	@Benchmark
+	public BufferedImage graphics() {
+		Graphics2D g = image.createGraphics();
+		try {
+			g.setColor(Color.WHITE);
+			g.fillRect(0, 0, image.getWidth(), image.getHeight());
+			g.setColor(Color.BLACK);
+			g.translate(margin, margin);
+			barCodeRenderer.render(g, nextText(), narrowBarWidth, barHeight, textHeight);
+		} finally {
+			g.dispose();
+		}
+		return image;
+	}
+
+	@Benchmark
+	public BarCodeRaster rasterGray() {
+		grayRaster.clear();
+		barCodeRenderer.render(
+			grayRaster, margin, margin, nextText(), narrowBarWidth, barHeight, textHeight);
+		return grayRaster;
+	}
+
+	@Benchmark
+	public BarCodeRaster rasterBinary() {
+		binaryRaster.clear();
+		barCodeRenderer.render(
+			binaryRaster, margin, margin, nextText(), narrowBarWidth, barHeight, textHeight);
+		return binaryRaster;
+	}
+}
@@ -0,0 +1,115 @@
+// SampleImages.java
+// Copyright (c) 2002-2010 Ronald B. Cemer
+// All rights reserved.
+// This software is released under the BSD license.
+// Please see the accompanying LICENSE.txt for details.
+
+package com.roncemer.barcode;
+
+import java.awt.image.*;
+import java.io.*;
+import java.util.*;
+import javax.imageio.*;
+
+import com.roncemer.util.*;
+
+/**
+  * Loads the images in <code>sampleBarCodeImages</code> for the benchmarks.
+  * The directory is taken from the <code>javabar.samples</code> system
+  * property, or else looked for in the current directory and its parent.
+  *
+  * @author Ronald B. Cemer
+  */
+final class SampleImages {
+	/**
+      * One sample image, converted to grayscale.
+      */
+	static final class Sample {
+		final String name;
+		final int w, h;
+		final int[] pixels;
+
+		Sample(String name, int w, int h, int[] pixels) {
+			this.name = name;
+			this.w = w;
+			this.h = h;
+			this.pixels = pixels;
+		}
+
+		byte[] bytes() {
+			byte[] bytes = new byte[pixels.length];
+			for (int i = 0; i < pixels.length; i++) bytes[i] = (byte)pixels[i];
+			return bytes;
+		}
+	}
+
+	private SampleImages() {
+	}
+
+	static File directory() {
+		String dir = System.getProperty("javabar.samples");
+		if (dir != null) return new File(dir);
+		File f = new File("sampleBarCodeImages");
+		if (f.isDirectory()) return f;
+		f = new File("../sampleBarCodeImages");
+		if (f.isDirectory()) return f;
+		throw new IllegalStateException
+			("Cannot find sampleBarCodeImages; set -Djavabar.samples=<directory>");
+	}
+
+	/**
+      * Load all images of a subdirectory, sorted by name.
+      * @param subdir <code>code39</code> or <code>upc</code>.
+      */
+	static Sample[] load(String subdir) throws IOException {
+		File[] files = new File(directory(), subdir).listFiles();
+		if (files == null) throw new FileNotFoundException(subdir);
+		Arrays.sort(files);
+		List<Sample> samples = new ArrayList<Sample>();
+		for (int i = 0; i < files.length; i++) {
+			BufferedImage image = ImageIO.read(files[i]);
+			if (image == null) continue;
+			int w = image.getWidth(), h = image.getHeight();
+			int[] pixels = image.getRGB(0, 0, w, h, null, 0, w);
+			for (int j = 0; j < pixels.length; j++) {
+				pixels[j] = ImageUtils.rgbToGrayscale(pixels[j]);
+			}
+			samples.add(new Sample(files[i].getName(), w, h, pixels));
+		}
+		return samples.toArray(new Sample[samples.size()]);
+	}
+
+	/**
+      * Load one image by subdirectory and file name.
+      */
+	static Sample load(String subdir, String name) throws IOException {
+		Sample[] samples = load(subdir);
+		for (int i = 0; i < samples.length; i++) {
+			if (samples[i].name.equals(name)) return samples[i];
+		}
+		throw new FileNotFoundException(subdir + "/" + name);
+	}
+
+	/**
+      * The rows of a set of images which pass through a bar code, found by
+      * scanning each image horizontally.
+      */
+	static int[][] barCodeRows(Sample[] samples) {
+		ImageBarCodeScanner scanner = new ImageBarCodeScanner();
+		scanner.setConfiguration(ScanConfiguration.DEFAULT
+			.withVerticalScanning(false)
+			.withDiagonalScanning(false));
+		List<int[]> rows = new ArrayList<int[]>();
+		for (int i = 0; i < samples.length; i++) {
+			Sample s = samples[i];
+			BarCodeResult[] results =
+				scanner.decodeBarCodeResultsFromImage(s.pixels, s.w, s.h, false, null);
+			for (int j = 0; j < results.length; j++) {
+				int[] row = new int[s.w];
+				System.arraycopy(s.pixels, results[j].getStartY() * s.w, row, 0, s.w);
+				rows.add(row);
+			}
+		}
+		return rows.toArray(new int[rows.size()][]);
+	}
+}
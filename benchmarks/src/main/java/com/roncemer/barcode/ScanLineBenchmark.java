@@ -0,0 +1,47 @@
+// ScanLineBenchmark.java
+// Copyright (c) 2002-2010 Ronald B. Cemer
+// All rights reserved.
+// This software is released under the BSD license.
+// Please see the accompanying LICENSE.txt for details.
+
+package com.roncemer.barcode;
+
+import java.util.concurrent.*;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.*;
+
+/**
+  * Benchmark of the per-scan-line work of the scanner (run length
+  * extraction at every threshold level and decoding with every decoder),
+  * through <code>decodeScanLine</code>.  One operation decodes one row
+  * through a bar code of each image of a sample set.
+  *
+  * @author Ronald B. Cemer
+  */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = { "--add-modules", "jdk.incubator.vector" })
+public class ScanLineBenchmark {
+	@Param({ "code39", "upc" })
+	public String set;
+
+	private int[][] rows;
+	private ImageBarCodeScanner scanner;
+
+	@Setup
+	public void setup() throws Exception {
+		rows = SampleImages.barCodeRows(SampleImages.load(set));
+		scanner = new ImageBarCodeScanner();
+	}
+
+	@Benchmark
+	public void scanLineForBarCodes(Blackhole bh) {
+		for (int i = 0; i < rows.length; i++) {
+			bh.consume(scanner.decodeScanLine(rows[i], rows[i].length, false, null));
+		}
+	}
+}
@@ -0,0 +1,59 @@
+// ScannerBenchmark.java
+// Copyright (c) 2002-2010 Ronald B. Cemer
+// All rights reserved.
+// This software is released under the BSD license.
+// Please see the accompanying LICENSE.txt for details.
+
+package com.roncemer.barcode;
+
+import java.util.concurrent.*;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.*;
+
+/**
+  * End-to-end benchmark of <code>decodeBarCodesFromImage</code>: one
+  * operation scans every image of one of the sample sets.
+  *
+  * @author Ronald B. Cemer
+  */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 3, time = 10)
+@Fork(value = 1, jvmArgsAppend = { "--add-modules", "jdk.incubator.vector" })
+public class ScannerBenchmark {
+	@Param({ "code39", "upc" })
+	public String set;
+
+	@Param({ "2", "4", "8" })
+	public int scanLineSpacing;
+
+	// all: every direction; horizontal: horizontal only; orthogonal:
+	// horizontal and vertical.
+	@Param({ "all", "horizontal", "orthogonal" })
+	public String directions;
+
+	private SampleImages.Sample[] samples;
+	private ImageBarCodeScanner scanner;
+
+	@Setup
+	public void setup() throws Exception {
+		samples = SampleImages.load(set);
+		ScanConfiguration config = ScanConfiguration.DEFAULT
+			.withScanLineSpacing(scanLineSpacing)
+			.withVerticalScanning(!directions.equals("horizontal"))
+			.withDiagonalScanning(directions.equals("all"));
+		scanner = new ImageBarCodeScanner();
+		scanner.setConfiguration(config);
+	}
+
+	@Benchmark
+	public void decodeBarCodesFromImage(Blackhole bh) {
+		for (int i = 0; i < samples.length; i++) {
+			SampleImages.Sample s = samples[i];
+			bh.consume(scanner.decodeBarCodesFromImage(s.pixels, s.w, s.h, false, null));
+		}
+	}
+}
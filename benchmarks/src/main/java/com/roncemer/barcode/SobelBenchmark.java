@@ -0,0 +1,69 @@
+// SobelBenchmark.java
+// Copyright (c) 2002-2010 Ronald B. Cemer
+// All rights reserved.
+// This software is released under the BSD license.
+// Please see the accompanying LICENSE.txt for details.
+
+package com.roncemer.barcode;
+
+import java.util.concurrent.*;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.roncemer.util.*;
+
+/**
+  * Benchmark of the Sobel edge enhancement on one sample image: the
+  * one-step <code>int[]</code> enhancement, and the gradient computation and
+  * gradient-based enhancement which the scanner uses on
+  * <code>byte[]</code> pixels.
+  *
+  * @author Ronald B. Cemer
+  */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = { "--add-modules", "jdk.incubator.vector" })
+public class SobelBenchmark {
+	@Param({ "upc/barcode1.jpg", "code39/1234567890-13.jpg" })
+	public String image;
+
+	private int w, h;
+	private int[] pixels, dest, grad;
+	private byte[] bytes, byteDest;
+
+	@Setup
+	public void setup() throws Exception {
+		int slash = image.indexOf('/');
+		SampleImages.Sample s = SampleImages.load(
+			image.substring(0, slash), image.substring(slash + 1));
+		w = s.w;
+		h = s.h;
+		pixels = s.pixels;
+		bytes = s.bytes();
+		dest = new int[w * h];
+		grad = new int[w * h];
+		byteDest = new byte[w * h];
+		ImageUtils.sobelGradients(bytes, 0, w, grad, w, h);
+	}
+
+	@Benchmark
+	public int[] sobelEnhance() {
+		ImageUtils.sobelEnhance(pixels, dest, w, h, 64, 128);
+		return dest;
+	}
+
+	@Benchmark
+	public int[] sobelGradients() {
+		ImageUtils.sobelGradients(bytes, 0, w, grad, w, h);
+		return grad;
+	}
+
+	@Benchmark
+	public byte[] sobelEnhanceFromGradients() {
+		ImageUtils.sobelEnhance(bytes, 0, w, grad, byteDest, w, h, 64, 128);
+		return byteDest;
+	}
+}
@@ -0,0 +1,246 @@
+// AdaptiveBinarizer.java
+// Copyright (c) 2002-2010 Ronald B. Cemer
+// All rights reserved.
+// This software is released under the BSD license.
+// Please see the accompanying LICENSE.txt for details.
+
+package com.roncemer.barcode;
+
+/**
+  * Computes the run lengths of a scan line from a model of its own
+  * contrast, as an alternative to <code>RunLengthExtractor</code>'s sweep
+  * over global threshold levels.  Two binarizations are offered, each
+  * computed in a single pass over the line:
+  * <ul>
+  * <li>Edge binarization follows the line from one extreme to the next,
+  * with hysteresis: a swing from a local maximum to a local minimum (or
+  * back) is an edge once it exceeds a fraction of the line's overall
+  * contrast, and the edge is placed where the line crosses the midpoint
+  * between the paper and ink levels around it, kept within the middle half
+  * of that swing.  Each edge thus gets its own threshold, so bars under a
+  * shadow or a gradient of light are found as well as bars in full light.
+  * <li>Otsu binarization uses the single threshold which best separates
+  * the line's histogram into dark and light pixels.
+  * </ul>
+  * Either may place its edges with sub-pixel precision, as
+  * <code>RunLengthExtractor</code> does.
+  * <p>
+  * Instances are owned by a <code>ScanContext</code> and are not thread
+  * safe.
+  *
+  * @author Ronald B. Cemer
+  */
+final class AdaptiveBinarizer {
+	// A swing must exceed the line's contrast divided by this to be an
+	// edge, and must always exceed minEdgeSwing.
+	private static final int edgeSwingDivisor = 8;
+	private static final int minEdgeSwing = 8;
+	// Lines with less contrast than this are not binarized.
+	private static final int minContrast = 16;
+	// The paper and ink levels at an edge are taken from this many extremes
+	// on either side of it.
+	private static final int envelopeReach = 4;
+
+	private final int[] histogram = new int[256];
+	// Results of the last extraction.
+	private int threshold;
+	private int firstBarOffset;
+	// Position and value of each extreme of the line, while extracting.
+	private int[] extremePos = new int[0], extremeVal = new int[0];
+
+	/**
+      * Compute the run lengths of a scan line from its edges.  The first
+      * width is always the width of a bar; a leading space is skipped, and
+      * the trailing run is not included.
+      * @param pixels The pixels of the scan line, 0-255.
+      * @param nPixels The number of pixels in the scan line.
+      * @param barWidths Receives the run lengths.
+      * @param subPixel <code>true</code> for run lengths with sub-pixel
+      * precision, in fixed point with
+      * <code>RunLengthExtractor.SUBPIXEL_BITS</code> fraction bits.
+      * @return The number of run lengths.
+      */
+	int extractEdges(int[] pixels, int nPixels, int[] barWidths, boolean subPixel) {
+		firstBarOffset = 0;
+		threshold = -1;
+		if (nPixels < 2) return 0;
+		int min = pixels[0], max = min;
+		for (int i = 1; i < nPixels; i++) {
+			int p = pixels[i];
+			if (p < min) min = p; else if (p > max) max = p;
+		}
+		if ((max - min) < minContrast) return 0;
+		int nExtremes =
+			findExtremes(pixels, nPixels, Math.max((max - min) / edgeSwingDivisor, minEdgeSwing));
+		int[] extremePos = this.extremePos, extremeVal = this.extremeVal;
+		int widIdx = 0, prev = 0;
+		for (int j = 0; (j + 1) < nExtremes; j++) {
+			// The paper and ink levels around this edge are the brightest and
+			// darkest extremes nearby; blurred narrow elements never reach
+			// them, but their wider neighbors do.
+			int from = Math.max(j - envelopeReach, 0);
+			int to = Math.min(j + 1 + envelopeReach, nExtremes - 1);
+			int paper = extremeVal[from], ink = paper;
+			for (int k = from + 1; k <= to; k++) {
+				int v = extremeVal[k];
+				if (v > paper) paper = v; else if (v < ink) ink = v;
+			}
+			// Keep the threshold within the middle half of this swing, so that
+			// every swing is an edge, and so that a small swing under glare,
+			// whose neighbors reach far darker ink, is not cut at its foot.
+			int a = extremeVal[j], b = extremeVal[j + 1];
+			boolean barEnd = (a < b);
+			int lo = Math.min(a, b), hi = Math.max(a, b);
+			int mid = (paper + ink + 1) >> 1;
+			int margin = (hi - lo) >> 2;
+			if (mid <= (lo + margin)) mid = lo + margin + 1; else if (mid > (hi - margin)) mid = hi - margin;
+			int x = extremePos[j + 1];
+			for (int i = extremePos[j] + 1; i < x; i++) {
+				if ((pixels[i] < mid) != barEnd) {
+					x = i;
+					break;
+				}
+			}
+			if (subPixel) x = RunLengthExtractor.subPixelEdge(pixels, x, mid);
+			// The first width must always be the width of a bar.
+			if ((barEnd) || (widIdx > 0)) barWidths[widIdx++] = x - prev; else firstBarOffset = x;
+			prev = x;
+		}
+		return widIdx;
+	}
+
+	/**
+      * Follow a scan line from one extreme to the next, with hysteresis: a
+      * turn from rising to falling (or back) is only taken once the line
+      * has swung back by more than <code>swing</code>.  Leaves the position
+      * and value of each local maximum and minimum in turn in
+      * <code>extremePos</code> and <code>extremeVal</code>, up to and
+      * including the last one reached.
+      * @return The number of extremes.
+      */
+	private int findExtremes(int[] pixels, int nPixels, int swing) {
+		if (extremePos.length < nPixels) {
+			extremePos = new int[nPixels];
+			extremeVal = new int[nPixels];
+		}
+		int[] extremePos = this.extremePos, extremeVal = this.extremeVal;
+		// Direction of the swing being followed: 1 while rising towards a
+		// maximum, -1 while falling towards a minimum, 0 until the first
+		// swing is big enough to tell.  hiPos/hiVal and loPos/loVal are the
+		// current maximum and minimum.
+		int n = 0, dir = 0;
+		int hiPos = 0, hiVal = pixels[0], loPos = 0, loVal = pixels[0];
+		for (int i = 1; i < nPixels; i++) {
+			int p = pixels[i];
+			if (p > hiVal) {
+				hiVal = p;
+				hiPos = i;
+			}
+			if (p < loVal) {
+				loVal = p;
+				loPos = i;
+			}
+			if ((dir >= 0) && ((hiVal - p) > swing)) {
+				// Turned back from a maximum.
+				extremePos[n] = hiPos;
+				extremeVal[n++] = hiVal;
+				dir = -1;
+				loVal = p;
+				loPos = i;
+			} else if ((dir <= 0) && ((p - loVal) > swing)) {
+				// Turned back from a minimum.
+				extremePos[n] = loPos;
+				extremeVal[n++] = loVal;
+				dir = 1;
+				hiVal = p;
+				hiPos = i;
+			}
+		}
+		if (dir > 0) {
+			extremePos[n] = hiPos;
+			extremeVal[n++] = hiVal;
+		} else if (dir < 0) {
+			extremePos[n] = loPos;
+			extremeVal[n++] = loVal;
+		}
+		return n;
+	}
+
+	/**
+      * Compute the run lengths of a scan line at the threshold chosen by
+      * Otsu's method.  The first width is always the width of a bar; a
+      * leading space is skipped, and the trailing run is not included.
+      * @param pixels The pixels of the scan line, 0-255.
+      * @param nPixels The number of pixels in the scan line.
+      * @param barWidths Receives the run lengths.
+      * @param subPixel <code>true</code> for run lengths with sub-pixel
+      * precision, in fixed point with
+      * <code>RunLengthExtractor.SUBPIXEL_BITS</code> fraction bits.
+      * @return The number of run lengths.
+      */
+	int extractOtsu(int[] pixels, int nPixels, int[] barWidths, boolean subPixel) {
+		firstBarOffset = 0;
+		threshold = -1;
+		if (nPixels < 2) return 0;
+		int[] histogram = this.histogram;
+		for (int i = 0; i < 256; i++) histogram[i] = 0;
+		long sum = 0;
+		int min = 255, max = 0;
+		for (int i = 0; i < nPixels; i++) {
+			int p = pixels[i];
+			histogram[p]++;
+			sum += p;
+			if (p < min) min = p;
+			if (p > max) max = p;
+		}
+		if ((max - min) < minContrast) return 0;
+		// Maximize the between-class variance over thresholds t, with
+		// pixels below t dark.
+		long sumDark = 0;
+		int nDark = 0;
+		double bestVar = -1.0;
+		int best = max;
+		for (int t = min + 1; t <= max; t++) {
+			nDark += histogram[t - 1];
+			sumDark += (long)(t - 1) * histogram[t - 1];
+			int nLight = nPixels - nDark;
+			if (nLight == 0) break;
+			double diff = ((double)sumDark / nDark) - ((double)(sum - sumDark) / nLight);
+			double var = (double)nDark * nLight * diff * diff;
+			if (var > bestVar) {
+				bestVar = var;
+				best = t;
+			}
+		}
+		threshold = best;
+		int widIdx = 0, prev = 0;
+		boolean bar = (pixels[0] < best);
+		for (int i = 1; i < nPixels; i++) {
+			if ((pixels[i] < best) == bar) continue;
+			int x = subPixel ? RunLengthExtractor.subPixelEdge(pixels, i, best) : i;
+			// The first width must always be the width of a bar.
+			if ((bar) || (widIdx > 0)) barWidths[widIdx++] = x - prev; else firstBarOffset = x;
+			prev = x;
+			bar = !bar;
+		}
+		return widIdx;
+	}
+
+	/**
+      * @return The threshold used by the last call to
+      * {@link #extractOtsu(int[], int, int[], boolean)}, or -1 after
+      * {@link #extractEdges(int[], int, int[], boolean)}, which has none.
+      */
+	int getThreshold() {
+		return threshold;
+	}
+
+	/**
+      * @return The number of pixels of the leading space which was skipped
+      * by the last extraction, in fixed point if it had sub-pixel
+      * precision.
+      */
+	int getFirstBarOffset() {
+		return firstBarOffset;
+	}
+}
@@ -0,0 +1,297 @@
+// AsyncScan.java
+// Copyright (c) 2002-2010 Ronald B. Cemer
+// All rights reserved.
+// This software is released under the BSD license.
+// Please see the accompanying LICENSE.txt for details.
+
+package com.roncemer.barcode;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+  * A scan running in the background, started by one of the
+  * <code>scanImageAsync</code> methods of <code>ImageBarCodeScanner</code>.
+  * It offers the outcome of the scan in two forms:
+  * <ul>
+  * <li>{@link #getResult()}, a <code>CompletableFuture</code> which
+  * completes with the same <code>ScanResult</code> as a synchronous scan
+  * would return, or exceptionally if the scan fails;
+  * <li>the scan itself, a <code>Flow.Publisher</code> which streams each
+  * distinct bar code to its subscribers as soon as it is confirmed (as soon
+  * as the first hit is found, unless more votes are required), long before
+  * the rest of the image has been scanned.
+  * </ul>
+  * Every bar code in the final result is published exactly once, and
+  * nothing else is.  The published <code>BarCodeResult</code>s describe the
+  * hit found so far: in a parallel scan, their location and counts may
+  * differ from those in the final result, which takes the hit a
+  * single-threaded scan would have found first.  Publishing order is the
+  * order of confirmation, which for a parallel scan need not be the order
+  * of the final result.
+  * <p>
+  * The publisher replays: each subscriber receives every bar code published
+  * since the scan started, whenever it subscribes, and then
+  * <code>onComplete</code> when the scan finishes, or <code>onError</code>
+  * if it fails or is cancelled.  Bar codes are delivered on the scanning
+  * thread, or on a thread calling <code>request</code>, one at a time per
+  * subscriber.  Delivery to a subscriber which has not requested them is
+  * deferred without holding up the scan, so a subscriber which does
+  * lengthy work (such as looking up each bar code) should hand it off to
+  * another thread rather than doing it in <code>onNext</code>.
+  * <p>
+  * Cancelling the future, as by <code>getResult().cancel(true)</code>,
+  * stops the scan within about one scan line, and a scan still waiting for
+  * a thread at once, completing its subscribers.  Cancelling a subscription
+  * only stops deliveries to that subscriber.
+  *
+  * @author Ronald B. Cemer
+  */
+public final class AsyncScan implements Flow.Publisher<BarCodeResult> {
+	private final CompletableFuture<ScanResult> result = new CompletableFuture<ScanResult>();
+	// Set once the future has been cancelled; polled by the scan.
+	volatile boolean cancelled = false;
+	// Bar codes published so far, the subscriptions, and whether and how
+	// the scan has finished.  Guarded by the lock on this object.
+	private final ArrayList<BarCodeResult> published = new ArrayList<BarCodeResult>();
+	private final ArrayList<Subscription> subscriptions = new ArrayList<Subscription>();
+	private boolean finished = false;
+	private Throwable failure = null;
+	// Set once the scan has been claimed, either by the thread which runs
+	// it or by a cancellation before it started.  Guarded likewise.
+	private boolean claimed = false;
+
+	/**
+      * The executor used when the configuration names none, created when it
+      * is first needed: a pool of one daemon thread per processor, since a
+      * scan spends its time computing, with further scans queued until a
+      * thread is free.  Each thread keeps its own scan buffers (see
+      * <code>ScanContext</code>), so bounding the pool bounds the memory
+      * they hold, and threads idle for a minute exit and free theirs.
+      */
+	private static final class DefaultExecutor {
+		static final Executor executor = create();
+
+		private static Executor create() {
+			int nThreads = Runtime.getRuntime().availableProcessors();
+			ThreadPoolExecutor pool = new ThreadPoolExecutor(
+				nThreads,
+				nThreads,
+				60L,
+				TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(),
+				new ThreadFactory() {
+					private int next = 0;
+
+					public synchronized Thread newThread(Runnable r) {
+						Thread t = new Thread(r, "AsyncScan-" + (next++));
+						t.setDaemon(true);
+						return t;
+					}
+				});
+			pool.allowCoreThreadTimeOut(true);
+			return pool;
+		}
+	}
+
+	/**
+      * @return The executor which runs asynchronous scans whose
+      * configuration names none.
+      */
+	static Executor defaultExecutor() {
+		return DefaultExecutor.executor;
+	}
+
+	AsyncScan() {
+		result.whenComplete((r, t) -> {
+			if (result.isCancelled()) {
+				cancelled = true;
+				// A scan still waiting for a thread won't run, so its
+				// subscribers are completed now rather than when it would
+				// have reached the front of the executor's queue.
+				if (claim()) finish(null, null);
+			}
+		});
+	}
+
+	/**
+      * Claim the scan, for the thread about to run it or for a cancellation.
+      * @return <code>false</code> if it has already been claimed: by a
+      * cancellation before it started, which has finished it, or by the
+      * thread running it.
+      */
+	synchronized boolean claim() {
+		if (claimed) return false;
+		claimed = true;
+		return true;
+	}
+
+	/**
+      * @return The future which completes with the result of the scan.
+      */
+	public CompletableFuture<ScanResult> getResult() {
+		return result;
+	}
+
+	/**
+      * Stop the scan, as by cancelling the future.
+      * @return <code>true</code> if the scan was still running.
+      */
+	public boolean cancel() {
+		return result.cancel(true);
+	}
+
+	/**
+      * @return <code>true</code> if the scan was cancelled.
+      */
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+      * Subscribe to the bar codes of this scan.
+      * @param subscriber The subscriber.
+      */
+	public void subscribe(Flow.Subscriber<? super BarCodeResult> subscriber) {
+		if (subscriber == null) throw new NullPointerException("subscriber");
+		Subscription subscription = new Subscription(subscriber);
+		synchronized (this) {
+			subscriptions.add(subscription);
+		}
+		subscriber.onSubscribe(subscription);
+		// A scan which finished without any bar codes completes the
+		// subscriber without waiting for a request.
+		subscription.drain();
+	}
+
+	/**
+      * Publish a newly confirmed bar code.
+      */
+	void publish(BarCodeResult barCode) {
+		Subscription[] subs;
+		synchronized (this) {
+			if (finished) return;
+			published.add(barCode);
+			subs = subscriptions.toArray(new Subscription[subscriptions.size()]);
+		}
+		for (int i = 0; i < subs.length; i++) subs[i].drain();
+	}
+
+	/**
+      * Complete the future and the subscribers once the scan has finished.
+      * @param scanResult The result, or <code>null</code> if the scan failed.
+      * @param error The exception which the scan threw, or <code>null</code>.
+      */
+	void finish(ScanResult scanResult, Throwable error) {
+		if ((error == null) && cancelled) error = new CancellationException("Scan cancelled");
+		Subscription[] subs;
+		synchronized (this) {
+			finished = true;
+			failure = error;
+			subs = subscriptions.toArray(new Subscription[subscriptions.size()]);
+		}
+		if (error != null) {
+			result.completeExceptionally(error);
+		} else {
+			result.complete(scanResult);
+		}
+		for (int i = 0; i < subs.length; i++) subs[i].drain();
+	}
+
+	/**
+      * One subscriber's position in the published bar codes, and how many
+      * more it has requested.
+      */
+	private final class Subscription implements Flow.Subscription {
+		private final Flow.Subscriber<? super BarCodeResult> subscriber;
+		// All guarded by the lock on the enclosing AsyncScan.
+		private long demand = 0L;
+		private int next = 0;
+		private boolean emitting = false, done = false;
+
+		Subscription(Flow.Subscriber<? super BarCodeResult> subscriber) {
+			this.subscriber = subscriber;
+		}
+
+		public void request(long n) {
+			boolean invalid = false;
+			synchronized (AsyncScan.this) {
+				if (done) return;
+				if (n <= 0L) {
+					// Rule 3.9 of the reactive streams specification: signal
+					// an error, now or by the thread currently delivering.
+					if (!emitting) {
+						done = true;
+						invalid = true;
+						subscriptions.remove(this);
+					} else {
+						demand = -1L;
+					}
+				} else if (demand >= 0L) {
+					demand += n;
+					if (demand < 0L) demand = Long.MAX_VALUE;
+				}
+			}
+			if (invalid) {
+				subscriber.onError(new IllegalArgumentException("Non-positive request: " + n));
+				return;
+			}
+			drain();
+		}
+
+		public void cancel() {
+			synchronized (AsyncScan.this) {
+				done = true;
+				subscriptions.remove(this);
+			}
+		}
+
+		/**
+          * Deliver whatever the subscriber is due.  Only one thread delivers
+          * to a subscriber at a time; a thread which finds another delivering
+          * leaves it to that thread, which checks again before it stops.
+          */
+		void drain() {
+			synchronized (AsyncScan.this) {
+				if (emitting || done) return;
+				emitting = true;
+			}
+			for (;;) {
+				BarCodeResult item = null;
+				Throwable error = null;
+				synchronized (AsyncScan.this) {
+					if (done) {
+						emitting = false;
+						return;
+					}
+					if (demand < 0L) {
+						error = new IllegalArgumentException("Non-positive request");
+					} else if ((demand > 0L) && (next < published.size())) {
+						item = published.get(next++);
+						if (demand != Long.MAX_VALUE) demand--;
+					} else if (finished && (next == published.size())) {
+						error = failure;
+					} else {
+						emitting = false;
+						return;
+					}
+					if (item == null) {
+						done = true;
+						emitting = false;
+						subscriptions.remove(this);
+					}
+				}
+				if (item != null) {
+					subscriber.onNext(item);
+				} else {
+					if (error != null) {
+						subscriber.onError(error);
+					} else {
+						subscriber.onComplete();
+					}
+					return;
+				}
+			}
+		}
+	}
+}
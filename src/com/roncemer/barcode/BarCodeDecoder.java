@@ -6,21 +6,68 @@
 
 package com.roncemer.barcode;
 
+import java.util.*;
+
 /**
   * Abstract bar code decoding class.
   * Subclasses of this class perform barcode decoding using relative widths
   * of alternating bars and spaces, starting with the width of the first
   * suspected bar.
+  * <p>
+  * Decoders keep no state between calls to
+  * {@link #decode(int[], int, boolean, ScanContext, BarCodeSink)}, so a
+  * single decoder may be used by several threads at once.  All scratch
+  * memory comes from the <code>ScanContext</code>, and hits are handed to a
+  * <code>BarCodeSink</code>, so decoding allocates nothing unless a bar code
+  * is found.
+  * <p>
+  * Decoders written before the sink existed, which only implement
+  * {@link #decode(int[], int, boolean, BarCodeDecoderListener)}, still
+  * work: the sink method then calls that method, one thread at a time, and
+  * passes on the bar codes it returns.  Since such a decoder cannot say
+  * where on the scan line it found a bar code, the whole line is reported
+  * as its location.
   *
   * @author Ronald B. Cemer
   */
-public abstract class BarCodeDecoder {
+public abstract class BarCodeDecoder implements Cloneable {
 	/**
-      * Subclasses can set this to <code>true</code> to indicate that the
-      * listener aborted the scan after finding a bar code.
+      * Set by the <code>String[]</code>-returning <code>decode</code> methods
+      * to indicate that the listener aborted the scan after finding a bar
+      * code.
+      * @deprecated This is per-decoder state which is overwritten by every
+      * call, so it is meaningless when the decoder is shared between threads.
+      * Use the return value of
+      * {@link #decode(int[], int, boolean, ScanContext, BarCodeSink)}
+      * instead.
       */
+	@Deprecated
 	protected boolean abortedByListener = false;
 
+	// Whether the subclass implements only the String[]-returning decode
+	// method, so that the sink method must adapt it.
+	private final boolean legacy;
+
+	/**
+      * Construct a new <code>BarCodeDecoder</code>.  Subclasses must override
+      * at least one of
+      * {@link #decode(int[], int, boolean, ScanContext, BarCodeSink)} and
+      * {@link #decode(int[], int, boolean, BarCodeDecoderListener)}.
+      */
+	protected BarCodeDecoder() {
+		legacy =
+			overrides("decode", int[].class, int.class, boolean.class, BarCodeDecoderListener.class) &&
+			(!overrides("decode", int[].class, int.class, boolean.class, ScanContext.class, BarCodeSink.class));
+	}
+
+	private boolean overrides(String name, Class<?>... parameterTypes) {
+		try {
+			return getClass().getMethod(name, parameterTypes).getDeclaringClass() != BarCodeDecoder.class;
+		} catch (NoSuchMethodException e) {
+			throw new InternalError(e.toString());
+		}
+	}
+
 	/**
       * Decode a barcode given relative widths of alternating bars and spaces,
       * starting with the width of the first suspected bar.
@@ -58,17 +105,187 @@ public abstract class BarCodeDecoder {
       * This array will be of zero length if no bar codes were successfully
       * decoded.
       */
-	public abstract String[] decode(
+	public String[] decode(
 		int[]widths,
 		int numBarsAndSpaces,
 		boolean includeCheckDigits,
-		BarCodeDecoderListener listener
-	);
+		BarCodeDecoderListener listener) {
+
+		ArrayList barCodes = new ArrayList();
+		abortedByListener =
+			!decode(widths, numBarsAndSpaces, includeCheckDigits, listener, barCodes);
+		String[]result = new String[barCodes.size()];
+		barCodes.toArray(result);
+		return result;
+	}
+
+	/**
+      * Decode a barcode given relative widths of alternating bars and spaces,
+      * starting with the width of the first suspected bar.
+      * @param widths The relative widths of alternating bars and spaces,
+      * starting with the width of the first suspected bar.
+      * @param numBarsAndSpaces The total number of bars and spaces.  Must be
+      * less than or equal to <code>widths.length</code>.
+      * @param includeCheckDigits <code>true</code> to return check digits;
+      * <code>false</code> to strip them off.
+      * @param listener The <code>BarCodeDecoderListener</code> to be notified
+      * each time a bar code is decoded, or <code>null</code> if none.
+      * @param barCodes A <code>Collection</code> to which each decoded bar
+      * code is added, as a <code>String</code>.
+      * @return <code>true</code> if decoding ran to completion;
+      * <code>false</code> if the listener aborted it.
+      */
+	public boolean decode(
+		int[]widths,
+		int numBarsAndSpaces,
+		boolean includeCheckDigits,
+		final BarCodeDecoderListener listener,
+		final Collection barCodes) {
+
+		ScanContext context = ScanContext.acquire();
+		try {
+			return decode(
+				widths,
+				numBarsAndSpaces,
+				includeCheckDigits,
+				context,
+				new BarCodeSink() {
+					public boolean barCodeFound(
+						String barCode,
+						BarCodeDecoder decoder,
+						int startIdx,
+						int endIdx) {
+
+						barCodes.add(barCode);
+						return (listener == null) || listener.barCodeFound(barCode, decoder);
+					}
+				});
+		} finally {
+			context.release();
+		}
+	}
+
+	/**
+      * Decode a barcode given relative widths of alternating bars and spaces,
+      * starting with the width of the first suspected bar.  Implementations
+      * must not keep any state between calls, so that one decoder can be
+      * used by several threads at once, and should take all of their scratch
+      * buffers from <code>context</code>.
+      * <p>
+      * The default implementation adapts a subclass which only overrides
+      * {@link #decode(int[], int, boolean, BarCodeDecoderListener)}: it calls
+      * that method while holding the lock on this decoder, hands each bar
+      * code announced to the listener to <code>sink</code>, followed by any
+      * returned without being announced, and reports the whole of the widths
+      * as the location of each.
+      * @param widths The relative widths of alternating bars and spaces,
+      * starting with the width of the first suspected bar.  Only their
+      * ratios matter, so they may be whole pixels or fixed-point fractions
+      * of pixels.
+      * @param numBarsAndSpaces The total number of bars and spaces.  Must be
+      * less than or equal to <code>widths.length</code>.
+      * @param includeCheckDigits <code>true</code> to return check digits;
+      * <code>false</code> to strip them off.
+      * @param context The calling thread's scratch buffers.
+      * @param sink The <code>BarCodeSink</code> which receives each decoded
+      * bar code.
+      * @return <code>true</code> if decoding ran to completion;
+      * <code>false</code> if the sink aborted it.
+      * @throws UnsupportedOperationException If the subclass overrides
+      * neither decode method.
+      */
+	public boolean decode(
+		int[]widths,
+		final int numBarsAndSpaces,
+		boolean includeCheckDigits,
+		ScanContext context,
+		final BarCodeSink sink) {
+
+		if (!legacy) {
+			throw new UnsupportedOperationException(
+				getClass().getName() + " does not implement decode()");
+		}
+		// [0] counts the bar codes announced to the listener; [1] is set once
+		// the sink aborts.
+		final int[] state = new int[2];
+		String[] barCodes;
+		synchronized (this) {
+			barCodes = decode(
+				widths,
+				numBarsAndSpaces,
+				includeCheckDigits,
+				new BarCodeDecoderListener() {
+					public boolean barCodeFound(String barCode, BarCodeDecoder decoder) {
+						if (state[1] != 0) return false;
+						state[0]++;
+						if (!sink.barCodeFound(barCode, BarCodeDecoder.this, 0, numBarsAndSpaces)) {
+							state[1] = 1;
+						}
+						return state[1] == 0;
+					}
+				});
+		}
+		for (int i = state[0]; (i < barCodes.length) && (state[1] == 0); i++) {
+			if (!sink.barCodeFound(barCodes[i], this, 0, numBarsAndSpaces)) state[1] = 1;
+		}
+		return state[1] == 0;
+	}
+
+	/**
+      * @return The name of the symbology decoded by this decoder, such as
+      * <code>"UPC-A"</code>.  Subclasses should override this; the default
+      * is the name of the decoder's class.
+      */
+	public String getSymbology() {
+		return getClass().getName();
+	}
+
+	/**
+      * @return The fewest bars and spaces, starting and ending with a bar,
+      * in which this decoder can find a bar code.  Scanners skip this
+      * decoder for run length sequences which are shorter.  Subclasses
+      * should override this; the default is 1.
+      */
+	public int getMinBarsAndSpaces() {
+		return 1;
+	}
+
+	/**
+      * @return The most bars and spaces a single bar code of this symbology
+      * can have, or <code>Integer.MAX_VALUE</code> if its length is not
+      * fixed.  The default is <code>Integer.MAX_VALUE</code>.
+      */
+	public int getMaxBarsAndSpaces() {
+		return Integer.MAX_VALUE;
+	}
+
+	/**
+      * @return The width of the blank margin the symbology requires on
+      * either side of a bar code, in widths of its narrowest element, or 0
+      * if it requires none.  The default is 0.
+      */
+	public int getQuietZoneModules() {
+		return 0;
+	}
+
+	/**
+      * @return The width of the widest bar or space of the symbology, in
+      * widths of its narrowest element, or <code>Integer.MAX_VALUE</code>
+      * if there is no limit.  The default is
+      * <code>Integer.MAX_VALUE</code>.
+      */
+	public int getMaxElementModules() {
+		return Integer.MAX_VALUE;
+	}
 
 	/**
       * @return <code>true</code> if the listener aborted the last scan, or
       * <code>false</code> if not.
+      * @deprecated Only meaningful after calling one of the
+      * <code>String[]</code>-returning <code>decode</code> methods on a
+      * decoder which is not shared between threads.
       */
+	@Deprecated
 	public boolean getAbortedByListener() {
 		return abortedByListener;
 	}
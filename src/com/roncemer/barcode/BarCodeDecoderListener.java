@@ -16,8 +16,8 @@ public interface BarCodeDecoderListener {
       * This method gets called each time a bar code is found in the image.
       * @param barCode The decoded bar code.
       * @param decoder The <code>BarCodeDecoder</code> which found the bar
-      * code.  Based on the class name of the <code>decoder</code>, you can
-      * determine which type of bar code it is.
+      * code.  Its {@link BarCodeDecoder#getSymbology()} method tells which
+      * type of bar code it is.
       * @return <code>true</code> to continue decoding; <code>false</code> to
       * stop.
       */
@@ -0,0 +1,244 @@
+// BarCodeRaster.java
+// Copyright (c) 2002-2010 Ronald B. Cemer
+// All rights reserved.
+// This software is released under the BSD license.
+// Please see the accompanying LICENSE.txt for details.
+
+package com.roncemer.barcode;
+
+import java.awt.image.*;
+import java.io.*;
+import java.util.*;
+
+/**
+  * A black and white image which <code>RasterBarCodeRenderer</code>s
+  * render bar codes into by writing its pixels directly, rather than
+  * through <code>Graphics</code>.
+  * <p>
+  * The pixels are either 8-bit gray, one byte per pixel from 0 (black) to
+  * 255 (white), or 1-bit, packed eight pixels per byte with the leftmost
+  * pixel in the high bit, 0 for black and 1 for white.  Each row starts
+  * on a byte boundary.  They are the pixels of a
+  * <code>BufferedImage</code> of type <code>TYPE_BYTE_GRAY</code> or
+  * <code>TYPE_BYTE_BINARY</code>, so they can be handed to
+  * <code>ImageIO</code> without being copied.
+  * <p>
+  * A raster is not thread safe; each thread should render into its own.
+  *
+  * @author Ronald B. Cemer
+  */
+public final class BarCodeRaster {
+	private final int width, height;
+	private final boolean binary;
+	private final BufferedImage image;
+	private final byte[] data;
+	private final int stride;
+
+	/**
+      * Construct a new, white <code>BarCodeRaster</code>.
+      * @param width The width, in pixels.
+      * @param height The height, in pixels.
+      * @param binary <code>true</code> for 1-bit pixels; <code>false</code>
+      * for 8-bit gray pixels.
+      */
+	public BarCodeRaster(int width, int height, boolean binary) {
+		if ((width < 1) || (height < 1)) {
+			throw new IllegalArgumentException("Invalid raster size " + width + "x" + height);
+		}
+		this.width = width;
+		this.height = height;
+		this.binary = binary;
+		image = new BufferedImage(
+			width,
+			height,
+			binary ? BufferedImage.TYPE_BYTE_BINARY : BufferedImage.TYPE_BYTE_GRAY);
+		data = ((DataBufferByte)image.getRaster().getDataBuffer()).getData();
+		stride = binary ? ((width + 7) >> 3) : width;
+		clear();
+	}
+
+	/**
+      * Make every pixel white.
+      */
+	public void clear() {
+		Arrays.fill(data, (byte)0xff);
+	}
+
+	/**
+      * @return The width, in pixels.
+      */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+      * @return The height, in pixels.
+      */
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+      * @return <code>true</code> if the pixels are 1-bit; <code>false</code>
+      * if they are 8-bit gray.
+      */
+	public boolean isBinary() {
+		return binary;
+	}
+
+	/**
+      * @return The pixels, row after row.  This is the raster's own array,
+      * not a copy.
+      */
+	public byte[] getData() {
+		return data;
+	}
+
+	/**
+      * @return The number of bytes from the start of one row of pixels to
+      * the start of the next.
+      */
+	public int getStride() {
+		return stride;
+	}
+
+	/**
+      * @return The <code>BufferedImage</code> whose pixels this raster
+      * writes.  It is not a copy, so it changes as the raster is rendered
+      * into.
+      */
+	public BufferedImage getImage() {
+		return image;
+	}
+
+	/**
+      * Write the raster as a binary ("raw") PGM image if its pixels are
+      * gray, or as a binary PBM image if they are 1-bit.
+      * @param out The stream to write to.  It is not closed.
+      * @throws IOException If the image cannot be written.
+      */
+	public void writeNetpbm(OutputStream out) throws IOException {
+		String header = binary ?
+			("P4\n" + width + " " + height + "\n") :
+			("P5\n" + width + " " + height + "\n255\n");
+		out.write(header.getBytes("US-ASCII"));
+		if (!binary) {
+			out.write(data, 0, stride * height);
+			return;
+		}
+		// PBM uses 1 for black.
+		byte[] row = new byte[stride];
+		for (int y = 0, rowStart = 0; y < height; y++, rowStart += stride) {
+			for (int i = 0; i < stride; i++) row[i] = (byte)~data[rowStart + i];
+			out.write(row);
+		}
+	}
+
+	/**
+      * Paint a band of identical rows: white from <code>x</code> to
+      * <code>x + w</code>, with black runs.  The first row is drawn and the
+      * others are copied from it.  The band is clipped to the raster.
+      * @param x The left edge of the band.
+      * @param y The top edge of the band.
+      * @param w The width of the band.
+      * @param h The height of the band.
+      * @param runs Pairs of the offset of a black run from <code>x</code>
+      * and its width.
+      * @param nRuns The number of runs.
+      */
+	void paintBand(int x, int y, int w, int h, int[] runs, int nRuns) {
+		int left = Math.max(x, 0), right = Math.min(x + w, width);
+		int top = Math.max(y, 0), bottom = Math.min(y + h, height);
+		if ((left >= right) || (top >= bottom)) return;
+		int first = top * stride;
+		if (!binary) {
+			Arrays.fill(data, first + left, first + right, (byte)0xff);
+			for (int i = 0; i < (nRuns * 2); i += 2) {
+				int from = Math.max(x + runs[i], left);
+				int to = Math.min(x + runs[i] + runs[i + 1], right);
+				if (from < to) Arrays.fill(data, first + from, first + to, (byte)0);
+			}
+			for (int rowStart = first + stride; rowStart < (bottom * stride); rowStart += stride) {
+				System.arraycopy(data, first + left, data, rowStart + left, right - left);
+			}
+			return;
+		}
+		setBits(first, left, right, true);
+		for (int i = 0; i < (nRuns * 2); i += 2) {
+			int from = Math.max(x + runs[i], left);
+			int to = Math.min(x + runs[i] + runs[i + 1], right);
+			if (from < to) setBits(first, from, to, false);
+		}
+		// The bytes at either end are merged, so that pixels outside the
+		// band are left alone; the bytes between them are copied whole.
+		int leftByte = left >> 3, rightByte = (right - 1) >> 3;
+		int leftMask = 0xff >>> (left & 7);
+		int rightMask = (0xff << (7 - ((right - 1) & 7))) & 0xff;
+		for (int rowStart = first + stride; rowStart < (bottom * stride); rowStart += stride) {
+			if (leftByte == rightByte) {
+				merge(first + leftByte, rowStart + leftByte, leftMask & rightMask);
+				continue;
+			}
+			merge(first + leftByte, rowStart + leftByte, leftMask);
+			merge(first + rightByte, rowStart + rightByte, rightMask);
+			if ((rightByte - leftByte) > 1) {
+				System.arraycopy(
+					data, first + leftByte + 1, data, rowStart + leftByte + 1, rightByte - leftByte - 1);
+			}
+		}
+	}
+
+	// Copy the bits of mask from one byte to another.
+	private void merge(int from, int to, int mask) {
+		data[to] = (byte)((data[to] & ~mask) | (data[from] & mask));
+	}
+
+	// Set the pixels of a 1-bit row from left to right white, or black.
+	private void setBits(int rowStart, int left, int right, boolean white) {
+		int leftByte = left >> 3, rightByte = (right - 1) >> 3;
+		int leftMask = 0xff >>> (left & 7);
+		int rightMask = (0xff << (7 - ((right - 1) & 7))) & 0xff;
+		if (leftByte == rightByte) {
+			setBits(rowStart + leftByte, leftMask & rightMask, white);
+			return;
+		}
+		setBits(rowStart + leftByte, leftMask, white);
+		byte fill = white ? (byte)0xff : (byte)0;
+		for (int i = leftByte + 1; i < rightByte; i++) data[rowStart + i] = fill;
+		setBits(rowStart + rightByte, rightMask, white);
+	}
+
+	private void setBits(int idx, int mask, boolean white) {
+		data[idx] = (byte)(white ? (data[idx] | mask) : (data[idx] & ~mask));
+	}
+
+	/**
+      * Darken the pixels under a coverage mask, such as a glyph: in
+      * proportion to the coverage if the pixels are gray, or to black where
+      * the coverage is at least half if they are 1-bit.  The mask is
+      * clipped to the raster.
+      * @param mask The coverage of each pixel, 0 to 255, row after row.
+      * @param mw The width of the mask.
+      * @param mh The height of the mask.
+      * @param x The column of the mask's left edge.
+      * @param y The row of the mask's top edge.
+      */
+	void drawMask(byte[] mask, int mw, int mh, int x, int y) {
+		int left = Math.max(x, 0), right = Math.min(x + mw, width);
+		int top = Math.max(y, 0), bottom = Math.min(y + mh, height);
+		for (int row = top; row < bottom; row++) {
+			int m = ((row - y) * mw) - x;
+			int rowStart = row * stride;
+			for (int col = left; col < right; col++) {
+				int coverage = mask[m + col] & 0xff;
+				if (coverage == 0) continue;
+				if (binary) {
+					if (coverage >= 128) data[rowStart + (col >> 3)] &= (byte)~(0x80 >>> (col & 7));
+				} else {
+					int idx = rowStart + col;
+					data[idx] = (byte)Math.min(data[idx] & 0xff, 255 - coverage);
+				}
+			}
+		}
+	}
+}
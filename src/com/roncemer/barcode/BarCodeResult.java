@@ -0,0 +1,166 @@
+// BarCodeResult.java
+// Copyright (c) 2002-2010 Ronald B. Cemer
+// All rights reserved.
+// This software is released under the BSD license.
+// Please see the accompanying LICENSE.txt for details.
+
+package com.roncemer.barcode;
+
+/**
+  * A bar code found by an <code>ImageBarCodeScanner</code>, along with
+  * where and how it was first found.  The location is that of the first
+  * scan line (in scanning order) which decoded the bar code, so it can be
+  * used to crop a region around the bar code and scan it again cheaply.
+  *
+  * @author Ronald B. Cemer
+  */
+public final class BarCodeResult {
+	/** Scan angle of horizontal (left to right) scan lines. */
+	public static final int SCAN_HORIZONTAL = 0;
+	/** Scan angle of upper-left to lower-right diagonal scan lines. */
+	public static final int SCAN_DIAGONAL_DOWN = 45;
+	/** Scan angle of vertical (top to bottom) scan lines. */
+	public static final int SCAN_VERTICAL = 90;
+	/** Scan angle of lower-left to upper-right diagonal scan lines. */
+	public static final int SCAN_DIAGONAL_UP = 135;
+
+	private final String symbology;
+	private final String text;
+	private final int startX, startY, endX, endY;
+	private final int scanAngle;
+	private final int threshold;
+	private final int hitCount;
+	private final int voteCount;
+
+	BarCodeResult(
+		String symbology,
+		String text,
+		int startX,
+		int startY,
+		int endX,
+		int endY,
+		int scanAngle,
+		int threshold,
+		int hitCount,
+		int voteCount) {
+
+		this.symbology = symbology;
+		this.text = text;
+		this.startX = startX;
+		this.startY = startY;
+		this.endX = endX;
+		this.endY = endY;
+		this.scanAngle = scanAngle;
+		this.threshold = threshold;
+		this.hitCount = hitCount;
+		this.voteCount = voteCount;
+	}
+
+	/**
+      * @param hitCount The new hit count.
+      * @param voteCount The new vote count.
+      * @return A copy of this result with different hit and vote counts.
+      */
+	BarCodeResult withCounts(int hitCount, int voteCount) {
+		return new BarCodeResult(
+			symbology,
+			text,
+			startX,
+			startY,
+			endX,
+			endY,
+			scanAngle,
+			threshold,
+			hitCount,
+			voteCount);
+	}
+
+	/**
+      * @return The symbology of the bar code, as returned by
+      * {@link BarCodeDecoder#getSymbology()}.
+      */
+	public String getSymbology() {
+		return symbology;
+	}
+
+	/**
+      * @return The decoded bar code.
+      */
+	public String getText() {
+		return text;
+	}
+
+	/**
+      * @return The x coordinate of the pixel where the scan line entered the
+      * first bar of the bar code.
+      */
+	public int getStartX() {
+		return startX;
+	}
+
+	/**
+      * @return The y coordinate of the pixel where the scan line entered the
+      * first bar of the bar code.
+      */
+	public int getStartY() {
+		return startY;
+	}
+
+	/**
+      * @return The x coordinate of the pixel where the scan line left the
+      * last bar of the bar code.
+      */
+	public int getEndX() {
+		return endX;
+	}
+
+	/**
+      * @return The y coordinate of the pixel where the scan line left the
+      * last bar of the bar code.
+      */
+	public int getEndY() {
+		return endY;
+	}
+
+	/**
+      * @return The direction of the scan line which found the bar code, in
+      * degrees clockwise from the positive x axis (with y pointing down), in
+      * the range 0-179.  See the <code>SCAN_...</code> constants.
+      */
+	public int getScanAngle() {
+		return scanAngle;
+	}
+
+	/**
+      * @return The pixel value below which the scan line's pixels were
+      * treated as bars, or -1 if the bars were found from the scan line's
+      * local edges by adaptive binarization.
+      */
+	public int getThreshold() {
+		return threshold;
+	}
+
+	/**
+      * @return The number of times the bar code was decoded during the scan,
+      * counting every scan line, threshold and pass.
+      */
+	public int getHitCount() {
+		return hitCount;
+	}
+
+	/**
+      * @return The number of independent confirmations of the bar code: the
+      * number of scan lines which decoded it, counting each scan line of
+      * each pass once, however many of its thresholds decoded it.
+      */
+	public int getVoteCount() {
+		return voteCount;
+	}
+
+	public String toString() {
+		return
+			symbology + " [" + text + "] at (" + startX + "," + startY + ")-(" +
+			endX + "," + endY + ") angle " + scanAngle + " threshold " + threshold +
+			" hits " + hitCount + " votes " + voteCount;
+	}
+}
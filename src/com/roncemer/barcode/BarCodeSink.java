@@ -0,0 +1,36 @@
+// BarCodeSink.java
+// Copyright (c) 2002-2010 Ronald B. Cemer
+// All rights reserved.
+// This software is released under the BSD license.
+// Please see the accompanying LICENSE.txt for details.
+
+package com.roncemer.barcode;
+
+/**
+  * Receiver for the bar codes found by a <code>BarCodeDecoder</code>.
+  * Decoders hand each hit to a sink supplied by the caller instead of
+  * collecting them into a result array, so that decoding a scan line
+  * allocates nothing unless a bar code is actually found.
+  *
+  * @author Ronald B. Cemer
+  */
+public interface BarCodeSink {
+	/**
+      * This method gets called each time a decoder decodes a bar code.
+      * @param barCode The decoded bar code.
+      * @param decoder The <code>BarCodeDecoder</code> which found the bar
+      * code.
+      * @param startIdx The index, within the widths passed to the decoder,
+      * of the first bar of the bar code (including its start code).  This
+      * is always the lower index, even if the bar code was read in reverse.
+      * @param endIdx The index just past the last bar of the bar code
+      * (including its stop code).
+      * @return <code>true</code> to continue decoding; <code>false</code> to
+      * stop.
+      */
+	public boolean barCodeFound(
+		String barCode,
+		BarCodeDecoder decoder,
+		int startIdx,
+		int endIdx);
+}
@@ -0,0 +1,294 @@
+// BatchBarCodeRenderer.java
+// Copyright (c) 2002-2010 Ronald B. Cemer
+// All rights reserved.
+// This software is released under the BSD license.
+// Please see the accompanying LICENSE.txt for details.
+
+package com.roncemer.barcode;
+
+import java.awt.*;
+import java.io.*;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.atomic.*;
+import javax.imageio.*;
+
+/**
+  * Headless command-line application which renders a batch of bar code
+  * labels, one per line of a text file, to image files.<p>
+  * Usage: java com.roncemer.barcode.BatchBarCodeRenderer [options]
+  * &lt;textfile|-> &lt;outputdirectory>
+  * <br>
+  * The labels are rendered through a <code>RasterBarCodeRenderer</code>
+  * straight into the pixels of a <code>BarCodeRaster</code>, which each
+  * thread reuses from one label to the next while the label size stays
+  * the same.  The nth label (counting from 0) is written to
+  * <code>nnnnnn.png</code>, or to <code>nnnnnn.pgm</code> or
+  * <code>nnnnnn.pbm</code> in raw format, in the output directory.  A
+  * summary with the throughput in labels per second is written to standard
+  * error.
+  * <p>
+  * Options:
+  * <pre>
+  *   -symbology s    upca or code39 (default: upca)
+  *   -module n       Width of a narrow bar, in pixels (default: 2)
+  *   -height n       Height of the bars, in pixels (default: 80)
+  *   -text n         Height of the text, in pixels, or 0 for none (default: 16)
+  *   -margin n       White margin around each label, in pixels (default: 10)
+  *   -bits n         1 for black and white pixels, 8 for gray (default: 8)
+  *   -format f       png, or raw for binary PGM/PBM (default: png)
+  *   -threads n      Number of rendering threads (default: one per CPU)
+  * </pre>
+  * The exit status is 0 if every label was written, 1 if some could not
+  * be, and 2 for a usage error.
+  *
+  * @author Ronald B. Cemer
+  */
+public class BatchBarCodeRenderer {
+	private final RasterBarCodeRenderer renderer;
+	private final int narrowBarWidth, barHeight, textHeight, margin;
+	private final boolean binary, raw;
+	private final int nThreads;
+	private int nRendered = 0;
+	private int nErrors = 0;
+
+	/**
+      * Construct a new <code>BatchBarCodeRenderer</code>.
+      * @param renderer The renderer to render the labels with.  It is shared
+      * by all of the rendering threads.
+      * @param narrowBarWidth The width of a narrow bar.
+      * @param barHeight The height of the bars.
+      * @param textHeight The height of the text to be renderered under each
+      * bar code, or zero for none.
+      * @param margin The width of the white margin around each bar code.
+      * @param binary <code>true</code> for 1-bit pixels; <code>false</code>
+      * for 8-bit gray pixels.
+      * @param raw <code>true</code> to write binary PGM or PBM files;
+      * <code>false</code> to write PNG files.
+      * @param nThreads The number of rendering threads.
+      */
+	public BatchBarCodeRenderer(
+		RasterBarCodeRenderer renderer,
+		int narrowBarWidth,
+		int barHeight,
+		int textHeight,
+		int margin,
+		boolean binary,
+		boolean raw,
+		int nThreads) {
+
+		this.renderer = renderer;
+		this.narrowBarWidth = narrowBarWidth;
+		this.barHeight = barHeight;
+		this.textHeight = textHeight;
+		this.margin = margin;
+		this.binary = binary;
+		this.raw = raw;
+		this.nThreads = nThreads;
+	}
+
+	/**
+      * Render one label.
+      * @param text The bar code.
+      * @param raster A raster to reuse if it is the right size, or
+      * <code>null</code>.
+      * @return The raster the label was rendered into: <code>raster</code>,
+      * cleared and rendered into, or a new one.
+      */
+	public BarCodeRaster render(String text, BarCodeRaster raster) {
+		Dimension size = renderer.getSize(text, narrowBarWidth, barHeight, textHeight);
+		int w = size.width + (margin * 2), h = size.height + (margin * 2);
+		if ((raster == null) ||
+			(raster.getWidth() != w) ||
+			(raster.getHeight() != h) ||
+			(raster.isBinary() != binary)) {
+			raster = new BarCodeRaster(w, h, binary);
+		} else {
+			raster.clear();
+		}
+		renderer.render(raster, margin, margin, text, narrowBarWidth, barHeight, textHeight);
+		return raster;
+	}
+
+	/**
+      * Render a list of labels and write each to its own file.
+      * @param texts The bar codes.
+      * @param dir The directory to write the files to.
+      * @throws IOException If a label cannot be rendered or its file cannot
+      * be written.  The other labels are still written; the first error is
+      * thrown once they are.
+      * @throws InterruptedException If the calling thread is interrupted.
+      */
+	public void render(final List<String> texts, final File dir)
+		throws IOException, InterruptedException {
+
+		final AtomicInteger next = new AtomicInteger();
+		final IOException[] writeError = new IOException[1];
+		Thread[] workers = new Thread[nThreads];
+		for (int i = 0; i < nThreads; i++) {
+			workers[i] = new Thread("BatchBarCodeRenderer-" + i) {
+				public void run() {
+					BarCodeRaster raster = null;
+					for (int idx; (idx = next.getAndIncrement()) < texts.size(); ) {
+						IOException error;
+						try {
+							raster = render(texts.get(idx), raster);
+							write(raster, new File(dir, fileName(idx)));
+							synchronized (BatchBarCodeRenderer.this) { nRendered++; }
+							continue;
+						} catch (IOException e) {
+							error = e;
+						} catch (RuntimeException e) {
+							// Such as a character the symbology cannot encode;
+							// the worker goes on to the next label.
+							error = new IOException("Cannot render label " + idx + ": " + e, e);
+						}
+						synchronized (BatchBarCodeRenderer.this) { nErrors++; }
+						synchronized (writeError) {
+							if (writeError[0] == null) writeError[0] = error;
+						}
+					}
+				}
+			};
+			workers[i].start();
+		}
+		for (int i = 0; i < nThreads; i++) workers[i].join();
+		if (writeError[0] != null) throw writeError[0];
+	}
+
+	private String fileName(int idx) {
+		return String.format(Locale.ROOT, "%06d", idx) + (raw ? (binary ? ".pbm" : ".pgm") : ".png");
+	}
+
+	private void write(BarCodeRaster raster, File file) throws IOException {
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 65536);
+		try {
+			if (raw) {
+				raster.writeNetpbm(out);
+			} else if (!ImageIO.write(raster.getImage(), "png", out)) {
+				throw new IOException("No PNG writer available");
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+      * @return The number of labels written so far.
+      */
+	public synchronized int getRenderedCount() {
+		return nRendered;
+	}
+
+	/**
+      * @return The number of labels which could not be rendered or
+      * written.
+      */
+	public synchronized int getErrorCount() {
+		return nErrors;
+	}
+
+	private static void usage(String error) {
+		if (error != null) System.err.println(error);
+		System.err.println(
+			"Usage: java com.roncemer.barcode.BatchBarCodeRenderer [options]" +
+			" <textfile|-> <outputdirectory>\n" +
+			"  -symbology s    upca or code39 (default: upca)\n" +
+			"  -module n       Width of a narrow bar, in pixels (default: 2)\n" +
+			"  -height n       Height of the bars, in pixels (default: 80)\n" +
+			"  -text n         Height of the text, in pixels, or 0 for none (default: 16)\n" +
+			"  -margin n       White margin around each label, in pixels (default: 10)\n" +
+			"  -bits n         1 for black and white pixels, 8 for gray (default: 8)\n" +
+			"  -format f       png, or raw for binary PGM/PBM (default: png)\n" +
+			"  -threads n      Number of rendering threads (default: one per CPU)");
+		System.exit(2);
+	}
+
+	private static int intArg(String[] args, int i, int min) {
+		if (i >= args.length) usage("Missing value for " + args[i - 1]);
+		try {
+			int n = Integer.parseInt(args[i]);
+			if (n >= min) return n;
+		} catch (NumberFormatException e) {
+		}
+		usage("Invalid value for " + args[i - 1] + ": " + args[i]);
+		return 0;
+	}
+
+	private static String stringArg(String[] args, int i, String[] allowed) {
+		if (i >= args.length) usage("Missing value for " + args[i - 1]);
+		for (int j = 0; j < allowed.length; j++) {
+			if (allowed[j].equals(args[i])) return args[i];
+		}
+		usage("Invalid value for " + args[i - 1] + ": " + args[i]);
+		return null;
+	}
+
+	public static void main(String[]args) throws Exception {
+		String symbology = "upca";
+		int narrowBarWidth = 2, barHeight = 80, textHeight = 16, margin = 10;
+		boolean binary = false, raw = false;
+		int nThreads = Runtime.getRuntime().availableProcessors();
+		List<String> paths = new ArrayList<String>();
+		for (int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			if (arg.equals("-symbology")) {
+				symbology = stringArg(args, ++i, new String[] { "upca", "code39" });
+			} else if (arg.equals("-module")) {
+				narrowBarWidth = intArg(args, ++i, 1);
+			} else if (arg.equals("-height")) {
+				barHeight = intArg(args, ++i, 1);
+			} else if (arg.equals("-text")) {
+				textHeight = intArg(args, ++i, 0);
+			} else if (arg.equals("-margin")) {
+				margin = intArg(args, ++i, 0);
+			} else if (arg.equals("-bits")) {
+				binary = stringArg(args, ++i, new String[] { "1", "8" }).equals("1");
+			} else if (arg.equals("-format")) {
+				raw = stringArg(args, ++i, new String[] { "png", "raw" }).equals("raw");
+			} else if (arg.equals("-threads")) {
+				nThreads = intArg(args, ++i, 1);
+			} else if ((arg.startsWith("-")) && (!arg.equals("-"))) {
+				usage("Unknown option: " + arg);
+			} else {
+				paths.add(arg);
+			}
+		}
+		if (paths.size() != 2) usage("Please specify a text file and an output directory.");
+
+		List<String> texts = new ArrayList<String>();
+		BufferedReader in = new BufferedReader(paths.get(0).equals("-")
+			? new InputStreamReader(System.in, "UTF-8")
+			: new InputStreamReader(new FileInputStream(paths.get(0)), "UTF-8"));
+		try {
+			for (String line; (line = in.readLine()) != null; ) {
+				if (line.trim().length() > 0) texts.add(line.trim());
+			}
+		} finally {
+			in.close();
+		}
+		File dir = new File(paths.get(1));
+		if ((!dir.isDirectory()) && (!dir.mkdirs())) {
+			usage("Cannot create output directory: " + dir);
+		}
+
+		RasterBarCodeRenderer renderer = symbology.equals("code39")
+			? (RasterBarCodeRenderer)new Code39BarCodeRenderer()
+			: (RasterBarCodeRenderer)new UPCABarCodeRenderer();
+		BatchBarCodeRenderer batch = new BatchBarCodeRenderer(
+			renderer, narrowBarWidth, barHeight, textHeight, margin, binary, raw, nThreads);
+		long start = System.nanoTime();
+		try {
+			batch.render(texts, dir);
+		} catch (IOException e) {
+			System.err.println(e.toString());
+		}
+		double seconds = (System.nanoTime() - start) / 1.0e9;
+		int rendered = batch.getRenderedCount();
+		System.err.println(
+			rendered + " labels rendered, " + batch.getErrorCount() + " errors, in " +
+			String.format(Locale.ROOT, "%.2f", seconds) + " s (" +
+			String.format(Locale.ROOT, "%.2f", rendered / seconds) + " labels/s)");
+		System.exit((batch.getErrorCount() > 0) ? 1 : 0);
+	}
+}
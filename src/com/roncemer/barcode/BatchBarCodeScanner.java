@@ -0,0 +1,532 @@
+// BatchBarCodeScanner.java
+// Copyright (c) 2002-2010 Ronald B. Cemer
+// All rights reserved.
+// This software is released under the BSD license.
+// Please see the accompanying LICENSE.txt for details.
+
+package com.roncemer.barcode;
+
+import java.awt.image.*;
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.*;
+import javax.imageio.*;
+
+/**
+  * Headless command-line application which scans a batch of image files
+  * for bar codes and writes the results as JSON lines.<p>
+  * Usage: java com.roncemer.barcode.BatchBarCodeScanner [options]
+  * &lt;file|directory|glob>...
+  * <br>
+  * Directories are searched recursively for files which
+  * <code>ImageIO</code> can read.  Arguments containing <code>*</code>,
+  * <code>?</code>, <code>[</code> or <code>{</code> are glob patterns, such
+  * as <code>scans/&#42;&#42;/&#42;.jpg</code>.
+  * <p>
+  * Images are read and decompressed by a pool of reader threads while a
+  * pool of worker threads scans the images already read; a bounded queue
+  * between the two limits the number of decoded images in memory.  Each
+  * image produces one line of output, in the order in which the images
+  * finish scanning.  A summary with the throughput in images per second
+  * and the percentiles of the scan latency is written to standard error.
+  * <p>
+  * Options:
+  * <pre>
+  *   -threads n      Number of scanning threads (default: one per CPU)
+  *   -readers n      Number of image reading threads (default: 2)
+  *   -o file         Write the JSON lines to a file instead of stdout
+  *   -spacing n      Scan line spacing (default: 4)
+  *   -regions        Scan only candidate bar code regions
+  *   -lazy           Enhance only the pixels of the scan lines (faster when
+  *                   they sample a small part of the image; vertical and
+  *                   diagonal lines may decode differently)
+  *   -checkdigits    Include check digits in the results
+  *   -nohorizontal   Disable horizontal scanning
+  *   -novertical     Disable vertical scanning
+  *   -nodiagonal     Disable diagonal scanning
+  *   -angles a,b,... Also scan at these angles, in degrees
+  *   -votes n        Scan lines needed to confirm a bar code (default: 1)
+  *   -expect n       Stop once n bar codes are confirmed (default: scan all)
+  *   -adaptive       Binarize each scan line from its own edges
+  *                   (always with sub-pixel bar widths)
+  *   -subpixel       Measure bar widths to a fraction of a pixel
+  *   -metrics        Print the time of each scan stage and the hit rates
+  *   -progressive    Scan coarse to fine, finding large bar codes first
+  *   -budget ms      Stop each scan after this many milliseconds
+  * </pre>
+  * With a time budget, each line also tells whether the scan of the image
+  * was <code>complete</code>.
+  * The exit status is 0 if every image was scanned, 1 if some could not be
+  * read, and 2 for a usage error.
+  *
+  * @author Ronald B. Cemer
+  */
+public class BatchBarCodeScanner {
+	// Marks the end of the queue of images read.
+	private static final Image END = new Image(null, null, null, 0L);
+
+	private final ImageBarCodeScanner scanner;
+	private final boolean includeCheckDigits;
+	private final int nThreads, nReaders;
+	private final Writer out;
+	// Scan latency of each image scanned, in nanoseconds, and the number of
+	// images which could not be read or scanned.
+	private final long[] latencies;
+	private int nScanned = 0;
+	private int nErrors = 0;
+
+	/**
+      * An image file which has been read, or failed to be.
+      */
+	private static final class Image {
+		final File file;
+		final BufferedImage image;
+		final String error;
+		final long readNs;
+
+		Image(File file, BufferedImage image, String error, long readNs) {
+			this.file = file;
+			this.image = image;
+			this.error = error;
+			this.readNs = readNs;
+		}
+	}
+
+	/**
+      * Construct a new <code>BatchBarCodeScanner</code>.
+      * @param scanner The scanner to scan the images with.  It is shared by
+      * all of the scanning threads.
+      * @param includeCheckDigits <code>true</code> to return check digits;
+      * <code>false</code> to strip them off.
+      * @param nThreads The number of scanning threads.
+      * @param nReaders The number of image reading threads.
+      * @param maxImages The maximum number of images which will be scanned.
+      * @param out Where to write the JSON lines.
+      */
+	public BatchBarCodeScanner(
+		ImageBarCodeScanner scanner,
+		boolean includeCheckDigits,
+		int nThreads,
+		int nReaders,
+		int maxImages,
+		Writer out) {
+
+		this.scanner = scanner;
+		this.includeCheckDigits = includeCheckDigits;
+		this.nThreads = nThreads;
+		this.nReaders = nReaders;
+		this.out = out;
+		latencies = new long[maxImages];
+	}
+
+	/**
+      * Read and scan a list of image files, writing one JSON line per file.
+      * @param files The image files.
+      * @throws IOException If the results cannot be written.
+      * @throws InterruptedException If the calling thread is interrupted.
+      */
+	public void scan(List<File> files) throws IOException, InterruptedException {
+		final BlockingQueue<Image> queue = new ArrayBlockingQueue<Image>(nThreads * 2);
+		ExecutorService readers = Executors.newFixedThreadPool(nReaders);
+		for (final File file : files) {
+			readers.execute(new Runnable() {
+				public void run() {
+					Image image = read(file);
+					try {
+						queue.put(image);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+			});
+		}
+		readers.shutdown();
+
+		final IOException[] writeError = new IOException[1];
+		Thread[] workers = new Thread[nThreads];
+		for (int i = 0; i < nThreads; i++) {
+			workers[i] = new Thread("BatchBarCodeScanner-" + i) {
+				public void run() {
+					try {
+						for (Image image; (image = queue.take()) != END; ) {
+							try {
+								scan(image);
+							} catch (IOException e) {
+								// Keep draining the queue, so the readers
+								// don't block forever.
+								synchronized (writeError) {
+									if (writeError[0] == null) writeError[0] = e;
+								}
+							}
+						}
+					} catch (InterruptedException e) {
+					}
+				}
+			};
+			workers[i].start();
+		}
+		readers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		for (int i = 0; i < nThreads; i++) queue.put(END);
+		for (int i = 0; i < nThreads; i++) workers[i].join();
+		out.flush();
+		if (writeError[0] != null) throw writeError[0];
+	}
+
+	private static Image read(File file) {
+		long start = System.nanoTime();
+		try {
+			BufferedImage image = ImageIO.read(file);
+			long readNs = System.nanoTime() - start;
+			if (image == null) return new Image(file, null, "Unsupported image format", readNs);
+			return new Image(file, image, null, readNs);
+		} catch (Exception e) {
+			return new Image(file, null, e.toString(), System.nanoTime() - start);
+		}
+	}
+
+	private void scan(Image image) throws IOException {
+		StringBuilder sb = new StringBuilder(256);
+		sb.append("{\"file\":");
+		appendJson(sb, image.file.getPath());
+		sb.append(",\"readMs\":").append(millis(image.readNs));
+		if (image.error != null) {
+			sb.append(",\"error\":");
+			appendJson(sb, image.error);
+			sb.append("}\n");
+			synchronized (this) { nErrors++; }
+			write(sb);
+			return;
+		}
+		long start = System.nanoTime();
+		ScanResult scan;
+		try {
+			scan = scanner.scanImage(image.image, includeCheckDigits, null);
+		} catch (RuntimeException e) {
+			sb.append(",\"error\":");
+			appendJson(sb, e.toString());
+			sb.append("}\n");
+			synchronized (this) { nErrors++; }
+			write(sb);
+			return;
+		}
+		long scanNs = System.nanoTime() - start;
+		synchronized (this) { latencies[nScanned++] = scanNs; }
+		sb.append(",\"width\":").append(image.image.getWidth());
+		sb.append(",\"height\":").append(image.image.getHeight());
+		sb.append(",\"scanMs\":").append(millis(scanNs));
+		if (scanner.getConfiguration().getTimeBudgetNanos() > 0L) {
+			sb.append(",\"complete\":").append(scan.isComplete());
+		}
+		appendBarCodes(sb, scan.getResults());
+		sb.append("}\n");
+		write(sb);
+	}
+
+	/**
+      * Append the <code>"barcodes"</code> member of a JSON line.
+      */
+	static void appendBarCodes(StringBuilder sb, BarCodeResult[] results) {
+		sb.append(",\"barcodes\":[");
+		for (int i = 0; i < results.length; i++) {
+			BarCodeResult r = results[i];
+			if (i > 0) sb.append(',');
+			sb.append("{\"symbology\":");
+			appendJson(sb, r.getSymbology());
+			sb.append(",\"text\":");
+			appendJson(sb, r.getText());
+			sb.append(",\"startX\":").append(r.getStartX());
+			sb.append(",\"startY\":").append(r.getStartY());
+			sb.append(",\"endX\":").append(r.getEndX());
+			sb.append(",\"endY\":").append(r.getEndY());
+			sb.append(",\"scanAngle\":").append(r.getScanAngle());
+			sb.append(",\"hitCount\":").append(r.getHitCount());
+			sb.append(",\"voteCount\":").append(r.getVoteCount());
+			sb.append('}');
+		}
+		sb.append(']');
+	}
+
+	private void write(StringBuilder sb) throws IOException {
+		synchronized (out) {
+			out.write(sb.toString());
+		}
+	}
+
+	/**
+      * @return The number of images scanned so far.
+      */
+	public synchronized int getScannedCount() {
+		return nScanned;
+	}
+
+	/**
+      * @return The number of images which could not be read or scanned.
+      */
+	public synchronized int getErrorCount() {
+		return nErrors;
+	}
+
+	/**
+      * @param percentile The percentile, from 0 to 100.
+      * @return The given percentile of the scan latencies of the images
+      * scanned so far, in nanoseconds, or 0 if none have been scanned.
+      */
+	public synchronized long getLatencyPercentile(double percentile) {
+		if (nScanned == 0) return 0L;
+		long[] sorted = new long[nScanned];
+		System.arraycopy(latencies, 0, sorted, 0, nScanned);
+		Arrays.sort(sorted);
+		return percentile(sorted, percentile);
+	}
+
+	/**
+      * @param sorted Values in ascending order.
+      * @param percentile The percentile, from 0 to 100.
+      * @return The given percentile of the values, by the nearest-rank
+      * method, or 0 if there are none.
+      */
+	static long percentile(long[] sorted, double percentile) {
+		if (sorted.length == 0) return 0L;
+		int idx = (int)Math.ceil((percentile / 100.0) * sorted.length) - 1;
+		return sorted[Math.max(0, Math.min(idx, sorted.length - 1))];
+	}
+
+	static String millis(long ns) {
+		return String.valueOf(Math.round(ns / 1.0e4) / 100.0);
+	}
+
+	static void appendJson(StringBuilder sb, String s) {
+		sb.append('"');
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			switch (c) {
+			case '"': sb.append("\\\""); break;
+			case '\\': sb.append("\\\\"); break;
+			case '\n': sb.append("\\n"); break;
+			case '\r': sb.append("\\r"); break;
+			case '\t': sb.append("\\t"); break;
+			default:
+				if (c < 0x20) {
+					sb.append("\\u00");
+					sb.append(Character.forDigit(c >> 4, 16));
+					sb.append(Character.forDigit(c & 0xf, 16));
+				} else {
+					sb.append(c);
+				}
+				break;
+			}
+		}
+		sb.append('"');
+	}
+
+	/**
+      * Expand the file, directory and glob arguments into a list of image
+      * files.
+      * @param args The arguments.
+      * @return The image files, sorted within each argument.
+      * @throws IOException If a directory cannot be searched.
+      */
+	public static List<File> expandArguments(List<String> args) throws IOException {
+		Set<String> suffixes = new HashSet<String>();
+		String[] readable = ImageIO.getReaderFileSuffixes();
+		for (int i = 0; i < readable.length; i++) suffixes.add(readable[i].toLowerCase());
+		List<File> files = new ArrayList<File>();
+		for (String arg : args) {
+			List<File> found = new ArrayList<File>();
+			int glob = firstGlobChar(arg);
+			if (glob >= 0) {
+				// Walk from the deepest directory without glob characters.
+				int slash = arg.lastIndexOf(File.separatorChar, glob);
+				if ((slash < 0) && (File.separatorChar != '/')) slash = arg.lastIndexOf('/', glob);
+				Path base = Paths.get((slash < 0) ? "." : ((slash == 0) ? "/" : arg.substring(0, slash)));
+				PathMatcher matcher = FileSystems.getDefault().getPathMatcher
+					("glob:" + ((slash < 0) ? arg : arg.substring(slash + 1)));
+				if (Files.isDirectory(base)) walk(base, matcher, null, found);
+			} else {
+				File f = new File(arg);
+				if (f.isDirectory()) {
+					walk(f.toPath(), null, suffixes, found);
+				} else {
+					found.add(f);
+				}
+			}
+			Collections.sort(found);
+			files.addAll(found);
+		}
+		return files;
+	}
+
+	/**
+      * Add the regular files under a directory which match a glob, relative
+      * to the directory, or which have one of the given suffixes.
+      */
+	private static void walk(
+		Path root,
+		PathMatcher matcher,
+		Set<String> suffixes,
+		List<File> found) throws IOException {
+
+		try (Stream<Path> paths = Files.walk(root)) {
+			for (Iterator<Path> it = paths.iterator(); it.hasNext(); ) {
+				Path p = it.next();
+				if (!Files.isRegularFile(p)) continue;
+				if ((matcher != null) ? matcher.matches(root.relativize(p)) : suffixes.contains(suffix(p))) {
+					found.add(p.toFile());
+				}
+			}
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	private static int firstGlobChar(String s) {
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if ((c == '*') || (c == '?') || (c == '[') || (c == '{')) return i;
+		}
+		return -1;
+	}
+
+	private static String suffix(Path p) {
+		String name = p.getFileName().toString();
+		int dot = name.lastIndexOf('.');
+		return (dot < 0) ? "" : name.substring(dot + 1).toLowerCase();
+	}
+
+	private static void usage(String error) {
+		if (error != null) System.err.println(error);
+		System.err.println(
+			"Usage: java com.roncemer.barcode.BatchBarCodeScanner [options]" +
+			" <file|directory|glob>...\n" +
+			"  -threads n      Number of scanning threads (default: one per CPU)\n" +
+			"  -readers n      Number of image reading threads (default: 2)\n" +
+			"  -o file         Write the JSON lines to a file instead of stdout\n" +
+			"  -spacing n      Scan line spacing (default: 4)\n" +
+			"  -regions        Scan only candidate bar code regions\n" +
+			"  -lazy           Enhance only the pixels of the scan lines (faster when\n" +
+			"                  they sample a small part of the image; vertical and\n" +
+			"                  diagonal lines may decode differently)\n" +
+			"  -checkdigits    Include check digits in the results\n" +
+			"  -nohorizontal   Disable horizontal scanning\n" +
+			"  -novertical     Disable vertical scanning\n" +
+			"  -nodiagonal     Disable diagonal scanning\n" +
+			"  -angles a,b,... Also scan at these angles, in degrees\n" +
+			"  -votes n        Scan lines needed to confirm a bar code (default: 1)\n" +
+			"  -expect n       Stop once n bar codes are confirmed (default: scan all)\n" +
+			"  -adaptive       Binarize each scan line from its own edges\n" +
+			"                  (always with sub-pixel bar widths)\n" +
+			"  -subpixel       Measure bar widths to a fraction of a pixel\n" +
+			"  -metrics        Print the time of each scan stage and the hit rates\n" +
+			"  -progressive    Scan coarse to fine, finding large bar codes first\n" +
+			"  -budget ms      Stop each scan after this many milliseconds");
+		System.exit(2);
+	}
+
+	private static int intArg(String[] args, int i) {
+		if (i >= args.length) usage("Missing value for " + args[i - 1]);
+		try {
+			int n = Integer.parseInt(args[i]);
+			if (n >= 1) return n;
+		} catch (NumberFormatException e) {
+		}
+		usage("Invalid value for " + args[i - 1] + ": " + args[i]);
+		return 0;
+	}
+
+	private static int[] anglesArg(String[] args, int i) {
+		if (i >= args.length) usage("Missing value for " + args[i - 1]);
+		String[] parts = args[i].split(",");
+		int[] angles = new int[parts.length];
+		try {
+			for (int j = 0; j < parts.length; j++) angles[j] = Integer.parseInt(parts[j].trim());
+		} catch (NumberFormatException e) {
+			usage("Invalid value for " + args[i - 1] + ": " + args[i]);
+		}
+		return angles;
+	}
+
+	public static void main(String[]args) throws Exception {
+		int nThreads = Runtime.getRuntime().availableProcessors();
+		int nReaders = 2;
+		String outFile = null;
+		boolean includeCheckDigits = false;
+		ScanConfiguration config = ScanConfiguration.DEFAULT;
+		List<String> paths = new ArrayList<String>();
+		for (int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			if (arg.equals("-threads")) {
+				nThreads = intArg(args, ++i);
+			} else if (arg.equals("-readers")) {
+				nReaders = intArg(args, ++i);
+			} else if (arg.equals("-o")) {
+				if (++i >= args.length) usage("Missing value for -o");
+				outFile = args[i];
+			} else if (arg.equals("-spacing")) {
+				config = config.withScanLineSpacing(intArg(args, ++i));
+			} else if (arg.equals("-regions")) {
+				config = config.withRegionDetection(true);
+			} else if (arg.equals("-lazy")) {
+				config = config.withLazyEnhancement(true);
+			} else if (arg.equals("-checkdigits")) {
+				includeCheckDigits = true;
+			} else if (arg.equals("-nohorizontal")) {
+				config = config.withHorizontalScanning(false);
+			} else if (arg.equals("-novertical")) {
+				config = config.withVerticalScanning(false);
+			} else if (arg.equals("-nodiagonal")) {
+				config = config.withDiagonalScanning(false);
+			} else if (arg.equals("-angles")) {
+				config = config.withAdditionalScanAngles(anglesArg(args, ++i));
+			} else if (arg.equals("-votes")) {
+				config = config.withRequiredVotes(intArg(args, ++i));
+			} else if (arg.equals("-expect")) {
+				config = config.withExpectedBarCodes(intArg(args, ++i));
+			} else if (arg.equals("-adaptive")) {
+				config = config.withAdaptiveBinarization(true);
+			} else if (arg.equals("-subpixel")) {
+				config = config.withSubPixelEdges(true);
+			} else if (arg.equals("-metrics")) {
+				config = config.withMetrics(new ScanMetrics());
+			} else if (arg.equals("-progressive")) {
+				config = config.withProgressiveScanning(true);
+			} else if (arg.equals("-budget")) {
+				config = config.withTimeBudget(intArg(args, ++i), TimeUnit.MILLISECONDS);
+			} else if (arg.startsWith("-")) {
+				usage("Unknown option: " + arg);
+			} else {
+				paths.add(arg);
+			}
+		}
+		if (paths.isEmpty()) usage("Please specify one or more images, directories or globs.");
+
+		List<File> files = expandArguments(paths);
+		ImageBarCodeScanner scanner = new ImageBarCodeScanner();
+		scanner.setConfiguration(config);
+		Writer out = new BufferedWriter((outFile != null)
+			? new OutputStreamWriter(new FileOutputStream(outFile), "UTF-8")
+			: new OutputStreamWriter(System.out, "UTF-8"));
+		BatchBarCodeScanner batch = new BatchBarCodeScanner(
+			scanner, includeCheckDigits, nThreads, nReaders, files.size(), out);
+		long start = System.nanoTime();
+		try {
+			batch.scan(files);
+		} finally {
+			if (outFile != null) out.close(); else out.flush();
+		}
+		double seconds = (System.nanoTime() - start) / 1.0e9;
+		int scanned = batch.getScannedCount();
+		System.err.println(
+			scanned + " images scanned, " + batch.getErrorCount() + " errors, in " +
+			String.format(Locale.ROOT, "%.2f", seconds) + " s (" +
+			String.format(Locale.ROOT, "%.2f", scanned / seconds) + " images/s)");
+		System.err.println(
+			"Scan latency: p50 " + millis(batch.getLatencyPercentile(50.0)) +
+			" ms, p90 " + millis(batch.getLatencyPercentile(90.0)) +
+			" ms, p99 " + millis(batch.getLatencyPercentile(99.0)) +
+			" ms, max " + millis(batch.getLatencyPercentile(100.0)) + " ms");
+		if (config.getMetrics() != null) System.err.println(config.getMetrics());
+		System.exit((batch.getErrorCount() > 0) ? 1 : 0);
+	}
+}
@@ -20,157 +20,185 @@ public class Code39BarCodeDecoder
 	extends BarCodeDecoder
 	implements Code39Constants {
 
+	// Each character is looked up by a key of one bit per element, set if
+	// the element is wide, first element in the high bit: 10 bits for a
+	// character plus its trailing gap, or 9 bits for the end code.
+	private static final int startKey = key(startEndCode, 10);
+	private static final int endKey = startKey >>> 1;
+	// Index in codeChars of the character with each key, or -1.
+	private static final byte[] charIndex = new byte[1 << 10];
+	static {
+		Arrays.fill(charIndex, (byte)-1);
+		for (int i = codePatterns.length - 1; i >= 0; i--) {
+			charIndex[key(codePatterns[i], 10)] = (byte)i;
+		}
+	}
+	// Result of decodeAt() when no bar code starts at the position, and
+	// when the sink aborted decoding.
+	private static final int NOT_FOUND = -1;
+	private static final int ABORTED = -2;
+	// Number of bars and spaces in the shortest bar code: the start code
+	// and one character, each with its trailing gap, and the end code.
+	private static final int minBarsAndSpaces = 29;
+
+	private static int key(int[] pattern, int n) {
+		int key = 0;
+		for (int i = 0; i < n; i++) key = (key << 1) | (pattern[i] - 1);
+		return key;
+	}
+
 	/**
       * Decode a Code39 barcode given relative widths of alternating bars and
-      * spaces, starting with the width of the first suspected bar.
+      * spaces, starting with the width of the first suspected bar.  Bar codes
+      * are looked for in both directions in a single pass: forward from the
+      * first bar, and backward from the last bar.
       * @param widths The relative widths of alternating bars and spaces,
       * starting with the width of the first suspected bar.  There must be at
-      * least 19 elements in this array.
+      * least 29 elements in this array.
       * @param numBarsAndSpaces The total number of bars and spaces.Must be
       * less than or equal to <code>widths.length</code>.  This allows
       * applications to pre-allocate a buffer of a fixed size, and to load
       * widths into the front of the buffer, thus making the buffer re-usable.
-      * NOTE: There must be at least 19 total bars and spaces in a Code39 bar
+      * NOTE: There must be at least 29 total bars and spaces in a Code39 bar
       * code.
       * @param includeCheckDigits <code>true</code> to return check digits;
       * <code>false</code> to strip them off.  Since Code39 format does not
       * include check digits, this argument has no meaning.
-      * @param listener The <code>BarCodeDecoderListener</code> to be notified
-      * each time a bar code is decoded, or <code>null</code> if none.
-      * @return A <code>String</code> array containing all decoded bar codes.
-      * This array will be of zero length if no bar codes were successfully
-      * decoded.
+      * @param context The calling thread's scratch buffers.
+      * @param sink The <code>BarCodeSink</code> which receives each decoded
+      * bar code.
+      * @return <code>true</code> if decoding ran to completion;
+      * <code>false</code> if the sink aborted it.
       */
-	public String[] decode(
+	public boolean decode(
 		int[] widths,
 		int numBarsAndSpaces,
 		boolean includeCheckDigits,
-		BarCodeDecoderListener listener) {
+		ScanContext context,
+		BarCodeSink sink) {
 
-		abortedByListener = false;
-		int[] widthThresh = new int[6];
-		int[] charBarWidths = new int[10];
-		ArrayList barCodes = new ArrayList();
-		StringBuffer sb = new StringBuffer(32);
+		int[] widthThresh = context.getWidthThresh(6);
+		StringBuilder sb = context.getStringBuilder();
 		// A space on the end doesn't do us any good.
 		// Since the first width is always a bar, we need an odd number
 		// of widths in order to also end on a bar.
 		if ((numBarsAndSpaces & 0x01) == 0) numBarsAndSpaces--;
+		// startIdx counts bars from the start in the forward direction and
+		// from the end in the reverse direction.  Each direction skips past
+		// the end code of the last bar code it found.
+		int nextForward = 0, nextReverse = 0;
+		for (int startIdx = 0; (startIdx + minBarsAndSpaces) <= numBarsAndSpaces; startIdx += 2) {
+			if (startIdx >= nextForward) {
+				int endIdx = decodeAt(
+					widths, numBarsAndSpaces, startIdx, false, widthThresh, sb, sink);
+				if (endIdx == ABORTED) return false;
+				if (endIdx >= 0) nextForward = endIdx + 12;
+			}
+			if (startIdx >= nextReverse) {
+				int endIdx = decodeAt(
+					widths, numBarsAndSpaces, startIdx, true, widthThresh, sb, sink);
+				if (endIdx == ABORTED) return false;
+				if (endIdx >= 0) nextReverse = endIdx + 12;
+			}
+		}
+		return true;
+	}
+
+	/**
+      * Decode the bar code whose start code begins <code>startIdx</code>
+      * elements from the start (or, if reversed, from the end) of the
+      * widths, if there is one.
+      * @return The position of the end code, counted the same way, if one
+      * was found; <code>NOT_FOUND</code> if not; or <code>ABORTED</code> if
+      * the sink aborted decoding.
+      */
+	private final int decodeAt(
+		int[] widths,
+		int numBarsAndSpaces,
+		int startIdx,
+		boolean reversed,
+		int[] widthThresh,
+		StringBuilder sb,
+		BarCodeSink sink) {
+
 		int nMinus1 = numBarsAndSpaces - 1;
-		for (int dir = 0; dir < 2; dir++) {
-			boolean reversed = (dir > 0);
-			for (int startIdx = 0; (startIdx + 19) <= numBarsAndSpaces; startIdx += 2) {
-				// Calculate width thresholds based on first bar and
-				// look for start code.
-				if (reversed) {
-					int revIdx = nMinus1 - startIdx;
-					calculateWidthThresh(widthThresh, widths, revIdx, startEndCode, true);
-					getNextSamplesReverse(charBarWidths, widthThresh, widths, revIdx, 10);
-				} else {
-					calculateWidthThresh(widthThresh, widths, startIdx, startEndCode, false);
-					getNextSamples(charBarWidths, widthThresh, widths, startIdx, 10);
-				}
-///for (int i = 0; i < 10; i++) System.out.print(charBarWidths[i]);
-///System.out.println();
-				if (!compare(charBarWidths, startEndCode, 10)) {
-					continue;
-				}
-///System.out.println("*** FOUND START CODE reversed="+reversed);
-				for (int i = startIdx + 10; (i + 9) <= numBarsAndSpaces; i += 10) {
-					// Look for end code.
+		int step = reversed ? -1 : 1;
+		int first = reversed ? (nMinus1 - startIdx) : startIdx;
+		// Calculate width thresholds based on first bar and
+		// look for start code.
+		calculateWidthThresh(widthThresh, widths, first, step);
+		if (readKey(widthThresh, widths, first, step, 10) != startKey) return NOT_FOUND;
+		sb.setLength(0);
+		for (int i = startIdx + 10; (i + 9) <= numBarsAndSpaces; i += 10) {
+			int idx = reversed ? (nMinus1 - i) : i;
+			// Look for end code.
+			int key = readKey(widthThresh, widths, idx, step, 9);
+			if (key == endKey) {
+				if (sb.length() > 0) {
+					boolean keepGoing;
 					if (reversed) {
-						int revIdx = nMinus1 - i;
-						getNextSamplesReverse(charBarWidths, widthThresh, widths, revIdx, 9);
+						keepGoing = sink.barCodeFound(
+							sb.toString(),
+							this,
+							nMinus1 - (i + 8),
+							(nMinus1 - startIdx) + 1);
 					} else {
-						getNextSamples(charBarWidths, widthThresh, widths, i, 9);
-					}
-					if (compare(charBarWidths, startEndCode, 9)) {
-///System.out.println("*** FOUND END CODE reversed="+reversed);
-						if (sb.length() > 0) {
-							String bc = sb.toString();
-							barCodes.add(bc);
-							if (listener != null) {
-								if (!listener.barCodeFound(bc, this)) {
-									abortedByListener = true;
-									dir = 2;
-									startIdx = numBarsAndSpaces;
-									break;
-								}
-							}
-						}
-						sb.setLength(0);
-						startIdx = (i + 10) & 0xfffffffe;
-						break;
-					}
-					if ((i + 9) >= numBarsAndSpaces) break;
-					if (reversed) {
-						charBarWidths[9] =
-							normalizeWidth(widthThresh, widths[nMinus1 - (i + 9)], false);
-					} else {
-						charBarWidths[9] =
-							normalizeWidth(widthThresh, widths[i + 9], false);
-					}
-///for (int j = 0; j < 10; j++) System.out.print(charBarWidths[j]);
-///System.out.println();
-					boolean validChar = false;
-					for (int j = 0; j < codePatterns.length; j++) {
-						if (compare(charBarWidths, codePatterns[j], 10)) {
-							validChar = true;
-							sb.append(codeChars.charAt(j));
-///
-///System.out.println(sb.toString());
-						}
+						keepGoing = sink.barCodeFound(sb.toString(), this, startIdx, i + 9);
 					}
-					if (!validChar) {
-///
-///if (sb.length() > 0) {
-///    System.out.print("                ");
-///    for (int j = 0; j < 10; j++) System.out.print(charBarWidths[j]);
-///    System.out.println();
-///}
-						sb.setLength(0);
-						break;
-					}
-///         if (reversed) {
-///         int revIdx = nMinus1-i;
-///         calculateWidthThresh
-///             (widthThresh, widths, revIdx, charBarWidths, true);
-///         } else {
-///         calculateWidthThresh
-///             (widthThresh, widths, i, charBarWidths, false);
-///         }
+					if (!keepGoing) return ABORTED;
 				}
-			}					// for (int startIdx = 0; ...
-		}						// for (int dir = 0; dir < 2; dir++)
-		String[]result = new String[barCodes.size()];
-		barCodes.toArray(result);
-		return result;
+				return i;
+			}
+			if (((i + 9) >= numBarsAndSpaces) || (key < 0)) break;
+			int gap = normalizeWidth(widthThresh, widths[idx + (9 * step)], false);
+			if ((gap != 1) && (gap != 2)) break;
+			int c = charIndex[(key << 1) | (gap - 1)];
+			if (c < 0) break;
+			sb.append(codeChars.charAt(c));
+		}
+		return NOT_FOUND;
 	}
 
-	private final void getNextSamples
-		(int[]dest, int[]widthThresh, int[]widths, int startIdx, int n) {
+	/**
+      * @return <code>"Code 39"</code>.
+      */
+	public String getSymbology() {
+		return "Code 39";
+	}
 
-		int i = 0;
-		while ((i + 1) < n) {
-			dest[i++] = normalizeWidth(widthThresh, widths[startIdx++], true);
-			dest[i++] = normalizeWidth(widthThresh, widths[startIdx++], false);
-		}
-		if (i < n) {
-			dest[i++] = normalizeWidth(widthThresh, widths[startIdx++], true);
-		}
+	/**
+      * @return 29: the start code and one character, each with the gap
+      * after it, and the end code.
+      */
+	public int getMinBarsAndSpaces() {
+		return minBarsAndSpaces;
 	}
 
-	private final void getNextSamplesReverse
-		(int[]dest, int[]widthThresh, int[]widths, int startIdx, int n) {
+	/**
+      * @return 10.
+      */
+	public int getQuietZoneModules() {
+		return 10;
+	}
 
-		int i = 0;
-		while ((i + 1) < n) {
-			dest[i++] = normalizeWidth(widthThresh, widths[startIdx--], true);
-			dest[i++] = normalizeWidth(widthThresh, widths[startIdx--], false);
-		}
-		if (i < n) {
-			dest[i++] = normalizeWidth(widthThresh, widths[startIdx--], true);
+	/**
+      * @return 3, the widest ratio of wide to narrow elements.
+      */
+	public int getMaxElementModules() {
+		return 3;
+	}
+
+	// Read the normalized widths of n elements, the first of them a bar,
+	// stepping through the widths by step, as a key of one bit per element.
+	// Returns -1 if any element is neither narrow nor wide.
+	private final int readKey(int[]widthThresh, int[]widths, int idx, int step, int n) {
+		int key = 0;
+		for (int i = 0; i < n; i++, idx += step) {
+			int w = normalizeWidth(widthThresh, widths[idx], ((i & 0x01) == 0));
+			if ((w != 1) && (w != 2)) return -1;
+			key = (key << 1) | (w - 1);
 		}
+		return key;
 	}
 
 	private final int divRound(int num, int denom) {
@@ -181,22 +209,20 @@ public class Code39BarCodeDecoder
 		int[]widthThresh,
 		int[]widths,
 		int startIdx,
-		int[]code,
-		boolean reversed) {
+		int dir) {
 
 		int wideBarWidth = 0, wideSpaceWidth = 0;
-		int dir = reversed ? -1 : 1;
 		for (int i = 0; i < 10;) {
 			// bar
 			int sample = widths[startIdx];
 			startIdx += dir;
-			if (code[i++] == 1)
+			if (startEndCode[i++] == 1)
 				sample *= 2;
 			wideBarWidth += sample;
 			// space
 			sample = widths[startIdx];
 			startIdx += dir;
-			if (code[i++] == 1)
+			if (startEndCode[i++] == 1)
 				sample *= 2;
 			wideSpaceWidth += sample;
 		}
@@ -220,13 +246,6 @@ public class Code39BarCodeDecoder
 		return 1;
 	}
 
-	private final boolean compare(int[]charBarWidths, int[]candidate, int n) {
-		for (int i = 0; i < n; i++) {
-			if (charBarWidths[i] != candidate[i]) return false;
-		}
-		return true;
-	}
-
 /*
     public static void main(String[] args) {
 		int[] widths = new int[] {
@@ -12,10 +12,15 @@ import java.awt.geom.*;
 import javax.swing.*;
 
 /**
-  * This class renders Code 3 of 9 bar codes to a <code>Graphics</code> surface.
+  * This class renders Code 3 of 9 bar codes to a <code>Graphics</code> surface,
+  * or into a <code>BarCodeRaster</code>.
   */
 public class Code39BarCodeRenderer
-	implements BarCodeRenderer, Code39Constants {
+	implements RasterBarCodeRenderer, Code39Constants {
+	// Number of modules in a character, including the gap after it.
+	private static final int charModules = 13;
+	// Glyphs of the text of the last label rendered.
+	private volatile GlyphCache.Glyphs glyphs;
 
 	/**
       * Render a Code 3 of 9 bar code to a <code>Graphics</code> surface.
@@ -35,19 +40,11 @@ public class Code39BarCodeRenderer
 		int barHeight,
 		int textHeight) {
 
-		// Convert lowercase characters to uppercase and remove any invalid characters.
-		StringBuffer sb = new StringBuffer();
+		barCode = normalize(barCode);
 		int len = barCode.length();
-		for (int i = 0; i < len; i++) {
-			char c = Character.toUpperCase(barCode.charAt(i));
-			if (codeChars.indexOf(c) >= 0) {
-				sb.append(c);
-			}
-		} barCode = sb.toString();
-		len = barCode.length();
 
 		// Render the bar code.
-		int charWidth = narrowBarWidth * 13;
+		int charWidth = narrowBarWidth * charModules;
 		int x = 0;
 		render(g, startEndCode, narrowBarWidth, barHeight, x);
 		x += charWidth;
@@ -81,6 +78,91 @@ public class Code39BarCodeRenderer
 		}
 	}
 
+	// Convert lowercase characters to uppercase and remove any invalid characters.
+	private static String normalize(String barCode) {
+		StringBuffer sb = new StringBuffer();
+		int len = barCode.length();
+		for (int i = 0; i < len; i++) {
+			char c = Character.toUpperCase(barCode.charAt(i));
+			if (codeChars.indexOf(c) >= 0) {
+				sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+      * Get the size of a rendered Code 3 of 9 bar code.
+      * @param barCode The bar code.
+      * @param narrowBarWidth The width of a narrow bar.
+      * @param barHeight The height of the bars.
+      * @param textHeight The height of the text to be renderered under the
+      * bar code, or zero for none.
+      * @return The width and height of the bar code, in pixels.
+      */
+	public Dimension getSize(
+		String barCode,
+		int narrowBarWidth,
+		int barHeight,
+		int textHeight) {
+
+		int width = (normalize(barCode).length() + 2) * charModules * narrowBarWidth;
+		return new Dimension(width, barHeight + Math.max(textHeight, 0));
+	}
+
+	/**
+      * Render a Code 3 of 9 bar code into a <code>BarCodeRaster</code>, laid
+      * out as by {@link #render(Graphics, String, int, int, int)}.
+      * @param raster The raster to render into.
+      * @param x The column of the bar code's left edge.
+      * @param y The row of the bar code's top edge.
+      * @param barCode The bar code, as for
+      * {@link #render(Graphics, String, int, int, int)}.
+      * @param narrowBarWidth The width of a narrow bar.
+      * @param barHeight The height of the bars.
+      * @param textHeight The height of the text to be renderered under the
+      * bar code, or zero for none.
+      */
+	public void render(
+		BarCodeRaster raster,
+		int x,
+		int y,
+		String barCode,
+		int narrowBarWidth,
+		int barHeight,
+		int textHeight) {
+
+		barCode = normalize(barCode);
+		int len = barCode.length();
+		int charWidth = narrowBarWidth * charModules;
+		// Each run is an offset from the left edge of the bar code and a
+		// width.
+		int[] runs = new int[(len + 2) * charModules];
+		int nRuns = 0;
+		int pos = 0;
+		for (int i = -1; i <= len; i++) {
+			int[] pattern = ((i == -1) || (i == len)) ?
+				startEndCode : codePatterns[codeChars.indexOf(barCode.charAt(i))];
+			int elementPos = pos;
+			for (int j = 0; j < pattern.length; j++) {
+				int w = pattern[j] * narrowBarWidth;
+				if ((j & 0x01) == 0) {
+					runs[nRuns * 2] = elementPos;
+					runs[(nRuns * 2) + 1] = w;
+					nRuns++;
+				}
+				elementPos += w;
+			}
+			pos += charWidth;
+		}
+		raster.paintBand(x, y, pos, barHeight, runs, nRuns);
+		if ((textHeight > 0) && (len > 0)) {
+			GlyphCache.Glyphs glyphs = GlyphCache.get(this.glyphs, textHeight, charWidth, 1.0);
+			this.glyphs = glyphs;
+			glyphs.draw(raster, barCode, x + charWidth, y + barHeight + textHeight);
+		}
+	}
+
 	private static void render(
 		Graphics g,
 	   int[]pattern,
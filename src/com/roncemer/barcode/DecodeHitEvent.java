@@ -0,0 +1,45 @@
+// DecodeHitEvent.java
+// Copyright (c) 2002-2010 Ronald B. Cemer
+// All rights reserved.
+// This software is released under the BSD license.
+// Please see the accompanying LICENSE.txt for details.
+
+package com.roncemer.barcode;
+
+import jdk.jfr.*;
+
+/**
+  * Flight Recorder event for each bar code which a
+  * <code>BarCodeDecoder</code> finds on a scan line.  A scan may find the
+  * same bar code on many scan lines and at many thresholds, so this event
+  * is disabled by default; enable
+  * <code>com.roncemer.barcode.DecodeHit</code> in the recording's settings
+  * to record it.
+  *
+  * @author Ronald B. Cemer
+  */
+@Name("com.roncemer.barcode.DecodeHit")
+@Label("Bar Code Decode Hit")
+@Category({ "JavaBar" })
+@Description("Bar code found by a decoder on one scan line")
+@Enabled(false)
+@StackTrace(false)
+final class DecodeHitEvent extends Event {
+	@Label("Symbology")
+	String symbology;
+
+	@Label("Bar Code")
+	String text;
+
+	@Label("Scan Angle")
+	@Description("Direction of the scan line, in degrees clockwise from the x axis")
+	int scanAngle;
+
+	@Label("Pass")
+	@Description("Pass of the scan, by enhancement threshold and intensity")
+	int pass;
+
+	@Label("Threshold")
+	@Description("Gray level which separated bars from spaces, or -1 for edge detection")
+	int threshold;
+}
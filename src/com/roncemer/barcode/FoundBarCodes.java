@@ -0,0 +1,165 @@
+// FoundBarCodes.java
+// Copyright (c) 2002-2010 Ronald B. Cemer
+// All rights reserved.
+// This software is released under the BSD license.
+// Please see the accompanying LICENSE.txt for details.
+
+package com.roncemer.barcode;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+  * Concurrent set of the bar codes found while scanning an image, keyed by
+  * symbology and text.
+  * Each hit is added along with an order key which describes where in
+  * the scan it was found (pass, scan line, threshold step, decoder).  The
+  * set keeps the hit with the lowest order key seen for each bar code, and
+  * counts the others, so the final ordering and locations are the same as
+  * those of a single-threaded scan, no matter which thread happened to find
+  * a bar code first.
+  * <p>
+  * Hits may also carry a vote: the first hit of a bar code on each scan
+  * line does, and further hits on the same line do not.  A bar code is
+  * confirmed once it has the required number of votes, and only confirmed
+  * bar codes are returned.  Each bar code may also be published to an
+  * <code>AsyncScan</code> the moment it is confirmed.
+  *
+  * @author Ronald B. Cemer
+  */
+class FoundBarCodes {
+	private final ConcurrentHashMap<String, Entry> found =
+		new ConcurrentHashMap<String, Entry>();
+	private final int requiredVotes;
+	private final AtomicInteger confirmed = new AtomicInteger();
+	// Where to publish newly confirmed bar codes, or null.
+	private final AsyncScan stream;
+
+	// The first hit of a bar code and the numbers of hits and votes.  Only
+	// modified inside ConcurrentHashMap.compute(), which locks the entry.
+	private static final class Entry {
+		long order;
+		BarCodeResult first;
+		int hits;
+		int votes;
+	}
+
+	/**
+      * Construct a new, empty set.
+      * @param requiredVotes The number of votes needed to confirm a bar
+      * code.
+      */
+	FoundBarCodes(int requiredVotes) {
+		this(requiredVotes, null);
+	}
+
+	/**
+      * Construct a new, empty set which publishes each bar code as it is
+      * confirmed.
+      * @param requiredVotes The number of votes needed to confirm a bar
+      * code.
+      * @param stream Where to publish the bar codes, or <code>null</code>.
+      */
+	FoundBarCodes(int requiredVotes, AsyncScan stream) {
+		this.requiredVotes = requiredVotes;
+		this.stream = stream;
+	}
+
+	/**
+      * Build an order key.
+      * @param pass The index of the threshold/intensity pass (0-4).
+      * @param line The index of the scan line within the pass, counting all
+      * scan directions in scanning order.
+      * @param thresholdStep The index of the threshold step within the
+      * scan line.
+      * @param decoderIdx The index of the decoder within the scanner's
+      * decoder array.
+      * @return The order key.
+      */
+	static final long orderKey(int pass, int line, int thresholdStep, int decoderIdx) {
+		return
+			(((long)pass) << 60) |
+			(((long)line) << 32) |
+			(((long)(thresholdStep & 0xffff)) << 16) |
+			((long)((decoderIdx & 0xff) << 8));
+	}
+
+	/**
+      * Add a hit to the set.
+      * @param hit The decoded bar code and where it was found.  Its hit
+      * count is ignored.
+      * @param order The order key at which the bar code was found.  The low
+      * 8 bits are reserved for the index of the bar code within a single
+      * decoder call.
+      * @param vote <code>true</code> if this is the first hit of the bar
+      * code on its scan line.
+      * @return <code>true</code> if this hit confirmed the bar code, by
+      * bringing it to the required number of votes.
+      */
+	boolean add(final BarCodeResult hit, final long order, final boolean vote) {
+		String key = hit.getSymbology() + '\u0000' + hit.getText();
+		// The bar code confirmed by this hit, if any, captured under the
+		// entry's lock and published outside it.
+		final BarCodeResult[] newlyConfirmed = new BarCodeResult[1];
+		found.compute(key, (k, entry) -> {
+			if (entry == null) {
+				entry = new Entry();
+				entry.order = order;
+				entry.first = hit;
+			} else if (order < entry.order) {
+				entry.order = order;
+				entry.first = hit;
+			}
+			entry.hits++;
+			if (vote && ((++entry.votes) == requiredVotes)) {
+				confirmed.incrementAndGet();
+				newlyConfirmed[0] = entry.first.withCounts(entry.hits, entry.votes);
+			}
+			return entry;
+		});
+		if (newlyConfirmed[0] == null) return false;
+		if (stream != null) stream.publish(newlyConfirmed[0]);
+		return true;
+	}
+
+	/**
+      * @return The number of distinct bar codes confirmed so far.
+      */
+	int getConfirmedCount() {
+		return confirmed.get();
+	}
+
+	/**
+      * @return The number of votes needed to confirm a bar code.
+      */
+	int getRequiredVotes() {
+		return requiredVotes;
+	}
+
+	/**
+      * @return The number of distinct bar codes found so far, confirmed or
+      * not.
+      */
+	int size() {
+		return found.size();
+	}
+
+	/**
+      * @return All confirmed bar codes, in the order in which a
+      * single-threaded scan would have found them.
+      */
+	BarCodeResult[] toArray() {
+		ArrayList<Entry> entries = new ArrayList<Entry>(found.size());
+		for (Entry entry : found.values()) {
+			if (entry.votes >= requiredVotes) entries.add(entry);
+		}
+		Collections.sort(entries, (a, b) -> Long.compare(a.order, b.order));
+		BarCodeResult[] result = new BarCodeResult[entries.size()];
+		for (int i = 0; i < result.length; i++) {
+			Entry entry = entries.get(i);
+			result[i] = entry.first.withCounts(entry.hits, entry.votes);
+		}
+		return result;
+	}
+}
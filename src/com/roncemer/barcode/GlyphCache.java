@@ -0,0 +1,193 @@
+// GlyphCache.java
+// Copyright (c) 2002-2010 Ronald B. Cemer
+// All rights reserved.
+// This software is released under the BSD license.
+// Please see the accompanying LICENSE.txt for details.
+
+package com.roncemer.barcode;
+
+import java.awt.*;
+import java.awt.font.*;
+import java.awt.geom.*;
+import java.awt.image.*;
+import java.util.*;
+
+/**
+  * Cache of the glyphs of the text under rendered bar codes, so that
+  * <code>RasterBarCodeRenderer</code>s copy each character from a
+  * coverage mask rather than deriving a font and drawing it through
+  * <code>Graphics</code> for every bar code.
+  * <p>
+  * The text is set in the same font as the <code>Graphics</code>
+  * renderers use: monospaced, stretched to the text height and to a given
+  * width per character, and optionally scaled down.  The glyphs of every
+  * printable ASCII character of such a font are drawn once, when it is
+  * first asked for, and kept in a least-recently-used cache shared by all
+  * renderers.  Each renderer also keeps the glyphs it used last, and only
+  * looks in the cache when the size of its text changes.
+  * <p>
+  * This class should never be instantiated, since all methods are static.
+  *
+  * @author Ronald B. Cemer
+  */
+final class GlyphCache {
+	// Maximum number of fonts kept.
+	private static final int maxCachedFonts = 64;
+	private static final char firstChar = ' ', lastChar = '~';
+
+	/**
+      * The glyphs of one font.  Immutable once built.
+      */
+	static final class Glyphs {
+		// The font, as passed to get().
+		private final int textHeight;
+		private final double charWidth, scale;
+		// Coverage mask of each character, or null for none, and its size
+		// and the offset of its top left corner from the character's origin
+		// on the baseline.
+		private final byte[][] masks = new byte[(lastChar - firstChar) + 1][];
+		private final int[] maskW = new int[masks.length], maskH = new int[masks.length];
+		private final int[] offX = new int[masks.length], offY = new int[masks.length];
+		private final int[] advance = new int[masks.length];
+
+		Glyphs(int textHeight, double charWidth, double scale) {
+			this.textHeight = textHeight;
+			this.charWidth = charWidth;
+			this.scale = scale;
+		}
+
+		/**
+          * @return <code>true</code> if these are the glyphs of the given
+          * font.
+          */
+		boolean isFont(int textHeight, double charWidth, double scale) {
+			return
+				(textHeight == this.textHeight) &&
+				(charWidth == this.charWidth) &&
+				(scale == this.scale);
+		}
+
+		/**
+          * @return The width of a string, in pixels.
+          */
+		int stringWidth(String s) {
+			int w = 0;
+			for (int i = 0; i < s.length(); i++) {
+				int c = s.charAt(i) - firstChar;
+				if ((c >= 0) && (c < masks.length)) w += advance[c];
+			}
+			return w;
+		}
+
+		/**
+          * Draw a string.  Characters outside printable ASCII are skipped.
+          * @param raster The raster to draw into.
+          * @param s The string.
+          * @param x The left edge of the first character.
+          * @param baseline The row of the baseline.
+          */
+		void draw(BarCodeRaster raster, String s, int x, int baseline) {
+			for (int i = 0; i < s.length(); i++) {
+				int c = s.charAt(i) - firstChar;
+				if ((c < 0) || (c >= masks.length)) continue;
+				if (masks[c] != null) {
+					raster.drawMask(masks[c], maskW[c], maskH[c], x + offX[c], baseline + offY[c]);
+				}
+				x += advance[c];
+			}
+		}
+	}
+
+	// Fonts in least-recently-used order, guarded by the lock on the
+	// cache.
+	private static final LinkedHashMap cache = new LinkedHashMap(16, 0.75f, true) {
+		protected boolean removeEldestEntry(Map.Entry eldest) {
+			return size() > maxCachedFonts;
+		}
+	};
+
+	private GlyphCache() {
+	}
+
+	/**
+      * Get the glyphs of a font, drawing them if they are not in the cache.
+      * @param textHeight The height of the text, in pixels.
+      * @param charWidth The width of each character, in pixels, before
+      * <code>scale</code> is applied.
+      * @param scale The factor by which the font is finally scaled in both
+      * directions, such as 0.75 for the smaller digits of a UPC-A bar code.
+      * @return The glyphs.
+      */
+	static Glyphs get(int textHeight, double charWidth, double scale) {
+		String key = textHeight + "/" + charWidth + "/" + scale;
+		synchronized (cache) {
+			Glyphs glyphs = (Glyphs)cache.get(key);
+			if (glyphs != null) return glyphs;
+		}
+		// Built outside the lock; two threads may build the same glyphs, and
+		// the second simply replaces the first.
+		Glyphs glyphs = build(textHeight, charWidth, scale);
+		synchronized (cache) {
+			cache.put(key, glyphs);
+		}
+		return glyphs;
+	}
+
+	/**
+      * Get the glyphs of a font, unless they are the glyphs the caller
+      * already has.  Renderers keep the glyphs they last used and pass them
+      * back here, so that labels which keep the same size neither build a
+      * key nor take the cache's lock.
+      * @param last The glyphs the caller last used, or <code>null</code>.
+      * @param textHeight The height of the text, in pixels.
+      * @param charWidth The width of each character, in pixels, before
+      * <code>scale</code> is applied.
+      * @param scale The factor by which the font is finally scaled.
+      * @return <code>last</code> if it is the font asked for, else the
+      * glyphs from the cache.
+      */
+	static Glyphs get(Glyphs last, int textHeight, double charWidth, double scale) {
+		if ((last != null) && last.isFont(textHeight, charWidth, scale)) return last;
+		return get(textHeight, charWidth, scale);
+	}
+
+	private static Glyphs build(int textHeight, double charWidth, double scale) {
+		BufferedImage scratch = new BufferedImage(1, 1, BufferedImage.TYPE_BYTE_GRAY);
+		Graphics2D g = scratch.createGraphics();
+		try {
+			// The same stretch as the Graphics renderers apply.
+			Font font = new Font("Monospaced", Font.PLAIN, textHeight);
+			FontMetrics fm = g.getFontMetrics(font);
+			font = font.deriveFont(AffineTransform.getScaleInstance(
+				charWidth / fm.charWidth('0'), (double)textHeight / (double)fm.getHeight()));
+			if (scale != 1.0) font = font.deriveFont(AffineTransform.getScaleInstance(scale, scale));
+			fm = g.getFontMetrics(font);
+			FontRenderContext frc = g.getFontRenderContext();
+			Glyphs glyphs = new Glyphs(textHeight, charWidth, scale);
+			for (char c = firstChar; c <= lastChar; c++) {
+				int i = c - firstChar;
+				glyphs.advance[i] = fm.charWidth(c);
+				GlyphVector gv = font.createGlyphVector(frc, String.valueOf(c));
+				Rectangle bounds = gv.getPixelBounds(frc, 0.0f, 0.0f);
+				if ((bounds.width <= 0) || (bounds.height <= 0)) continue;
+				BufferedImage img =
+					new BufferedImage(bounds.width, bounds.height, BufferedImage.TYPE_BYTE_GRAY);
+				Graphics2D ig = img.createGraphics();
+				try {
+					ig.setColor(Color.WHITE);
+					ig.drawGlyphVector(gv, -bounds.x, -bounds.y);
+				} finally {
+					ig.dispose();
+				}
+				glyphs.masks[i] = ((DataBufferByte)img.getRaster().getDataBuffer()).getData();
+				glyphs.maskW[i] = bounds.width;
+				glyphs.maskH[i] = bounds.height;
+				glyphs.offX[i] = bounds.x;
+				glyphs.offY[i] = bounds.y;
+			}
+			return glyphs;
+		} finally {
+			g.dispose();
+		}
+	}
+}
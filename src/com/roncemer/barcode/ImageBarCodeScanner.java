@@ -6,7 +6,10 @@
 
 package com.roncemer.barcode;
 
+import java.awt.image.*;
+import java.nio.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 import com.roncemer.util.*;
 
@@ -19,16 +22,50 @@ import com.roncemer.util.*;
 public class ImageBarCodeScanner {
 	// Threshold granularity divisor.
 	private static final int thresholdGranularitySpacing = 16;
-	// Format-specific decoders.
-	private BarCodeDecoder[] decoders;
-	// Scan line spacing to use when scanning the image for bar codes.
-	private int scanLineSpacing = 4;
-	// Whether to do horizontal scanning.
-	private static boolean enableHorizontalScanning = true;
-	// Whether to do vertical scanning.
-	private static boolean enableVerticalScanning = true;
-	// Whether to do diagonal scanning.
-	private static boolean enableDiagonalScanning = true;
+	// Format-specific decoders.  Decoders are re-entrant, so they are
+	// shared by all threads scanning with this scanner.
+	private final BarCodeDecoder[] decoders;
+	// The fewest bars and spaces each decoder can find a bar code in, and
+	// the fewest of those.  Run length sequences which are shorter are not
+	// handed to the decoder, and scan lines with fewer run boundaries at
+	// every threshold are not decoded at all.
+	private final int[] decoderMinBarsAndSpaces;
+	private final int minBarsAndSpaces;
+	// Scan options.  Replaced, never modified, by the setters; each scan
+	// works on the snapshot that was current when it started.
+	private volatile ScanConfiguration config = ScanConfiguration.DEFAULT;
+
+	// Fields of each entry of a scan job's scan line table: the starting
+	// pixel, the step from one sample to the next, the number of samples,
+	// and the scan angle.  Lines at angles other than multiples of 45
+	// degrees have no whole-pixel step; they are instead sampled through a
+	// pixel index table, given by its number in the job and the position
+	// of the line's first sample in it, or -1 for a stepped line.
+	private static final int LINE_X0 = 0;
+	private static final int LINE_Y0 = 1;
+	private static final int LINE_DX = 2;
+	private static final int LINE_DY = 3;
+	private static final int LINE_NPIX = 4;
+	private static final int LINE_ANGLE = 5;
+	private static final int LINE_TABLE = 6;
+	private static final int LINE_FIRST = 7;
+	private static final int LINE_FIELDS = 8;
+	// Scan directions of a candidate region which are farther than this
+	// many degrees from its gradient direction are supplemented with the
+	// next-closest scan direction.
+	private static final double maxRegionAngleError = 15.0;
+	// Edge enhancement threshold and intensity of each pass, in scanning
+	// order; an intensity of 0 scans the source pixels as they are.  On
+	// typical images each pass finds bar codes on fewer scan lines than
+	// the one before.
+	private static final int[] passThresholds = { 64, 64, 64, 128, 128 };
+	private static final int[] passIntensities = { 0, 64, 128, 64, 128 };
+	// Spacing of the coarsest level of scan lines of a progressive scan.
+	private static final int coarsestSpacing = 32;
+	// Minimum number of scan lines handled by a single fork-join task.
+	private static final int minLinesPerTask = 8;
+	// Minimum number of rows enhanced by a single fork-join task.
+	private static final int minRowsPerTask = 32;
 
 	/**
       * Construct a new <code>ImageBarCodeScanner</code> object with all of
@@ -36,9 +73,9 @@ public class ImageBarCodeScanner {
       */
 	public ImageBarCodeScanner() {
 		// Instantiate additional decoders in this array as they are added.
-		decoders = new BarCodeDecoder[] {
+		this(new BarCodeDecoder[] {
 			new UPCABarCodeDecoder(), new Code39BarCodeDecoder()
-		};
+		});
 	}
 
 	/**
@@ -48,7 +85,43 @@ public class ImageBarCodeScanner {
       * as bar code decoders when scanning the image for bar codes.
       */
 	public ImageBarCodeScanner(BarCodeDecoder[]decoders) {
-		this.decoders = decoders;
+		this.decoders = decoders.clone();
+		decoderMinBarsAndSpaces = new int[this.decoders.length];
+		int min = Integer.MAX_VALUE;
+		for (int i = 0; i < this.decoders.length; i++) {
+			decoderMinBarsAndSpaces[i] = Math.max(this.decoders[i].getMinBarsAndSpaces(), 1);
+			min = Math.min(min, decoderMinBarsAndSpaces[i]);
+		}
+		minBarsAndSpaces = min;
+	}
+
+	/**
+      * Construct a new <code>ImageBarCodeScanner</code> object with a specific
+      * set of decoders and a specific configuration.
+      * @param decoders An array of <code>BarCodeDecoder</code> objects to use
+      * as bar code decoders when scanning the image for bar codes.
+      * @param config The scan configuration.
+      */
+	public ImageBarCodeScanner(BarCodeDecoder[]decoders, ScanConfiguration config) {
+		this(decoders);
+		setConfiguration(config);
+	}
+
+	/**
+      * Replace the scan configuration.  Scans which are already in progress
+      * continue with the configuration they started with.
+      * @param config The new scan configuration.
+      */
+	public synchronized void setConfiguration(ScanConfiguration config) {
+		if (config == null) throw new NullPointerException("config");
+		this.config = config;
+	}
+
+	/**
+      * @return The current scan configuration.
+      */
+	public ScanConfiguration getConfiguration() {
+		return config;
 	}
 
 	/**
@@ -59,15 +132,15 @@ public class ImageBarCodeScanner {
       * missed.
       * @param scanLineSpacing The new scan line spacing.
       */
-	public void setScanLineSpacing(int scanLineSpacing) {
-		this.scanLineSpacing = scanLineSpacing;
+	public synchronized void setScanLineSpacing(int scanLineSpacing) {
+		config = config.withScanLineSpacing(scanLineSpacing);
 	}
 
 	/**
       * @return The current scan line spacing.
       */
 	public int getScanLineSpacing() {
-		return scanLineSpacing;
+		return config.getScanLineSpacing();
 	}
 
 	/**
@@ -75,8 +148,8 @@ public class ImageBarCodeScanner {
       * @param enable <code>true</code> to enable; <code>false</code> to
       * disable.
       */
-	public void setEnableHorizontalScanning(boolean enable) {
-		enableHorizontalScanning = enable;
+	public synchronized void setEnableHorizontalScanning(boolean enable) {
+		config = config.withHorizontalScanning(enable);
 	}
 
 	/**
@@ -84,7 +157,7 @@ public class ImageBarCodeScanner {
       * <code>false</code> if it is disabled.
       */
 	public boolean getEnableHorizontalScanning() {
-		return enableHorizontalScanning;
+		return config.getEnableHorizontalScanning();
 	}
 
 	/**
@@ -92,8 +165,8 @@ public class ImageBarCodeScanner {
       * @param enable <code>true</code> to enable; <code>false</code> to
       * disable.
       */
-	public void setEnableVerticalScanning(boolean enable) {
-		enableVerticalScanning = enable;
+	public synchronized void setEnableVerticalScanning(boolean enable) {
+		config = config.withVerticalScanning(enable);
 	}
 
 	/**
@@ -101,7 +174,7 @@ public class ImageBarCodeScanner {
       * <code>false</code> if it is disabled.
       */
 	public boolean getEnableVerticalScanning() {
-		return enableVerticalScanning;
+		return config.getEnableVerticalScanning();
 	}
 
 	/**
@@ -109,8 +182,8 @@ public class ImageBarCodeScanner {
       * @param enable <code>true</code> to enable; <code>false</code> to
       * disable.
       */
-	public void setEnableDiagonalScanning(boolean enable) {
-		enableDiagonalScanning = enable;
+	public synchronized void setEnableDiagonalScanning(boolean enable) {
+		config = config.withDiagonalScanning(enable);
 	}
 
 	/**
@@ -118,12 +191,84 @@ public class ImageBarCodeScanner {
       * <code>false</code> if it is disabled.
       */
 	public boolean getEnableDiagonalScanning() {
-		return enableDiagonalScanning;
+		return config.getEnableDiagonalScanning();
+	}
+
+	/**
+      * Enable or disable parallel scanning.  When enabled, the enhancement
+      * of each pass and the scan lines of all enabled directions are split
+      * into fork-join tasks, each of which uses its own scan line buffers and
+      * decoder instances.  The bar codes are returned in the same order as
+      * they would be by a single-threaded scan.  Note that the listener may
+      * then be called concurrently from several threads.
+      * @param enable <code>true</code> to enable; <code>false</code> to
+      * disable.
+      */
+	public synchronized void setParallelScanning(boolean enable) {
+		config = config.withParallelScanning(enable);
+	}
+
+	/**
+      * @return <code>true</code> if parallel scanning is enabled;
+      * <code>false</code> if it is disabled.
+      */
+	public boolean getParallelScanning() {
+		return config.getParallelScanning();
+	}
+
+	/**
+      * Set the fork-join pool to use for parallel scanning.
+      * @param pool The pool, or <code>null</code> to use the common pool.
+      */
+	public synchronized void setForkJoinPool(ForkJoinPool pool) {
+		config = config.withForkJoinPool(pool);
+	}
+
+	/**
+      * @return The fork-join pool used for parallel scanning, or
+      * <code>null</code> if the common pool is used.
+      */
+	public ForkJoinPool getForkJoinPool() {
+		return config.getForkJoinPool();
+	}
+
+	/**
+      * Set the executor which runs asynchronous scans.
+      * @param executor The executor, or <code>null</code> for the default.
+      * @see ScanConfiguration#withExecutor(Executor)
+      */
+	public synchronized void setExecutor(Executor executor) {
+		config = config.withExecutor(executor);
+	}
+
+	/**
+      * @return The executor which runs asynchronous scans, or
+      * <code>null</code> if the default is used.
+      */
+	public Executor getExecutor() {
+		return config.getExecutor();
+	}
+
+	/**
+      * Set the metrics which scans count their work into.
+      * @param metrics The metrics, or <code>null</code> to disable metrics.
+      */
+	public synchronized void setMetrics(ScanMetrics metrics) {
+		config = config.withMetrics(metrics);
+	}
+
+	/**
+      * @return The metrics which scans count their work into, or
+      * <code>null</code> if metrics are disabled.
+      */
+	public ScanMetrics getMetrics() {
+		return config.getMetrics();
 	}
 
 	/**
       * Scan an image for bar codes and return an array of all decoded
-      * bar codes.
+      * bar codes.  This method may be called from several threads at once;
+      * each call uses the configuration which was current when it started.
       * @param pixels An array containing the monochrome source pixels.  Each
       * element in this array should be in the range of 0-255.
       * @param w The width of the image, in pixels.
@@ -142,198 +287,1552 @@ public class ImageBarCodeScanner {
 		boolean includeCheckDigits,
 		BarCodeDecoderListener listener) {
 
+		return toStrings(decodeBarCodeResultsFromImage(
+			pixels, w, h, includeCheckDigits, listener));
+	}
+
+	/**
+      * Scan an image for bar codes and return the symbology, location and
+      * scan direction of each distinct bar code found.  This method may be
+      * called from several threads at once; each call uses the configuration
+      * which was current when it started.
+      * @param pixels An array containing the monochrome source pixels.  Each
+      * element in this array should be in the range of 0-255.
+      * @param w The width of the image, in pixels.
+      * @param h The height of the image, in pixels.
+      * @param includeCheckDigits <code>true</code> to return check digits;
+      * <code>false</code> to strip them off.
+      * @param listener The <code>BarCodeDecoderListener</code> to be notified
+      * each time a bar code is decoded, or <code>null</code> if none.
+      * @return An array of <code>BarCodeResult</code> objects, one per
+      * distinct symbology and bar code, in the order in which they were
+      * found.
+      */
+	public BarCodeResult[] decodeBarCodeResultsFromImage(
+		int[] pixels,
+		int w,
+		int h,
+		boolean includeCheckDigits,
+		BarCodeDecoderListener listener) {
+
+		// The scan works on one byte per pixel, so narrow the pixels into a
+		// reusable buffer a quarter the size of the source.
 		int npix = w * h;
-		int[] scanLine = new int[Math.max(w, h) * 2];
-		int[] barWidths = new int[scanLine.length];
-		ArrayList foundBarCodes = new ArrayList();
-		int[] enhPixels = new int[npix];
-		boolean firstThresh = true;
-		boolean aborted = false;
-		for (int thresh = 64; ((thresh <= 128) && (!aborted)); thresh += 64, firstThresh = false) {
-			for (int intens = (firstThresh ? 0 : 64); intens <= 128; intens += 64) {
-				if (intens == 0) {
-					System.arraycopy(pixels, 0, enhPixels, 0, npix);
-				} else {
-					ImageUtils.sobelEnhance(pixels, enhPixels, w, h, thresh, intens);
+		byte[] bytes = ScanContext.acquirePixelBuffer(ScanContext.SOURCE_PIXELS, npix);
+		try {
+			for (int i = 0; i < npix; i++) bytes[i] = (byte)pixels[i];
+			return decodeBarCodeResultsFromImage(
+				bytes, 0, w, w, h, includeCheckDigits, listener);
+		} finally {
+			ScanContext.releasePixelBuffer(ScanContext.SOURCE_PIXELS, bytes);
+		}
+	}
+
+	/**
+      * Scan an image of one unsigned byte per pixel for bar codes and return
+      * the symbology, location and scan direction of each distinct bar code
+      * found.  The pixels are scanned in place, without being copied.
+      * @param pixels An array containing the monochrome source pixels, each
+      * an unsigned byte, <code>w</code> per row.
+      * @param w The width of the image, in pixels.
+      * @param h The height of the image, in pixels.
+      * @param includeCheckDigits <code>true</code> to return check digits;
+      * <code>false</code> to strip them off.
+      * @param listener The <code>BarCodeDecoderListener</code> to be notified
+      * each time a bar code is decoded, or <code>null</code> if none.
+      * @return An array of <code>BarCodeResult</code> objects, one per
+      * distinct symbology and bar code, in the order in which they were
+      * found.
+      */
+	public BarCodeResult[] decodeBarCodeResultsFromImage(
+		byte[] pixels,
+		int w,
+		int h,
+		boolean includeCheckDigits,
+		BarCodeDecoderListener listener) {
+
+		return decodeBarCodeResultsFromImage(
+			pixels, 0, w, w, h, includeCheckDigits, listener);
+	}
+
+	/**
+      * Scan an image for bar codes in a <code>ByteBuffer</code> of one
+      * unsigned byte per pixel, starting at the buffer's position, with
+      * rows <code>w</code> bytes apart.  A buffer backed by an array is
+      * scanned in place; the pixels of any other buffer, such as a direct
+      * or memory-mapped buffer, are copied once into a reusable array.
+      * The buffer's position and limit are not changed.
+      * @param pixels The monochrome source pixels.
+      * @param w The width of the image, in pixels.
+      * @param h The height of the image, in pixels.
+      * @param includeCheckDigits <code>true</code> to return check digits;
+      * <code>false</code> to strip them off.
+      * @param listener The <code>BarCodeDecoderListener</code> to be notified
+      * each time a bar code is decoded, or <code>null</code> if none.
+      * @return An array of <code>BarCodeResult</code> objects, one per
+      * distinct symbology and bar code, in the order in which they were
+      * found.
+      */
+	public BarCodeResult[] decodeBarCodeResultsFromImage(
+		ByteBuffer pixels,
+		int w,
+		int h,
+		boolean includeCheckDigits,
+		BarCodeDecoderListener listener) {
+
+		int npix = w * h;
+		if (pixels.remaining() < npix) {
+			throw new IllegalArgumentException
+				("Buffer holds " + pixels.remaining() + " pixels; need " + npix);
+		}
+		if (pixels.hasArray()) {
+			return decodeBarCodeResultsFromImage(
+				pixels.array(),
+				pixels.arrayOffset() + pixels.position(),
+				w,
+				w,
+				h,
+				includeCheckDigits,
+				listener);
+		}
+		byte[] bytes = ScanContext.acquirePixelBuffer(ScanContext.SOURCE_PIXELS, npix);
+		try {
+			pixels.get(pixels.position(), bytes, 0, npix);
+			return decodeBarCodeResultsFromImage(
+				bytes, 0, w, w, h, includeCheckDigits, listener);
+		} finally {
+			ScanContext.releasePixelBuffer(ScanContext.SOURCE_PIXELS, bytes);
+		}
+	}
+
+	/**
+      * Scan a <code>BufferedImage</code> for bar codes.  The raster of a
+      * <code>TYPE_BYTE_GRAY</code> image (including a sub-image) is scanned
+      * in place, without being copied; any other image is converted to one
+      * byte of luminance per pixel in a reusable buffer first.
+      * @param image The image to scan.
+      * @param includeCheckDigits <code>true</code> to return check digits;
+      * <code>false</code> to strip them off.
+      * @param listener The <code>BarCodeDecoderListener</code> to be notified
+      * each time a bar code is decoded, or <code>null</code> if none.
+      * @return An array of <code>BarCodeResult</code> objects, one per
+      * distinct symbology and bar code, in the order in which they were
+      * found.
+      */
+	public BarCodeResult[] decodeBarCodeResultsFromImage(
+		BufferedImage image,
+		boolean includeCheckDigits,
+		BarCodeDecoderListener listener) {
+
+		return scanImage(config, image, includeCheckDigits, listener, false, 0L, null).getResults();
+	}
+
+	/**
+      * Scan a <code>BufferedImage</code> for bar codes, as by
+      * {@link #decodeBarCodeResultsFromImage(BufferedImage, boolean, BarCodeDecoderListener)},
+      * within the configuration's time budget, and report whether the scan
+      * ran to completion.
+      * @param image The image to scan.
+      * @param includeCheckDigits <code>true</code> to return check digits;
+      * <code>false</code> to strip them off.
+      * @param listener The <code>BarCodeDecoderListener</code> to be notified
+      * each time a bar code is decoded, or <code>null</code> if none.
+      * @return The bar codes found, and whether the scan completed.
+      */
+	public ScanResult scanImage(
+		BufferedImage image,
+		boolean includeCheckDigits,
+		BarCodeDecoderListener listener) {
+
+		return scanImage(config, image, includeCheckDigits, listener, false, 0L, null);
+	}
+
+	/**
+      * Scan a <code>BufferedImage</code> for bar codes, as by
+      * {@link #decodeBarCodeResultsFromImage(BufferedImage, boolean, BarCodeDecoderListener)},
+      * until a deadline, and report whether the scan ran to completion.
+      * When the deadline passes, the scan stops within about one scan line
+      * and returns what it has found so far.  Progressive scanning (see
+      * {@link ScanConfiguration#withProgressiveScanning(boolean)}) makes the
+      * most of a tight deadline.
+      * @param image The image to scan.
+      * @param includeCheckDigits <code>true</code> to return check digits;
+      * <code>false</code> to strip them off.
+      * @param listener The <code>BarCodeDecoderListener</code> to be notified
+      * each time a bar code is decoded, or <code>null</code> if none.
+      * @param deadline The value of <code>System.nanoTime()</code> at which
+      * to stop.  The configuration's time budget, if any, still applies
+      * if it runs out first.
+      * @return The bar codes found, and whether the scan completed.
+      */
+	public ScanResult scanImage(
+		BufferedImage image,
+		boolean includeCheckDigits,
+		BarCodeDecoderListener listener,
+		long deadline) {
+
+		return scanImage(config, image, includeCheckDigits, listener, true, deadline, null);
+	}
+
+	private ScanResult scanImage(
+		ScanConfiguration config,
+		BufferedImage image,
+		boolean includeCheckDigits,
+		BarCodeDecoderListener listener,
+		boolean hasDeadline,
+		long deadline,
+		AsyncScan stream) {
+
+		int w = image.getWidth(), h = image.getHeight();
+		WritableRaster raster = image.getRaster();
+		if ((image.getType() == BufferedImage.TYPE_BYTE_GRAY) &&
+			(raster.getDataBuffer() instanceof DataBufferByte) &&
+			(raster.getSampleModel() instanceof ComponentSampleModel)) {
+			ComponentSampleModel sm = (ComponentSampleModel)raster.getSampleModel();
+			DataBufferByte db = (DataBufferByte)raster.getDataBuffer();
+			if ((sm.getPixelStride() == 1) && (db.getNumBanks() == 1)) {
+				int offset = db.getOffset() + sm.getOffset(
+					raster.getMinX() - raster.getSampleModelTranslateX(),
+					raster.getMinY() - raster.getSampleModelTranslateY());
+				return scanImage(
+					config,
+					db.getData(),
+					offset,
+					sm.getScanlineStride(),
+					w,
+					h,
+					includeCheckDigits,
+					listener,
+					hasDeadline,
+					deadline,
+					stream);
+			}
+		}
+		byte[] bytes = ScanContext.acquirePixelBuffer(ScanContext.SOURCE_PIXELS, w * h);
+		try {
+			int[] row = new int[w];
+			for (int y = 0, idx = 0; y < h; y++) {
+				image.getRGB(0, y, w, 1, row, 0, w);
+				for (int x = 0; x < w; x++, idx++) {
+					bytes[idx] = (byte)ImageUtils.rgbToGrayscale(row[x]);
 				}
+			}
+			return scanImage(
+				config, bytes, 0, w, w, h, includeCheckDigits, listener, hasDeadline, deadline, stream);
+		} finally {
+			ScanContext.releasePixelBuffer(ScanContext.SOURCE_PIXELS, bytes);
+		}
+	}
 
-				// Left-right scan
-				if (enableHorizontalScanning) {
-					for (int y = 0; y < h; y += scanLineSpacing) {
-						int pixIdx = w * y;
-						for (int x = 0; x < w; x++, pixIdx++) scanLine[x] = enhPixels[pixIdx];
-						if (!scanLineForBarCodes(
-							scanLine,
-							w,
-							barWidths,
-							foundBarCodes,
-							includeCheckDigits,
-							listener)) {
-							aborted = true;
-							break;
-						}
+	/**
+      * Scan an image of one unsigned byte per pixel for bar codes, where the
+      * image may be part of a larger array, such as the raster of a
+      * sub-image.  The pixels are scanned in place, without being copied.
+      * Several threads may scan the same pixels at once.
+      * @param pixels An array containing the monochrome source pixels, each
+      * an unsigned byte.
+      * @param offset The index of the top-left pixel in <code>pixels</code>.
+      * @param stride The distance between the first pixels of consecutive
+      * rows in <code>pixels</code>.  Must be at least <code>w</code>.
+      * @param w The width of the image, in pixels.
+      * @param h The height of the image, in pixels.
+      * @param includeCheckDigits <code>true</code> to return check digits;
+      * <code>false</code> to strip them off.
+      * @param listener The <code>BarCodeDecoderListener</code> to be notified
+      * each time a bar code is decoded, or <code>null</code> if none.
+      * @return An array of <code>BarCodeResult</code> objects, one per
+      * distinct symbology and bar code, in the order in which they were
+      * found.
+      */
+	public BarCodeResult[] decodeBarCodeResultsFromImage(
+		byte[] pixels,
+		int offset,
+		int stride,
+		int w,
+		int h,
+		boolean includeCheckDigits,
+		BarCodeDecoderListener listener) {
+
+		return scanImage(
+			config, pixels, offset, stride, w, h, includeCheckDigits, listener, false, 0L, null)
+			.getResults();
+	}
+
+	/**
+      * Scan an image of one unsigned byte per pixel for bar codes, as by
+      * {@link #decodeBarCodeResultsFromImage(byte[], int, int, int, int, boolean, BarCodeDecoderListener)},
+      * within the configuration's time budget, and report whether the scan
+      * ran to completion.
+      * @param pixels An array containing the monochrome source pixels, each
+      * an unsigned byte.
+      * @param offset The index of the top-left pixel in <code>pixels</code>.
+      * @param stride The distance between the first pixels of consecutive
+      * rows in <code>pixels</code>.  Must be at least <code>w</code>.
+      * @param w The width of the image, in pixels.
+      * @param h The height of the image, in pixels.
+      * @param includeCheckDigits <code>true</code> to return check digits;
+      * <code>false</code> to strip them off.
+      * @param listener The <code>BarCodeDecoderListener</code> to be notified
+      * each time a bar code is decoded, or <code>null</code> if none.
+      * @return The bar codes found, and whether the scan completed.
+      */
+	public ScanResult scanImage(
+		byte[] pixels,
+		int offset,
+		int stride,
+		int w,
+		int h,
+		boolean includeCheckDigits,
+		BarCodeDecoderListener listener) {
+
+		return scanImage(
+			config, pixels, offset, stride, w, h, includeCheckDigits, listener, false, 0L, null);
+	}
+
+	/**
+      * Scan an image of one unsigned byte per pixel for bar codes, as by
+      * {@link #decodeBarCodeResultsFromImage(byte[], int, int, int, int, boolean, BarCodeDecoderListener)},
+      * until a deadline, and report whether the scan ran to completion.
+      * When the deadline passes, the scan stops within about one scan line
+      * and returns what it has found so far.
+      * @param pixels An array containing the monochrome source pixels, each
+      * an unsigned byte.
+      * @param offset The index of the top-left pixel in <code>pixels</code>.
+      * @param stride The distance between the first pixels of consecutive
+      * rows in <code>pixels</code>.  Must be at least <code>w</code>.
+      * @param w The width of the image, in pixels.
+      * @param h The height of the image, in pixels.
+      * @param includeCheckDigits <code>true</code> to return check digits;
+      * <code>false</code> to strip them off.
+      * @param listener The <code>BarCodeDecoderListener</code> to be notified
+      * each time a bar code is decoded, or <code>null</code> if none.
+      * @param deadline The value of <code>System.nanoTime()</code> at which
+      * to stop.  The configuration's time budget, if any, still applies
+      * if it runs out first.
+      * @return The bar codes found, and whether the scan completed.
+      */
+	public ScanResult scanImage(
+		byte[] pixels,
+		int offset,
+		int stride,
+		int w,
+		int h,
+		boolean includeCheckDigits,
+		BarCodeDecoderListener listener,
+		long deadline) {
+
+		return scanImage(
+			config, pixels, offset, stride, w, h, includeCheckDigits, listener, true, deadline, null);
+	}
+
+	/**
+      * Scan a <code>BufferedImage</code> for bar codes in the background, on
+      * the configuration's executor (see
+      * {@link ScanConfiguration#withExecutor(Executor)}).
+      * The returned <code>AsyncScan</code> streams each bar code as soon as
+      * it is confirmed, and its future completes with the same result as
+      * {@link #scanImage(BufferedImage, boolean, BarCodeDecoderListener)}
+      * would return.  Cancelling the future stops the scan.  The image must
+      * not be modified until the scan has finished.
+      * @param image The image to scan.
+      * @param includeCheckDigits <code>true</code> to return check digits;
+      * <code>false</code> to strip them off.
+      * @return The running scan.
+      */
+	public AsyncScan scanImageAsync(final BufferedImage image, final boolean includeCheckDigits) {
+		final ScanConfiguration config = this.config;
+		final AsyncScan stream = new AsyncScan();
+		submit(stream, config, new Callable<ScanResult>() {
+			public ScanResult call() {
+				return scanImage(config, image, includeCheckDigits, null, false, 0L, stream);
+			}
+		});
+		return stream;
+	}
+
+	/**
+      * Scan an image of one unsigned byte per pixel for bar codes in the
+      * background, as by
+      * {@link #scanImageAsync(BufferedImage, boolean)}.  The pixels must not
+      * be modified until the scan has finished.
+      * @param pixels An array containing the monochrome source pixels, each
+      * an unsigned byte.
+      * @param offset The index of the top-left pixel in <code>pixels</code>.
+      * @param stride The distance between the first pixels of consecutive
+      * rows in <code>pixels</code>.  Must be at least <code>w</code>.
+      * @param w The width of the image, in pixels.
+      * @param h The height of the image, in pixels.
+      * @param includeCheckDigits <code>true</code> to return check digits;
+      * <code>false</code> to strip them off.
+      * @return The running scan.
+      */
+	public AsyncScan scanImageAsync(
+		final byte[] pixels,
+		final int offset,
+		final int stride,
+		final int w,
+		final int h,
+		final boolean includeCheckDigits) {
+
+		if (stride < w) {
+			throw new IllegalArgumentException("Stride " + stride + " is less than width " + w);
+		}
+		final ScanConfiguration config = this.config;
+		final AsyncScan stream = new AsyncScan();
+		submit(stream, config, new Callable<ScanResult>() {
+			public ScanResult call() {
+				return scanImage(
+					config, pixels, offset, stride, w, h, includeCheckDigits, null, false, 0L, stream);
+			}
+		});
+		return stream;
+	}
+
+	// Run an asynchronous scan on the executor of the configuration it was
+	// started with, or the default executor.
+	private static void submit(
+		final AsyncScan stream, ScanConfiguration config, final Callable<ScanResult> scan) {
+
+		Executor executor = config.getExecutor();
+		if (executor == null) executor = AsyncScan.defaultExecutor();
+		try {
+			executor.execute(new Runnable() {
+				public void run() {
+					// A scan cancelled while it waited for a thread has already
+					// been finished by the cancellation.
+					if (!stream.claim()) return;
+					// Nor is there any point in starting one cancelled since.
+					if (stream.cancelled) {
+						stream.finish(null, null);
+						return;
 					}
-					if (aborted) break;
-				}
-				if (enableVerticalScanning) {
-
-					// Up-down scan
-					for (int x = 0; x < w; x += scanLineSpacing) {
-						int pixIdx = x;
-						for (int y = 0; y < h; y++, pixIdx += w) scanLine[y] = enhPixels[pixIdx];
-						if (!scanLineForBarCodes(
-							scanLine,
-							h,
-							barWidths,
-							foundBarCodes,
-							includeCheckDigits, listener)) {
-							aborted = true;
-							break;
-						}
+					ScanResult result = null;
+					Throwable error = null;
+					try {
+						result = scan.call();
+					} catch (Throwable t) {
+						error = t;
 					}
-					if (aborted) break;
+					stream.finish(result, error);
 				}
-				if (enableDiagonalScanning) {
-
-					// Upper-left to lower-right diagonal scan
-					int wPlus1 = w + 1;
-					for (int startX = 0; startX < w; startX += scanLineSpacing) {
-						int pixIdx = startX;
-						int nPix = 0;
-						for (int x = startX, y = 0;
-							 ((x < w) && (y < h));
-							 x++, y++, pixIdx += wPlus1, nPix++) {
-							scanLine[nPix] = enhPixels[pixIdx];
-						}
-						if (!scanLineForBarCodes(
-							scanLine,
-							nPix,
-							barWidths,
-							foundBarCodes,
-							includeCheckDigits, listener)) {
-							aborted = true;
-							break;
+			});
+		} catch (RejectedExecutionException e) {
+			if (stream.claim()) stream.finish(null, e);
+		}
+	}
+
+	private ScanResult scanImage(
+		ScanConfiguration config,
+		byte[] pixels,
+		int offset,
+		int stride,
+		int w,
+		int h,
+		boolean includeCheckDigits,
+		BarCodeDecoderListener listener,
+		boolean hasDeadline,
+		long deadline,
+		AsyncScan stream) {
+
+		if (stride < w) {
+			throw new IllegalArgumentException("Stride " + stride + " is less than width " + w);
+		}
+		ScanEvent event = new ScanEvent();
+		event.begin();
+		int spacing = config.getScanLineSpacing();
+		int npix = w * h;
+		ScanJob job = new ScanJob(
+			w,
+			h,
+			spacing,
+			includeCheckDigits,
+			listener,
+			config.getRequiredVotes(),
+			config.getExpectedBarCodes(),
+			stream);
+		job.src = pixels;
+		job.srcOffset = offset;
+		job.srcStride = stride;
+		job.adaptiveBinarization = config.getAdaptiveBinarization();
+		job.subPixelEdges = config.getSubPixelEdges();
+		ScanMetrics metrics = config.getMetrics();
+		job.metrics = metrics;
+		if (metrics != null) metrics.add(ScanMetrics.SCANS, 1L);
+		long budget = config.getTimeBudgetNanos();
+		if (budget > 0L) {
+			long budgetDeadline = System.nanoTime() + budget;
+			if ((!hasDeadline) || ((budgetDeadline - deadline) < 0L)) deadline = budgetDeadline;
+			hasDeadline = true;
+		}
+		job.hasDeadline = hasDeadline;
+		job.deadline = deadline;
+		ForkJoinPool pool = null;
+		if (config.getParallelScanning()) {
+			pool = config.getForkJoinPool();
+			if (pool == null) pool = ForkJoinPool.commonPool();
+		}
+		// An ordinary scan enhances the image into one buffer for each pass
+		// in turn.  A progressive scan runs each pass over part of the scan
+		// lines at a time, so it enhances each pass's image into a buffer of
+		// its own the first time the pass runs, and keeps it for the finer
+		// levels.  Either way, in lazy mode each scan line is enhanced as it
+		// is extracted instead.
+		boolean progressive = config.getProgressiveScanning();
+		boolean lazy = config.getLazyEnhancement();
+		byte[][] enhPixels = new byte[progressive ? passThresholds.length : 1][];
+		int nEnhPixels = 0;
+		// The Sobel gradients don't depend on the threshold or intensity, so
+		// they are computed once per image and shared by all passes.  Lazy
+		// mode needs them only for region detection: otherwise it computes
+		// the edges of each scan line once, when the line is first enhanced.
+		int[] gradients = ((!lazy) || config.getRegionDetection()) ?
+			ScanContext.acquireImageBuffer(ScanContext.GRADIENTS, npix) : null;
+		boolean haveGradients = false;
+		// Bands of rows to enhance, as pairs of first row and end row.
+		int[] enhanceBands = new int[] { 0, h };
+		if (config.getRegionDetection()) {
+			computeGradients(job, gradients, pool);
+			haveGradients = true;
+			RegionDetector.Region[] regions = RegionDetector.detect(gradients, w, h);
+			for (int i = 0; i < regions.length; i++) {
+				addRegionLines(job, regions[i], config);
+			}
+			enhanceBands = regionBands(regions, h);
+		} else {
+			if (config.getEnableHorizontalScanning()) {
+				job.addLines(0, 0, w, h, BarCodeResult.SCAN_HORIZONTAL);
+			}
+			if (config.getEnableVerticalScanning()) {
+				job.addLines(0, 0, w, h, BarCodeResult.SCAN_VERTICAL);
+			}
+			if (config.getEnableDiagonalScanning()) {
+				job.addLines(0, 0, w, h, BarCodeResult.SCAN_DIAGONAL_DOWN);
+				job.addLines(0, 0, w, h, BarCodeResult.SCAN_DIAGONAL_UP);
+			}
+			int[] angles = config.getAdditionalScanAngles();
+			for (int i = 0; i < angles.length; i++) {
+				if (!isStandardAngle(angles[i], config)) job.addLines(0, 0, w, h, angles[i]);
+			}
+		}
+		int totalLines = job.nLines;
+		if (lazy) {
+			job.lineEdges = new short[totalLines][];
+			if (haveGradients) job.gradients = gradients;
+		}
+		ScanContext context = (pool == null) ? ScanContext.acquire() : null;
+		int passes = 0;
+		try {
+			if (progressive) {
+				// Every pass over each level of scan lines, coarse to fine.
+				int[] levelStarts = job.orderProgressively();
+				for (int level = 0; ((level < (levelStarts.length - 1)) && (!job.aborted)); level++) {
+					for (int pass = 0; ((pass < passThresholds.length) && (!job.outOfTime())); pass++) {
+						int thresh = passThresholds[pass], intens = passIntensities[pass];
+						job.enhanceThresh = thresh;
+						job.enhanceIntensity = intens;
+						if ((intens == 0) || (lazy)) {
+							job.usePixels(pixels, offset, stride);
+						} else {
+							if (enhPixels[pass] == null) {
+								if (!haveGradients) computeGradients(job, gradients, pool);
+								haveGradients = true;
+								enhPixels[pass] = acquireEnhancedPixels(nEnhPixels++, npix);
+								enhance(job, gradients, enhPixels[pass], thresh, intens, enhanceBands, pool);
+							}
+							job.usePixels(enhPixels[pass], 0, w);
 						}
+						job.pass = pass;
+						scanLines(job, levelStarts[level], levelStarts[level + 1], pool, context);
+						passes++;
 					}
-					if (aborted) break;
-					for (int startY = scanLineSpacing;
-						 startY < h;
-						 startY += scanLineSpacing) {
-						int pixIdx = (startY * w);
-						int nPix = 0;
-						for (int x = 0, y = startY;
-							 ((x < w) && (y < h));
-							 x++, y++, pixIdx += wPlus1, nPix++) {
-							scanLine[nPix] = enhPixels[pixIdx];
-						}
-						if (!scanLineForBarCodes(
-							scanLine,
-							nPix,
-							barWidths,
-							foundBarCodes,
-							includeCheckDigits, listener)) {
-							aborted = true;
-							break;
-						}
+				}
+			} else {
+				for (int pass = 0;
+					 ((pass < passThresholds.length) && (totalLines > 0) && (!job.outOfTime()));
+					 pass++) {
+					int thresh = passThresholds[pass], intens = passIntensities[pass];
+					job.enhanceThresh = thresh;
+					job.enhanceIntensity = intens;
+					if ((intens == 0) || (lazy)) {
+						// Scan the source pixels directly, enhancing each scan
+						// line as it is extracted if necessary.
+						job.usePixels(pixels, offset, stride);
+					} else {
+						if (!haveGradients) computeGradients(job, gradients, pool);
+						haveGradients = true;
+						if (enhPixels[0] == null) enhPixels[0] = acquireEnhancedPixels(nEnhPixels++, npix);
+						enhance(job, gradients, enhPixels[0], thresh, intens, enhanceBands, pool);
+						job.usePixels(enhPixels[0], 0, w);
 					}
-					if (aborted) break;
-
-					// Lower-left to upper-right diagonal scan
-					int wMinus1 = w - 1;
-					for (int startY = 0; startY < h; startY += scanLineSpacing) {
-						int pixIdx = startY * w;
-						int nPix = 0;
-						for (int y = startY, x = 0;
-							 ((y >= 0) && (x < w));
-							 y--, x++, pixIdx -= wMinus1) {
-							scanLine[nPix++] = enhPixels[pixIdx];
-						}
-						if (!scanLineForBarCodes(
-							scanLine,
-							nPix,
-							barWidths,
-							foundBarCodes,
-							includeCheckDigits, listener)) {
-							aborted = true;
-							break;
+					job.pass = pass;
+					scanLines(job, 0, totalLines, pool, context);
+					passes++;
+				}
+			}
+		} finally {
+			if (context != null) context.release();
+			// The buffers were leased in pass order.
+			for (int i = 0, k = 0; i < enhPixels.length; i++) {
+				if (enhPixels[i] != null) releaseEnhancedPixels(k++, enhPixels[i]);
+			}
+			if (gradients != null) ScanContext.releaseImageBuffer(ScanContext.GRADIENTS, gradients);
+		}
+		BarCodeResult[] results = job.found.toArray();
+		if (event.shouldCommit()) {
+			event.width = w;
+			event.height = h;
+			event.scanLines = totalLines;
+			event.passes = passes;
+			event.results = results.length;
+			event.stoppedEarly = job.aborted;
+			event.complete = !job.timedOut;
+			event.commit();
+		}
+		return new ScanResult(results, !job.timedOut);
+	}
+
+	// Scan a range of a job's scan lines, in parallel if a pool is given.
+	private void scanLines(
+		ScanJob job, int first, int end, ForkJoinPool pool, ScanContext context) {
+
+		if (pool != null) {
+			pool.invoke(new ScanLinesTask(job, first, end));
+		} else {
+			job.scanLines(first, end, context);
+		}
+	}
+
+	/**
+      * Decode the bar codes crossed by a single line of pixels, such as the
+      * output of a line-scan camera or one row of an image.  The line is
+      * decoded at every threshold level, like each scan line of an image,
+      * but is not edge-enhanced.
+      * @param pixels An array containing the monochrome pixels of the line.
+      * Each element in this array should be in the range of 0-255.
+      * @param nPixels The number of pixels in the line.
+      * @param includeCheckDigits <code>true</code> to return check digits;
+      * <code>false</code> to strip them off.
+      * @param listener The <code>BarCodeDecoderListener</code> to be notified
+      * each time a bar code is decoded, or <code>null</code> if none.
+      * @return An array of <code>BarCodeResult</code> objects, one per
+      * distinct symbology and bar code, in the order in which they were
+      * found.  The start and end of each are pixel indices along the line,
+      * given as x coordinates with a y coordinate of 0.
+      */
+	public BarCodeResult[] decodeScanLine(
+		int[] pixels,
+		int nPixels,
+		boolean includeCheckDigits,
+		BarCodeDecoderListener listener) {
+
+		ScanConfiguration config = this.config;
+		ScanJob job = new ScanJob(
+			nPixels, 1, config.getScanLineSpacing(), includeCheckDigits, listener, 1, 0, null);
+		job.adaptiveBinarization = config.getAdaptiveBinarization();
+		job.subPixelEdges = config.getSubPixelEdges();
+		job.metrics = config.getMetrics();
+		ScanContext context = ScanContext.acquire();
+		try {
+			HitSink sink = new HitSink(job);
+			sink.setGeometry(0, 0, 1, 0, BarCodeResult.SCAN_HORIZONTAL);
+			long[] counts = null;
+			long start = 0L;
+			if (job.metrics != null) {
+				counts = context.getMetricCounts();
+				sink.counts = counts;
+				counts[ScanMetrics.SCANS]++;
+				start = System.nanoTime();
+			}
+			scanLineForBarCodes(
+				pixels, nPixels, context.getBarWidths(nPixels), context, sink, 0, job);
+			if (counts != null) {
+				countLine(counts, sink, BarCodeResult.SCAN_HORIZONTAL, 0, System.nanoTime() - start, 0L);
+				job.metrics.add(counts);
+			}
+		} finally {
+			context.release();
+		}
+		return job.found.toArray();
+	}
+
+	/**
+      * Convert scan results to the distinct bar code strings, in order.
+      * @param results The scan results.
+      * @return The text of each result, without duplicates.
+      */
+	public static String[] toStrings(BarCodeResult[] results) {
+		LinkedHashSet texts = new LinkedHashSet();
+		for (int i = 0; i < results.length; i++) texts.add(results[i].getText());
+		String[] result = new String[texts.size()];
+		texts.toArray(result);
+		return result;
+	}
+
+	// Compute the packed Sobel gradients of a job's source image, in
+	// parallel if a pool is given.
+	private static void computeGradients(
+		ScanJob job, int[] gradients, ForkJoinPool pool) {
+
+		long start = (job.metrics != null) ? System.nanoTime() : 0L;
+		if (pool != null) {
+			pool.invoke(new EnhanceTask(job, gradients, null, 0, 0, 0, job.h));
+		} else {
+			ImageUtils.sobelGradients(
+				job.src, job.srcOffset, job.srcStride, gradients, job.w, job.h);
+		}
+		if (job.metrics != null) {
+			job.metrics.add(
+				ScanMetrics.STAGE_NANOS + ScanMetrics.STAGE_GRADIENTS, System.nanoTime() - start);
+		}
+	}
+
+	// Enhance bands of rows of a job's source image into enhPixels, in
+	// parallel if a pool is given.
+	private static void enhance(
+		ScanJob job,
+		int[] gradients,
+		byte[] enhPixels,
+		int thresh,
+		int intens,
+		int[] enhanceBands,
+		ForkJoinPool pool) {
+
+		long start = (job.metrics != null) ? System.nanoTime() : 0L;
+		for (int i = 0; i < enhanceBands.length; i += 2) {
+			if (pool != null) {
+				pool.invoke(new EnhanceTask(
+					job,
+					gradients,
+					enhPixels,
+					thresh,
+					intens,
+					enhanceBands[i],
+					enhanceBands[i + 1]));
+			} else {
+				ImageUtils.sobelEnhance(
+					job.src,
+					job.srcOffset,
+					job.srcStride,
+					gradients,
+					enhPixels,
+					job.w,
+					job.h,
+					thresh,
+					intens,
+					enhanceBands[i],
+					enhanceBands[i + 1]);
+			}
+		}
+		if (job.metrics != null) {
+			job.metrics.add(
+				ScanMetrics.STAGE_NANOS + ScanMetrics.STAGE_ENHANCE, System.nanoTime() - start);
+		}
+	}
+
+	// Lease the k-th enhanced image buffer of a scan; past the buffers the
+	// context keeps, a new one.
+	private static byte[] acquireEnhancedPixels(int k, int npix) {
+		if (k >= ScanContext.ENHANCED_PIXEL_BUFFERS) return new byte[npix];
+		return ScanContext.acquirePixelBuffer(ScanContext.ENHANCED_PIXELS + k, npix);
+	}
+
+	// Hand back a buffer obtained from acquireEnhancedPixels().
+	private static void releaseEnhancedPixels(int k, byte[] buffer) {
+		if (k < ScanContext.ENHANCED_PIXEL_BUFFERS) {
+			ScanContext.releasePixelBuffer(ScanContext.ENHANCED_PIXELS + k, buffer);
+		}
+	}
+
+	// Count a decoded scan line, given the nanoseconds spent scanning it
+	// and, before that, extracting it.  Whatever part of the scanning time
+	// the decoder calls have not already counted went to binarizing.
+	private static void countLine(
+		long[] counts, HitSink sink, int scanAngle, int pass, long scanNanos, long extractNanos) {
+
+		counts[ScanMetrics.LINES]++;
+		counts[ScanMetrics.STAGE_NANOS + ScanMetrics.STAGE_EXTRACT] += extractNanos;
+		counts[ScanMetrics.STAGE_NANOS + ScanMetrics.STAGE_BINARIZE] += scanNanos - sink.decodeNanos;
+		sink.decodeNanos = 0L;
+		int idx = ScanMetrics.directionIndex(scanAngle, pass);
+		counts[ScanMetrics.DIRECTION_LINES + idx]++;
+		if (sink.hitOnLine) counts[ScanMetrics.DIRECTION_HIT_LINES + idx]++;
+	}
+
+	// Whether a scan angle is one of the enabled horizontal, vertical and
+	// diagonal directions.
+	private static boolean isStandardAngle(int angle, ScanConfiguration config) {
+		switch (angle) {
+		case BarCodeResult.SCAN_HORIZONTAL:
+			return config.getEnableHorizontalScanning();
+		case BarCodeResult.SCAN_VERTICAL:
+			return config.getEnableVerticalScanning();
+		case BarCodeResult.SCAN_DIAGONAL_DOWN:
+		case BarCodeResult.SCAN_DIAGONAL_UP:
+			return config.getEnableDiagonalScanning();
+		default:
+			return false;
+		}
+	}
+
+	// Add the scan lines of a candidate region to a job, in the enabled scan
+	// direction closest to the region's gradient direction, and also in the
+	// next-closest one if the closest is too far off.
+	private static void addRegionLines(
+		ScanJob job, RegionDetector.Region region, ScanConfiguration config) {
+
+		int[] extraAngles = config.getAdditionalScanAngles();
+		int[] angles = new int[4 + extraAngles.length];
+		int nAngles = 0;
+		if (config.getEnableHorizontalScanning()) {
+			angles[nAngles++] = BarCodeResult.SCAN_HORIZONTAL;
+		}
+		if (config.getEnableDiagonalScanning()) {
+			angles[nAngles++] = BarCodeResult.SCAN_DIAGONAL_DOWN;
+		}
+		if (config.getEnableVerticalScanning()) {
+			angles[nAngles++] = BarCodeResult.SCAN_VERTICAL;
+		}
+		if (config.getEnableDiagonalScanning()) {
+			angles[nAngles++] = BarCodeResult.SCAN_DIAGONAL_UP;
+		}
+		for (int i = 0; i < extraAngles.length; i++) {
+			if (!isStandardAngle(extraAngles[i], config)) angles[nAngles++] = extraAngles[i];
+		}
+		int best = -1, next = -1;
+		double bestErr = 0.0, nextErr = 0.0;
+		for (int i = 0; i < nAngles; i++) {
+			double err = Math.abs(region.angle - angles[i]);
+			if (err > 90.0) err = 180.0 - err;
+			if ((best < 0) || (err < bestErr)) {
+				next = best;
+				nextErr = bestErr;
+				best = i;
+				bestErr = err;
+			} else if ((next < 0) || (err < nextErr)) {
+				next = i;
+				nextErr = err;
+			}
+		}
+		if (best < 0) return;
+		job.addLines(region.x, region.y, region.w, region.h, angles[best]);
+		if ((next >= 0) && (bestErr > maxRegionAngleError)) {
+			job.addLines(region.x, region.y, region.w, region.h, angles[next]);
+		}
+	}
+
+	// The bands of rows covered by a set of regions, merged and sorted, as
+	// pairs of first row and end row.
+	private static int[] regionBands(RegionDetector.Region[] regions, int h) {
+		boolean[] covered = new boolean[h + 1];
+		for (int i = 0; i < regions.length; i++) {
+			RegionDetector.Region r = regions[i];
+			Arrays.fill(covered, r.y, r.y + r.h, true);
+		}
+		int n = 0;
+		for (int y = 0; y < h; y++) {
+			if (covered[y] && ((y == 0) || (!covered[y - 1]))) n++;
+		}
+		int[] bands = new int[n * 2];
+		n = 0;
+		for (int y = 0; y < h; y++) {
+			if (covered[y] && ((y == 0) || (!covered[y - 1]))) bands[n++] = y;
+			if (covered[y] && (!covered[y + 1])) bands[n++] = y + 1;
+		}
+		return bands;
+	}
+
+	/**
+      * State shared by all of the tasks which scan a single image.
+      */
+	private class ScanJob {
+		final int w, h;
+		final int scanLineSpacing;
+		final boolean includeCheckDigits;
+		final BarCodeDecoderListener listener;
+		final FoundBarCodes found;
+		// The asynchronous scan which this job runs, or null.
+		final AsyncScan stream;
+		// Number of confirmed bar codes after which to stop, or 0.
+		final int expectedBarCodes;
+		// Set when the listener aborts the scan, when the expected number of
+		// bar codes have been confirmed, when the deadline passes, or when
+		// the asynchronous scan is cancelled.
+		volatile boolean aborted = false;
+		// Scan lines, in scanning order, LINE_FIELDS entries each.
+		int[] lineTable = new int[64 * LINE_FIELDS];
+		int nLines;
+		// Pixel index tables of the lines at arbitrary angles, by table
+		// number: with the source pixels' row stride, and with a row stride
+		// of w for the enhanced pixels and the gradients.  The two lists
+		// hold the same tables if the source rows are w pixels apart.
+		final ArrayList srcTables = new ArrayList();
+		final ArrayList imageTables = new ArrayList();
+		// Source pixels, one unsigned byte each.
+		byte[] src;
+		int srcOffset, srcStride;
+		// Pixels scanned by the current pass: either the source pixels or
+		// their edge-enhanced copy, and the index of the top-left pixel and
+		// distance between rows.
+		byte[] pixels;
+		int pixelOffset, pixelStride;
+		int pass;
+		// Whether to binarize each scan line adaptively rather than by the
+		// threshold sweep.
+		boolean adaptiveBinarization;
+		// Whether run lengths are in sub-pixel fixed point.
+		boolean subPixelEdges;
+		// Metrics to count into, or null.
+		ScanMetrics metrics;
+		// The System.nanoTime() at which to stop, if there is one, and
+		// whether the scan has stopped because of it.
+		boolean hasDeadline;
+		long deadline;
+		volatile boolean timedOut = false;
+		// For a progressive scan, the scan line of the line table to scan at
+		// each step, or null to scan them in order.
+		int[] lineOrder;
+		// The first scan line added by each call to addLines().
+		int[] groupStarts = new int[8];
+		int nGroups;
+		// Edge enhancement of the current pass.
+		int enhanceThresh, enhanceIntensity;
+		// For lazy enhancement, the edge strengths (see
+		// ImageUtils.edgeStrength()) of the samples of each scan line, by
+		// line number, computed when the line is first enhanced and reused
+		// by the later passes; and the packed Sobel gradients of the whole
+		// image if they were computed anyway, or null.
+		short[][] lineEdges;
+		int[] gradients;
+
+		ScanJob(
+			int w,
+			int h,
+			int scanLineSpacing,
+			boolean includeCheckDigits,
+			BarCodeDecoderListener listener,
+			int requiredVotes,
+			int expectedBarCodes,
+			AsyncScan stream) {
+
+			this.w = w;
+			this.h = h;
+			this.scanLineSpacing = scanLineSpacing;
+			this.includeCheckDigits = includeCheckDigits;
+			this.listener = listener;
+			this.found = new FoundBarCodes(requiredVotes, stream);
+			this.stream = stream;
+			this.expectedBarCodes = expectedBarCodes;
+		}
+
+		void usePixels(byte[] pixels, int offset, int stride) {
+			this.pixels = pixels;
+			this.pixelOffset = offset;
+			this.pixelStride = stride;
+		}
+
+		/**
+          * Add the scan lines which cross a rectangle of the image in one
+          * direction, spaced <code>scanLineSpacing</code> apart.  Diagonal
+          * lines start along the top (or bottom) edge and then along the left
+          * edge of the rectangle.  Lines at any other angle are taken from the
+          * cached index tables of <code>ScanLineTables</code>.
+          */
+		void addLines(int rx, int ry, int rw, int rh, int scanAngle) {
+			if (nGroups == groupStarts.length) {
+				int[] newStarts = new int[nGroups * 2];
+				System.arraycopy(groupStarts, 0, newStarts, 0, nGroups);
+				groupStarts = newStarts;
+			}
+			groupStarts[nGroups++] = nLines;
+			int sp = scanLineSpacing;
+			switch (scanAngle) {
+			case BarCodeResult.SCAN_HORIZONTAL:
+				// Left-right scan
+				for (int y = 0; y < rh; y += sp) addLine(rx, ry + y, 1, 0, rw, scanAngle);
+				break;
+			case BarCodeResult.SCAN_VERTICAL:
+				// Up-down scan
+				for (int x = 0; x < rw; x += sp) addLine(rx + x, ry, 0, 1, rh, scanAngle);
+				break;
+			case BarCodeResult.SCAN_DIAGONAL_DOWN:
+				// Upper-left to lower-right diagonal scan
+				for (int x = 0; x < rw; x += sp) {
+					addLine(rx + x, ry, 1, 1, Math.min(rw - x, rh), scanAngle);
+				}
+				for (int y = sp; y < rh; y += sp) {
+					addLine(rx, ry + y, 1, 1, Math.min(rw, rh - y), scanAngle);
+				}
+				break;
+			case BarCodeResult.SCAN_DIAGONAL_UP:
+				// Lower-left to upper-right diagonal scan
+				for (int y = 0; y < rh; y += sp) {
+					addLine(rx, ry + y, 1, -1, Math.min(rw, y + 1), scanAngle);
+				}
+				for (int x = sp; x < rw; x += sp) {
+					addLine(rx + x, ry + rh - 1, 1, -1, Math.min(rw - x, rh), scanAngle);
+				}
+				break;
+			default:
+				addTableLines(rx, ry, rw, rh, scanAngle);
+				break;
+			}
+		}
+
+		private void addTableLines(int rx, int ry, int rw, int rh, int scanAngle) {
+			ScanLineTables.Table table =
+				ScanLineTables.get(rx, ry, rw, rh, w, scanLineSpacing, scanAngle);
+			int tableNum = imageTables.size();
+			imageTables.add(table);
+			srcTables.add((srcStride == w) ?
+				table : ScanLineTables.get(rx, ry, rw, rh, srcStride, scanLineSpacing, scanAngle));
+			for (int line = 0; line < table.nLines; line++) {
+				int first = table.lineStart[line];
+				int idx = table.index[first];
+				addLine(idx % w, idx / w, 0, 0, table.lineStart[line + 1] - first, scanAngle);
+				lineTable[((nLines - 1) * LINE_FIELDS) + LINE_TABLE] = tableNum;
+				lineTable[((nLines - 1) * LINE_FIELDS) + LINE_FIRST] = first;
+			}
+		}
+
+		private void addLine(int x0, int y0, int dx, int dy, int nPix, int scanAngle) {
+			int i = nLines * LINE_FIELDS;
+			if ((i + LINE_FIELDS) > lineTable.length) {
+				int[] newTable = new int[lineTable.length * 2];
+				System.arraycopy(lineTable, 0, newTable, 0, i);
+				lineTable = newTable;
+			}
+			lineTable[i + LINE_X0] = x0;
+			lineTable[i + LINE_Y0] = y0;
+			lineTable[i + LINE_DX] = dx;
+			lineTable[i + LINE_DY] = dy;
+			lineTable[i + LINE_NPIX] = nPix;
+			lineTable[i + LINE_ANGLE] = scanAngle;
+			lineTable[i + LINE_TABLE] = -1;
+			nLines++;
+		}
+
+		/**
+          * Order the scan lines for a progressive scan, coarse to fine: the
+          * first level holds every 2^(n-1)th line added by each call to
+          * <code>addLines()</code>, where n is the number of levels, and
+          * each further level the lines halfway between those of the levels
+          * before it, down to the scan line spacing.  Within a level, the
+          * lines alternate between the calls to <code>addLines()</code>, and
+          * so between scan directions and regions.
+          * @return The index in <code>lineOrder</code> of the first line of
+          * each level, followed by the number of lines.
+          */
+		int[] orderProgressively() {
+			int nLevels = 1;
+			while ((scanLineSpacing << (nLevels - 1)) < coarsestSpacing) nLevels++;
+			int[] levelStarts = new int[nLevels + 1];
+			lineOrder = new int[nLines];
+			int n = 0;
+			for (int level = 0; level < nLevels; level++) {
+				levelStarts[level] = n;
+				int stride = 1 << (nLevels - 1 - level);
+				for (int j = 0, added = 1; added > 0; j++) {
+					// The jth line of this level in each group.
+					int idx = (level == 0) ? (j * stride) : (((j * 2) + 1) * stride);
+					added = 0;
+					for (int g = 0; g < nGroups; g++) {
+						int line = groupStarts[g] + idx;
+						if (line < ((g < (nGroups - 1)) ? groupStarts[g + 1] : nLines)) {
+							lineOrder[n++] = line;
+							added++;
 						}
 					}
-					if (aborted) break;
-					for (int startX = scanLineSpacing;
-						 startX < w;
-						 startX += scanLineSpacing) {
-						int pixIdx = ((h - 1) * w) + startX;
-						int nPix = 0;
-						for (int x = startX, y = h - 1;
-							 ((y >= 0) && (x < w));
-							 y--, x++, pixIdx -= wMinus1) {
-							scanLine[nPix++] = enhPixels[pixIdx];
-						}
-						if (!scanLineForBarCodes(
-							scanLine,
-							nPix,
-							barWidths,
-							foundBarCodes,
-							includeCheckDigits, listener)) {
-							aborted = true;
-							break;
-						}
+				}
+			}
+			levelStarts[nLevels] = n;
+			return levelStarts;
+		}
+
+		/**
+          * Check whether the deadline has passed or the asynchronous scan has
+          * been cancelled, and if so, stop the scan.
+          * @return <code>true</code> if the scan has been stopped, for any
+          * reason.
+          */
+		boolean outOfTime() {
+			if (hasDeadline && (!aborted) && ((System.nanoTime() - deadline) >= 0L)) {
+				timedOut = true;
+				aborted = true;
+			}
+			if ((stream != null) && stream.cancelled) aborted = true;
+			return aborted;
+		}
+
+		/**
+          * Scan a range of the scan lines of the line table, or of
+          * <code>lineOrder</code> if it is set.
+          */
+		void scanLines(int firstLine, int endLine, ScanContext context) {
+			int[] scanLine = context.getScanLine(Math.max(w, h) * 2);
+			int[] barWidths = context.getBarWidths(scanLine.length);
+			HitSink sink = new HitSink(this);
+			long[] counts = (metrics != null) ? context.getMetricCounts() : null;
+			sink.counts = counts;
+			int[] lineOrder = this.lineOrder;
+			for (int step = firstLine; ((step < endLine) && (!aborted)); step++) {
+				int line = (lineOrder != null) ? lineOrder[step] : step;
+				// A line of n pixels has at most n - 1 bars and spaces.
+				if (lineTable[(line * LINE_FIELDS) + LINE_NPIX] <= minBarsAndSpaces) continue;
+				if (outOfTime()) break;
+				long start = (counts != null) ? System.nanoTime() : 0L;
+				int nPix = getScanLine(line, scanLine, sink);
+				long extracted = (counts != null) ? System.nanoTime() : 0L;
+				if (!scanLineForBarCodes(
+					scanLine,
+					nPix,
+					barWidths,
+					context,
+					sink,
+					line,
+					this)) {
+					aborted = true;
+				}
+				if (counts != null) {
+					countLine(
+						counts,
+						sink,
+						lineTable[(line * LINE_FIELDS) + LINE_ANGLE],
+						pass,
+						System.nanoTime() - extracted,
+						extracted - start);
+				}
+			}
+			if (counts != null) metrics.add(counts);
+		}
+
+		/**
+          * Extract the pixels of one scan line of the line table, and record
+          * the line's starting pixel and direction in the sink.  With lazy
+          * enhancement, the extracted pixels are also enhanced.
+          * @return The number of pixels in the scan line.
+          */
+		private int getScanLine(int line, int[] scanLine, HitSink sink) {
+
+			int[] lineTable = this.lineTable;
+			int entry = line * LINE_FIELDS;
+			int x0 = lineTable[entry + LINE_X0], y0 = lineTable[entry + LINE_Y0];
+			int dx = lineTable[entry + LINE_DX], dy = lineTable[entry + LINE_DY];
+			int nPix = lineTable[entry + LINE_NPIX];
+			int scanAngle = lineTable[entry + LINE_ANGLE];
+			if (lineTable[entry + LINE_TABLE] >= 0) {
+				return getTableScanLine(
+					line,
+					lineTable[entry + LINE_TABLE],
+					lineTable[entry + LINE_FIRST],
+					nPix,
+					scanAngle,
+					scanLine,
+					sink);
+			}
+			sink.setGeometry(x0, y0, dx, dy, scanAngle);
+			int stride = pixelStride;
+			int pixIdx = pixelOffset + (y0 * stride) + x0;
+			int step = (dy * stride) + dx;
+			byte[] pixels = this.pixels;
+			for (int i = 0; i < nPix; i++, pixIdx += step) scanLine[i] = pixels[pixIdx] & 0xff;
+			if ((lineEdges == null) || (enhanceIntensity == 0)) return nPix;
+			short[] edges = lineEdges[line];
+			if (edges == null) {
+				edges = new short[nPix];
+				int[] gradients = this.gradients;
+				if (gradients != null) {
+					int gradIdx = (y0 * w) + x0;
+					int gradStep = (dy * w) + dx;
+					for (int i = 0; i < nPix; i++, gradIdx += gradStep) {
+						edges[i] = ImageUtils.edgeStrength(gradients[gradIdx]);
 					}
-					if (aborted) break;
+				} else {
+					ImageUtils.sobelEdgeStrengths(
+						src, srcOffset, srcStride, w, h, x0, y0, dx, dy, edges, nPix);
 				}
+				lineEdges[line] = edges;
 			}
+			ImageUtils.sobelEnhanceLine(scanLine, edges, nPix, enhanceThresh, enhanceIntensity);
+			return nPix;
+		}
+
+		/**
+          * Extract the pixels of one scan line through its pixel index table,
+          * like <code>getScanLine()</code>.
+          */
+		private int getTableScanLine(
+			int line,
+			int tableNum,
+			int first,
+			int nPix,
+			int scanAngle,
+			int[] scanLine,
+			HitSink sink) {
+
+			int[] imageIndex = ((ScanLineTables.Table)imageTables.get(tableNum)).index;
+			sink.setGeometry(imageIndex, first, scanAngle);
+			int[] index = (pixelStride == w) ?
+				imageIndex : ((ScanLineTables.Table)srcTables.get(tableNum)).index;
+			int offset = pixelOffset;
+			byte[] pixels = this.pixels;
+			for (int i = 0; i < nPix; i++) scanLine[i] = pixels[offset + index[first + i]] & 0xff;
+			if ((lineEdges == null) || (enhanceIntensity == 0)) return nPix;
+			short[] edges = lineEdges[line];
+			if (edges == null) {
+				edges = new short[nPix];
+				int[] gradients = this.gradients;
+				for (int i = 0; i < nPix; i++) {
+					int gradIdx = imageIndex[first + i];
+					int g = (gradients != null) ?
+						gradients[gradIdx] :
+						ImageUtils.sobelGradient(
+							src, srcOffset, srcStride, w, h, gradIdx % w, gradIdx / w);
+					edges[i] = ImageUtils.edgeStrength(g);
+				}
+				lineEdges[line] = edges;
+			}
+			ImageUtils.sobelEnhanceLine(scanLine, edges, nPix, enhanceThresh, enhanceIntensity);
+			return nPix;
+		}
+	}
+
+	/**
+      * Sink which collects the hits of one thread into the job's result set,
+      * tagging each with the order key of the scan line and threshold step
+      * being decoded and with its location in the image.  The first hit of
+      * each bar code on a scan line is a vote for it; once the job's
+      * expected number of bar codes are confirmed, the sink stops the scan.
+      * The listener is notified of every hit when one vote is required, and
+      * otherwise once per bar code, by the hit which confirms it.
+      */
+	private class HitSink implements BarCodeSink {
+		private final ScanJob job;
+		// Order key of the current decoder call, and index of the next hit.
+		long order;
+		int hitIdx;
+		// Run lengths being decoded, the threshold which produced them, and
+		// the number of pixels of the leading space which was skipped.
+		int[] barWidths;
+		int threshold;
+		int firstBarOffset;
+		// Metrics counts of the current thread, or null; whether a bar code
+		// has been found on the current scan line, and the nanoseconds spent
+		// decoding it so far.
+		long[] counts;
+		boolean hitOnLine;
+		long decodeNanos;
+		// Starting pixel and per-sample step of the current scan line, or
+		// for a line sampled through an index table, the table (with rows
+		// w pixels apart) and the position of its first sample in it.
+		private int x0, y0, dx, dy, scanAngle;
+		private int[] sampleIndex;
+		private int sampleFirst;
+		// Decoders and bar codes which have already voted on the current
+		// scan line.
+		private final ArrayList lineVoteDecoders = new ArrayList();
+		private final ArrayList lineVoteTexts = new ArrayList();
+
+		HitSink(ScanJob job) {
+			this.job = job;
+		}
+
+		void setGeometry(int x0, int y0, int dx, int dy, int scanAngle) {
+			this.x0 = x0;
+			this.y0 = y0;
+			this.dx = dx;
+			this.dy = dy;
+			this.scanAngle = scanAngle;
+			this.sampleIndex = null;
+			newLine();
+		}
+
+		void setGeometry(int[] sampleIndex, int sampleFirst, int scanAngle) {
+			this.sampleIndex = sampleIndex;
+			this.sampleFirst = sampleFirst;
+			this.scanAngle = scanAngle;
+			newLine();
+		}
+
+		private void newLine() {
+			lineVoteDecoders.clear();
+			lineVoteTexts.clear();
+			hitOnLine = false;
+		}
+
+		// Whether a hit is the first of its bar code on the current line.
+		private boolean firstOnLine(String barCode, BarCodeDecoder decoder) {
+			for (int i = 0; i < lineVoteTexts.size(); i++) {
+				if ((lineVoteDecoders.get(i) == decoder) && lineVoteTexts.get(i).equals(barCode)) {
+					return false;
+				}
+			}
+			lineVoteDecoders.add(decoder);
+			lineVoteTexts.add(barCode);
+			return true;
+		}
+
+		public boolean barCodeFound(
+			String barCode,
+			BarCodeDecoder decoder,
+			int startIdx,
+			int endIdx) {
+
+			int startSample = firstBarOffset;
+			for (int i = 0; i < startIdx; i++) startSample += barWidths[i];
+			int endSample = startSample;
+			for (int i = startIdx; i < endIdx; i++) endSample += barWidths[i];
+			if (job.subPixelEdges) {
+				// Round sub-pixel positions to the nearest sample.
+				int half = 1 << (RunLengthExtractor.SUBPIXEL_BITS - 1);
+				startSample = (startSample + half) >> RunLengthExtractor.SUBPIXEL_BITS;
+				endSample = (endSample + half) >> RunLengthExtractor.SUBPIXEL_BITS;
+			}
+			endSample--;
+			int startX, startY, endX, endY;
+			if (sampleIndex != null) {
+				int startPix = sampleIndex[sampleFirst + startSample];
+				int endPix = sampleIndex[sampleFirst + endSample];
+				startX = startPix % job.w;
+				startY = startPix / job.w;
+				endX = endPix % job.w;
+				endY = endPix / job.w;
+			} else {
+				startX = x0 + (startSample * dx);
+				startY = y0 + (startSample * dy);
+				endX = x0 + (endSample * dx);
+				endY = y0 + (endSample * dy);
+			}
+			BarCodeResult hit = new BarCodeResult(
+				decoder.getSymbology(),
+				barCode,
+				startX,
+				startY,
+				endX,
+				endY,
+				scanAngle,
+				threshold,
+				1,
+				1);
+			if (counts != null) {
+				counts[ScanMetrics.HITS]++;
+				hitOnLine = true;
+			}
+			DecodeHitEvent event = new DecodeHitEvent();
+			if (event.isEnabled()) {
+				event.symbology = decoder.getSymbology();
+				event.text = barCode;
+				event.scanAngle = scanAngle;
+				event.pass = job.pass;
+				event.threshold = threshold;
+				event.commit();
+			}
+			boolean confirmed = job.found.add(
+				hit, order + Math.min(hitIdx++, 0xff), firstOnLine(barCode, decoder));
+			if ((job.expectedBarCodes > 0) &&
+				(job.found.getConfirmedCount() >= job.expectedBarCodes)) {
+				job.aborted = true;
+			}
+			// With one vote required, the listener hears of every hit, as it
+			// always has; otherwise only of each bar code's confirmation.
+			boolean notify =
+				(job.listener != null) && (confirmed || (job.found.getRequiredVotes() == 1));
+			return ((!notify) || job.listener.barCodeFound(barCode, decoder)) && (!job.aborted);
+		}
+	}
+
+	/**
+      * Fork-join task which scans a range of scan lines, splitting the range
+      * until it is small enough to scan directly.  Each leaf task uses the
+      * scan line buffers of its thread's <code>ScanContext</code>; the
+      * decoders are re-entrant and shared.
+      */
+	private class ScanLinesTask extends RecursiveAction {
+		private final ScanJob job;
+		private final int firstLine, endLine;
+
+		ScanLinesTask(ScanJob job, int firstLine, int endLine) {
+			this.job = job;
+			this.firstLine = firstLine;
+			this.endLine = endLine;
+		}
+
+		protected void compute() {
+			if (job.aborted) return;
+			if ((endLine - firstLine) <= minLinesPerTask) {
+				ScanContext context = ScanContext.acquire();
+				try {
+					job.scanLines(firstLine, endLine, context);
+				} finally {
+					context.release();
+				}
+				return;
+			}
+			int mid = (firstLine + endLine) >>> 1;
+			invokeAll(
+				new ScanLinesTask(job, firstLine, mid),
+				new ScanLinesTask(job, mid, endLine));
+		}
+	}
+
+	/**
+      * Fork-join task which processes a band of rows of the image: if
+      * <code>dest</code> is <code>null</code>, it computes the Sobel
+      * gradients of the band into <code>grad</code>; otherwise it enhances
+      * the band into <code>dest</code> using those gradients.
+      */
+	private static class EnhanceTask extends RecursiveAction {
+		private final ScanJob job;
+		private final int[] grad;
+		private final byte[] dest;
+		private final int thresh, intensity, firstRow, endRow;
+
+		EnhanceTask(
+			ScanJob job,
+			int[] grad,
+			byte[] dest,
+			int thresh,
+			int intensity,
+			int firstRow,
+			int endRow) {
+
+			this.job = job;
+			this.grad = grad;
+			this.dest = dest;
+			this.thresh = thresh;
+			this.intensity = intensity;
+			this.firstRow = firstRow;
+			this.endRow = endRow;
+		}
+
+		protected void compute() {
+			if ((endRow - firstRow) <= minRowsPerTask) {
+				if (dest == null) {
+					ImageUtils.sobelGradients(
+						job.src,
+						job.srcOffset,
+						job.srcStride,
+						grad,
+						job.w,
+						job.h,
+						firstRow,
+						endRow);
+				} else {
+					ImageUtils.sobelEnhance(
+						job.src,
+						job.srcOffset,
+						job.srcStride,
+						grad,
+						dest,
+						job.w,
+						job.h,
+						thresh,
+						intensity,
+						firstRow,
+						endRow);
+				}
+				return;
+			}
+			int mid = (firstRow + endRow) >>> 1;
+			invokeAll(
+				new EnhanceTask(job, grad, dest, thresh, intensity, firstRow, mid),
+				new EnhanceTask(job, grad, dest, thresh, intensity, mid, endRow));
 		}
-		String[]result = new String[foundBarCodes.size()];
-		foundBarCodes.toArray(result);
-		return result;
 	}
 
 	private final boolean scanLineForBarCodes(
 		int[]pixels,
 		int nPixels,
 		int[]barWidths,
-		ArrayList foundBarCodes,
-		boolean includeCheckDigits,
-		BarCodeDecoderListener listener) {
+		ScanContext context,
+		HitSink sink,
+		int line,
+		ScanJob job) {
 
-		if (nPixels < 2) return true;
-		// Figure out min and max pixels.
-		int min = pixels[0];
-		int max = min;
-		for (int i = 1; i < nPixels; i++) {
-			int sample = pixels[i];
-			if (sample < min) min = sample; else if (sample > max) max = sample;
-		}
-		int thresholdGranularity = (max - min) / thresholdGranularitySpacing;
-		if (thresholdGranularity < 1) thresholdGranularity = 1;
-		// Repeatedly scan the line, trying all
-		// threshold values between min and max.
-		for (int spaceThreshold = min + thresholdGranularity;
-			 spaceThreshold < max;
-			 spaceThreshold += thresholdGranularity) {
-			int widIdx = 0;
-			int wid = 1;
-			boolean bar = (pixels[0] < spaceThreshold);
-			for (int x = 1; x < nPixels; x++) {
-				int pix = pixels[x];
-				if (bar == (pix < spaceThreshold)) {
-					wid++;
-				} else {
-					// The first width must always be the width of a bar.
-					if ((bar) || (widIdx > 0)) barWidths[widIdx++] = wid;
-					wid = 1;
-					bar = !bar;
-				}
-			}	// for (int x = 1; x < nPixels; x++)
-			for (int i = 0; (i < decoders.length); i++) {
-				String[]bcs = decoders[i].decode(barWidths, widIdx, includeCheckDigits, listener);
-				for (int j = 0; j < bcs.length; j++) {
-					String bc = bcs[j];
-					if (foundBarCodes.indexOf(bc) < 0) foundBarCodes.add(bc);
+		if (job.adaptiveBinarization) {
+			// Decode the run lengths between the line's own edges, then at
+			// its Otsu threshold.
+			AdaptiveBinarizer binarizer = context.getAdaptiveBinarizer();
+			for (int step = 0; step < 2; step++) {
+				int widIdx = (step == 0) ?
+					binarizer.extractEdges(pixels, nPixels, barWidths, job.subPixelEdges) :
+					binarizer.extractOtsu(pixels, nPixels, barWidths, job.subPixelEdges);
+				if (!decodeRunLengths(
+					barWidths,
+					widIdx,
+					binarizer.getThreshold(),
+					binarizer.getFirstBarOffset(),
+					step,
+					context,
+					sink,
+					line,
+					job)) {
+					return false;
 				}
-				if (decoders[i].getAbortedByListener()) return false;
 			}
-		}	// for (int spaceThreshold = min; ...
+			return true;
+		}
+		// Find the distinct run length sequences across all threshold levels
+		// between min and max, and decode each of them.
+		RunLengthExtractor extractor = context.getRunLengthExtractor();
+		int nLevels = extractor.analyze(pixels, nPixels, thresholdGranularitySpacing);
+		if (extractor.getMaxRunCount() < minBarsAndSpaces) return true;
+		for (int level = 1; level <= nLevels; level++) {
+			if (!extractor.isDistinct(level)) continue;
+			int widIdx = job.subPixelEdges ?
+				extractor.extractSubPixel(level, pixels, barWidths) :
+				extractor.extract(level, barWidths);
+			if (!decodeRunLengths(
+				barWidths,
+				widIdx,
+				extractor.getThreshold(level),
+				extractor.getFirstBarOffset(),
+				level - 1,
+				context,
+				sink,
+				line,
+				job)) {
+				return false;
+			}
+		}	// for (int level = 1; level <= nLevels; level++)
 		return true;
 	}
+
+	// Run every decoder over one binarization of a scan line.
+	private final boolean decodeRunLengths(
+		int[]barWidths,
+		int widIdx,
+		int threshold,
+		int firstBarOffset,
+		int thresholdStep,
+		ScanContext context,
+		HitSink sink,
+		int line,
+		ScanJob job) {
+
+		if (widIdx < minBarsAndSpaces) return true;
+		sink.barWidths = barWidths;
+		sink.threshold = threshold;
+		sink.firstBarOffset = firstBarOffset;
+		long[] counts = sink.counts;
+		long start = 0L;
+		if (counts != null) {
+			counts[ScanMetrics.THRESHOLD_STEPS]++;
+			start = System.nanoTime();
+		}
+		boolean keepGoing = true;
+		for (int i = 0; ((i < decoders.length) && keepGoing); i++) {
+			if (widIdx < decoderMinBarsAndSpaces[i]) continue;
+			sink.order = FoundBarCodes.orderKey(job.pass, line, thresholdStep, i);
+			sink.hitIdx = 0;
+			if (counts != null) counts[ScanMetrics.DECODER_CALLS]++;
+			keepGoing = decoders[i].decode(
+				barWidths, widIdx, job.includeCheckDigits, context, sink);
+		}
+		if (counts != null) {
+			long nanos = System.nanoTime() - start;
+			counts[ScanMetrics.STAGE_NANOS + ScanMetrics.STAGE_DECODE] += nanos;
+			sink.decodeNanos += nanos;
+		}
+		return keepGoing;
+	}
 }
@@ -0,0 +1,58 @@
+// RasterBarCodeRenderer.java
+// Copyright (c) 2002-2010 Ronald B. Cemer
+// All rights reserved.
+// This software is released under the BSD license.
+// Please see the accompanying LICENSE.txt for details.
+
+package com.roncemer.barcode;
+
+import java.awt.*;
+
+/**
+  * Interface for bar code renderers which can also render bar codes
+  * straight into the pixels of a <code>BarCodeRaster</code>.  Each band
+  * of bars is drawn as runs of modules on one row and copied to the rows
+  * below it, and the text is copied from cached glyphs, so rendering
+  * costs little more than writing the pixels.  This is the way to render
+  * large numbers of labels.
+  */
+public interface RasterBarCodeRenderer extends BarCodeRenderer {
+	/**
+      * Get the size of a rendered bar code.
+      * @param barCode The bar code.
+      * @param narrowBarWidth The width of a narrow bar.
+      * @param barHeight The height of the bars.
+      * @param textHeight The height of the text to be renderered under the
+      * bar code, or zero for none.
+      * @return The width and height of the bar code, in pixels.
+      */
+	public Dimension getSize(
+		String barCode,
+		int narrowBarWidth,
+		int barHeight,
+		int textHeight);
+
+	/**
+      * Render a bar code into a <code>BarCodeRaster</code>.  The bars and the
+      * spaces between them are painted black and white; the text is drawn
+      * over what is under it.  Whatever falls outside the raster is
+      * clipped.
+      * @param raster The raster to render into.
+      * @param x The column of the bar code's left edge.
+      * @param y The row of the bar code's top edge.
+      * @param barCode The bar code, as for
+      * {@link BarCodeRenderer#render(Graphics, String, int, int, int)}.
+      * @param narrowBarWidth The width of a narrow bar.
+      * @param barHeight The height of the bars.
+      * @param textHeight The height of the text to be renderered under the
+      * bar code, or zero for none.
+      */
+	public void render(
+		BarCodeRaster raster,
+		int x,
+		int y,
+		String barCode,
+		int narrowBarWidth,
+		int barHeight,
+		int textHeight);
+}
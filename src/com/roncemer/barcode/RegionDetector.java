@@ -0,0 +1,219 @@
+// RegionDetector.java
+// Copyright (c) 2002-2010 Ronald B. Cemer
+// All rights reserved.
+// This software is released under the BSD license.
+// Please see the accompanying LICENSE.txt for details.
+
+package com.roncemer.barcode;
+
+import java.util.*;
+
+import com.roncemer.util.*;
+
+/**
+  * Finds the regions of an image which are likely to contain a bar code,
+  * using the packed Sobel gradients computed by
+  * <code>ImageUtils.sobelGradients()</code>.
+  * <p>
+  * The image is divided into square tiles.  For each tile, the structure
+  * tensor of its edge pixels (the sums of <code>gx*gx</code>,
+  * <code>gy*gy</code> and <code>gx*gy</code>) gives both the amount of edge
+  * energy and how much of it points the same way.  The bars of a bar code
+  * produce many strong, parallel edges, so their tiles are both dense and
+  * coherent, while most other texture is not.  Candidate tiles with similar
+  * orientations are joined into regions, bridging gaps of one tile (such as
+  * the inside of a wide bar), and the regions are ranked by their coherent
+  * edge energy.
+  * <p>
+  * This class should never be instantiated, since all methods are static.
+  *
+  * @author Ronald B. Cemer
+  */
+final class RegionDetector {
+	// Size of the tiles, in pixels.
+	private static final int tileSize = 16;
+	// Minimum squared gradient magnitude of an edge pixel.
+	private static final int minEdgeMagnitude2 = 64 * 64;
+	// Minimum number of edge pixels in a candidate tile.
+	private static final int minEdgePixels = (tileSize * tileSize) / 8;
+	// Minimum coherence (0-1) of the edges in a candidate tile.
+	private static final double minCoherence = 0.5;
+	// Minimum cosine of the difference between the doubled orientation
+	// angles of two joined tiles: the tiles may be at most 22.5 degrees
+	// apart.
+	private static final double minJoinCosine = Math.cos(Math.PI / 4.0);
+	// Minimum number of tiles in a region.
+	private static final int minRegionTiles = 3;
+	// Number of tiles added around each region, to take in the quiet zones
+	// and the edges of the outermost bars.
+	private static final int marginTiles = 2;
+	// Maximum number of regions returned.
+	private static final int maxRegions = 32;
+
+	/**
+      * A candidate region: a rectangle of the image and the direction of its
+      * edge gradients, which is the direction in which to scan across its
+      * bars.
+      */
+	static final class Region {
+		final int x, y, w, h;
+		// Direction of the gradients, in degrees, 0 (left to right) up to
+		// but not including 180, increasing clockwise since y points down.
+		final double angle;
+		final double score;
+
+		Region(int x, int y, int w, int h, double angle, double score) {
+			this.x = x;
+			this.y = y;
+			this.w = w;
+			this.h = h;
+			this.angle = angle;
+			this.score = score;
+		}
+	}
+
+	private RegionDetector() {
+	}
+
+	/**
+      * Find the candidate regions of an image.
+      * @param grad The packed Sobel gradients of the image.
+      * @param w The width of the image, in pixels.
+      * @param h The height of the image, in pixels.
+      * @return The candidate regions, best first.
+      */
+	static Region[] detect(int[]grad, int w, int h) {
+		int tw = (w + tileSize - 1) / tileSize;
+		int th = (h + tileSize - 1) / tileSize;
+		int ntiles = tw * th;
+		// Structure tensor of each tile, as the coherent energy and the
+		// doubled-angle orientation vector (sxx - syy, 2 * sxy).
+		double[] energy = new double[ntiles];
+		double[] vecX = new double[ntiles];
+		double[] vecY = new double[ntiles];
+		boolean[] candidate = new boolean[ntiles];
+		for (int ty = 0, t = 0; ty < th; ty++) {
+			int y0 = ty * tileSize, y1 = Math.min(y0 + tileSize, h);
+			for (int tx = 0; tx < tw; tx++, t++) {
+				int x0 = tx * tileSize, x1 = Math.min(x0 + tileSize, w);
+				long sxx = 0, syy = 0, sxy = 0;
+				int edges = 0;
+				for (int y = y0; y < y1; y++) {
+					for (int idx = (y * w) + x0, end = (y * w) + x1; idx < end; idx++) {
+						int g = grad[idx];
+						int gx = ImageUtils.gradientX(g), gy = ImageUtils.gradientY(g);
+						int gxx = gx * gx, gyy = gy * gy;
+						if ((gxx + gyy) < minEdgeMagnitude2) continue;
+						sxx += gxx;
+						syy += gyy;
+						sxy += gx * gy;
+						edges++;
+					}
+				}
+				if (edges < minEdgePixels) continue;
+				double vx = (double)(sxx - syy), vy = (double)(2 * sxy);
+				double coherent = Math.sqrt((vx * vx) + (vy * vy));
+				if (coherent < (minCoherence * (double)(sxx + syy))) continue;
+				candidate[t] = true;
+				energy[t] = coherent;
+				vecX[t] = vx / coherent;
+				vecY[t] = vy / coherent;
+			}
+		}
+
+		// Join candidate tiles into regions by flood fill.  Each region is
+		// kept as its tile bounds (min x, min y, max x, max y, including the
+		// margin), its summed orientation vector, and its score.
+		ArrayList regions = new ArrayList();
+		boolean[] visited = new boolean[ntiles];
+		int[] stack = new int[ntiles];
+		for (int seed = 0; seed < ntiles; seed++) {
+			if ((!candidate[seed]) || visited[seed]) continue;
+			visited[seed] = true;
+			int sp = 0;
+			stack[sp++] = seed;
+			int minTx = tw, minTy = th, maxTx = -1, maxTy = -1, nTiles = 0;
+			double score = 0.0, sumX = 0.0, sumY = 0.0;
+			while (sp > 0) {
+				int t = stack[--sp];
+				int tx = t % tw, ty = t / tw;
+				if (tx < minTx) minTx = tx;
+				if (tx > maxTx) maxTx = tx;
+				if (ty < minTy) minTy = ty;
+				if (ty > maxTy) maxTy = ty;
+				nTiles++;
+				score += energy[t];
+				sumX += vecX[t] * energy[t];
+				sumY += vecY[t] * energy[t];
+				for (int ny = Math.max(ty - 2, 0); ny <= Math.min(ty + 2, th - 1); ny++) {
+					for (int nx = Math.max(tx - 2, 0); nx <= Math.min(tx + 2, tw - 1); nx++) {
+						int n = (ny * tw) + nx;
+						if ((!candidate[n]) || visited[n]) continue;
+						if (((vecX[t] * vecX[n]) + (vecY[t] * vecY[n])) < minJoinCosine) continue;
+						visited[n] = true;
+						stack[sp++] = n;
+					}
+				}
+			}
+			if (nTiles < minRegionTiles) continue;
+			regions.add(new double[] {
+				Math.max(minTx - marginTiles, 0),
+				Math.max(minTy - marginTiles, 0),
+				Math.min(maxTx + marginTiles, tw - 1),
+				Math.min(maxTy + marginTiles, th - 1),
+				sumX,
+				sumY,
+				score
+			});
+		}
+
+		// Bar codes with wide bars or spaces may still fall apart into
+		// several regions, so merge regions whose margins touch and whose
+		// orientations are similar, until no more can be merged.
+		for (boolean merged = true; merged; ) {
+			merged = false;
+			for (int i = 0; i < regions.size(); i++) {
+				double[] a = (double[])regions.get(i);
+				for (int j = regions.size() - 1; j > i; j--) {
+					double[] b = (double[])regions.get(j);
+					if ((a[0] > b[2]) || (b[0] > a[2]) || (a[1] > b[3]) || (b[1] > a[3])) continue;
+					double cos = ((a[4] * b[4]) + (a[5] * b[5])) /
+						(Math.sqrt((a[4] * a[4]) + (a[5] * a[5])) *
+						 Math.sqrt((b[4] * b[4]) + (b[5] * b[5])));
+					if (!(cos >= minJoinCosine)) continue;
+					a[0] = Math.min(a[0], b[0]);
+					a[1] = Math.min(a[1], b[1]);
+					a[2] = Math.max(a[2], b[2]);
+					a[3] = Math.max(a[3], b[3]);
+					for (int k = 4; k < 7; k++) a[k] += b[k];
+					regions.remove(j);
+					merged = true;
+				}
+			}
+		}
+
+		Region[] result = new Region[regions.size()];
+		for (int i = 0; i < result.length; i++) {
+			double[] r = (double[])regions.get(i);
+			int x = (int)r[0] * tileSize, y = (int)r[1] * tileSize;
+			double angle = Math.toDegrees(Math.atan2(r[5], r[4])) / 2.0;
+			if (angle < 0.0) angle += 180.0;
+			result[i] = new Region(
+				x,
+				y,
+				Math.min(((int)r[2] + 1) * tileSize, w) - x,
+				Math.min(((int)r[3] + 1) * tileSize, h) - y,
+				angle,
+				r[6]);
+		}
+		Arrays.sort(result, new Comparator() {
+			public int compare(Object a, Object b) {
+				return Double.compare(((Region)b).score, ((Region)a).score);
+			}
+		});
+		if (result.length <= maxRegions) return result;
+		Region[] best = new Region[maxRegions];
+		System.arraycopy(result, 0, best, 0, maxRegions);
+		return best;
+	}
+}
@@ -0,0 +1,244 @@
+// RunLengthExtractor.java
+// Copyright (c) 2002-2010 Ronald B. Cemer
+// All rights reserved.
+// This software is released under the BSD license.
+// Please see the accompanying LICENSE.txt for details.
+
+package com.roncemer.barcode;
+
+/**
+  * Computes the run lengths of a scan line at every threshold level of the
+  * threshold sweep, without re-binarizing the line once per level.
+  * <p>
+  * The line's minimum and maximum are split into levels
+  * <code>min + (level * granularity)</code>, for every level below the
+  * maximum.  A single pass over the pixels collects the transitions between
+  * adjacent samples.  A transition between samples <code>a</code> and
+  * <code>b</code> is a run boundary exactly for the thresholds
+  * <code>t</code> with <code>min(a,b) &lt; t &lt;= max(a,b)</code>, which is
+  * a contiguous range of levels.  Transitions whose range contains no
+  * level (most of the sensor noise) are dropped right away, and the run
+  * lengths of a level are read off the remaining transitions.  A level
+  * whose set of boundaries is the same as the previous level's produces
+  * identical run lengths, so it is skipped.
+  * <p>
+  * Run lengths may also be extracted with sub-pixel precision, in fixed
+  * point with <code>SUBPIXEL_BITS</code> fraction bits.  Each run boundary
+  * is then placed where the straight line between the two samples on
+  * either side of it crosses the threshold, rather than at the second
+  * sample.  The decoders only compare widths with each other, so they take
+  * these as they are.
+  * <p>
+  * Instances are owned by a <code>ScanContext</code> and are not thread
+  * safe.
+  *
+  * @author Ronald B. Cemer
+  */
+final class RunLengthExtractor {
+	/**
+      * Number of fraction bits of sub-pixel run lengths.
+      */
+	static final int SUBPIXEL_BITS = 4;
+
+	// Positions of the transitions which are a boundary at some level, in
+	// increasing order, and the first and last level at which each is.
+	private int[] transPos = new int[0];
+	private int[] transFirst = new int[0];
+	private int[] transLast = new int[0];
+	private int nTrans;
+	// For each level, whether its boundaries differ from the previous
+	// level's.
+	private boolean[] levelChanged = new boolean[0];
+	private int min, granularity, nLevels;
+	// First level at which the first pixel is part of a bar.
+	private int firstPixelBarLevel;
+	// Results of the last extract().
+	private int firstBarOffset;
+
+	/**
+      * Analyze a scan line.
+      * @param pixels The pixels of the scan line.
+      * @param nPixels The number of pixels in the scan line.
+      * @param granularitySpacing The number of levels the range between the
+      * minimum and maximum pixel is divided into.
+      * @return The number of threshold levels.  Levels are numbered from 1.
+      */
+	int analyze(int[] pixels, int nPixels, int granularitySpacing) {
+		nLevels = 0;
+		nTrans = 0;
+		if (nPixels < 2) return 0;
+		if (transPos.length < nPixels) {
+			transPos = new int[nPixels];
+			transFirst = new int[nPixels];
+			transLast = new int[nPixels];
+		}
+		// Figure out min and max pixels, and collect the transitions.
+		int prev = pixels[0];
+		int min = prev;
+		int max = min;
+		int n = 0;
+		for (int i = 1; i < nPixels; i++) {
+			int sample = pixels[i];
+			if (sample != prev) {
+				transPos[n] = i;
+				if (sample < prev) {
+					transFirst[n] = sample;
+					transLast[n] = prev;
+				} else {
+					transFirst[n] = prev;
+					transLast[n] = sample;
+				}
+				n++;
+				if (sample < min) min = sample; else if (sample > max) max = sample;
+				prev = sample;
+			}
+		}
+		if (max == min) return 0;
+		int granularity = (max - min) / granularitySpacing;
+		if (granularity < 1) granularity = 1;
+		int nLevels = ((max - min) - 1) / granularity;
+		if (nLevels < 1) return 0;
+		if (levelChanged.length < (nLevels + 2)) levelChanged = new boolean[nLevels + 2];
+		for (int level = 1; level <= nLevels; level++) levelChanged[level] = false;
+		levelChanged[1] = true;
+		// Convert the transitions' pixel ranges to level ranges, and keep
+		// only those which are a boundary at some level.
+		int kept = 0;
+		for (int i = 0; i < n; i++) {
+			int first = ((transFirst[i] - min) / granularity) + 1;
+			int last = (transLast[i] - min) / granularity;
+			if (last > nLevels) last = nLevels;
+			if (first > last) continue;
+			transPos[kept] = transPos[i];
+			transFirst[kept] = first;
+			transLast[kept] = last;
+			kept++;
+			levelChanged[first] = true;
+			levelChanged[last + 1] = true;
+		}
+		int firstPixelBarLevel = ((pixels[0] - min) / granularity) + 1;
+		if (firstPixelBarLevel <= nLevels) levelChanged[firstPixelBarLevel] = true;
+		this.nTrans = kept;
+		this.min = min;
+		this.granularity = granularity;
+		this.nLevels = nLevels;
+		this.firstPixelBarLevel = firstPixelBarLevel;
+		return nLevels;
+	}
+
+	/**
+      * @return The number of run boundaries which are a boundary at some
+      * level; no level has more run lengths than this.
+      */
+	int getMaxRunCount() {
+		return nTrans;
+	}
+
+	/**
+      * @param level A level number, from 1 to the number of levels.
+      * @return <code>true</code> if the run lengths at this level differ
+      * from those at the previous level.  Always <code>true</code> for
+      * level 1.
+      */
+	boolean isDistinct(int level) {
+		return levelChanged[level];
+	}
+
+	/**
+      * @param level A level number, from 1 to the number of levels.
+      * @return The threshold at this level.  Pixels below it are bars.
+      */
+	int getThreshold(int level) {
+		return min + (level * granularity);
+	}
+
+	/**
+      * Compute the run lengths at a level.  The first width is always the
+      * width of a bar; a leading space is skipped, and the trailing run is
+      * not included.
+      * @param level A level number, from 1 to the number of levels.
+      * @param barWidths Receives the run lengths.
+      * @return The number of run lengths.
+      */
+	int extract(int level, int[] barWidths) {
+		int widIdx = 0;
+		int prev = 0;
+		boolean bar = (level >= firstPixelBarLevel);
+		firstBarOffset = 0;
+		int[] transPos = this.transPos;
+		int[] transFirst = this.transFirst;
+		int[] transLast = this.transLast;
+		for (int i = 0, n = nTrans; i < n; i++) {
+			if ((level < transFirst[i]) || (level > transLast[i])) continue;
+			int x = transPos[i];
+			// The first width must always be the width of a bar.
+			if ((bar) || (widIdx > 0)) barWidths[widIdx++] = x - prev; else firstBarOffset = x;
+			prev = x;
+			bar = !bar;
+		}
+		return widIdx;
+	}
+
+	/**
+      * Compute the run lengths at a level with sub-pixel precision, in fixed
+      * point with <code>SUBPIXEL_BITS</code> fraction bits.  The level's
+      * boundaries are located at the threshold midway through the levels
+      * which have the same boundaries, where the widths are least skewed by
+      * the edges' slopes.  The first width is always the width of a bar; a
+      * leading space is skipped, and the trailing run is not included.
+      * @param level A level number, from 1 to the number of levels.
+      * @param pixels The pixels of the scan line which was analyzed.
+      * @param barWidths Receives the run lengths.
+      * @return The number of run lengths.
+      */
+	int extractSubPixel(int level, int[] pixels, int[] barWidths) {
+		int widIdx = 0;
+		int prev = 0;
+		boolean bar = (level >= firstPixelBarLevel);
+		firstBarOffset = 0;
+		int last = level;
+		while ((last < nLevels) && (!levelChanged[last + 1])) last++;
+		int threshold = min + (((level + last) * granularity) >> 1);
+		int[] transPos = this.transPos;
+		int[] transFirst = this.transFirst;
+		int[] transLast = this.transLast;
+		for (int i = 0, n = nTrans; i < n; i++) {
+			if ((level < transFirst[i]) || (level > transLast[i])) continue;
+			int x = subPixelEdge(pixels, transPos[i], threshold);
+			// The first width must always be the width of a bar.
+			if ((bar) || (widIdx > 0)) barWidths[widIdx++] = x - prev; else firstBarOffset = x;
+			prev = x;
+			bar = !bar;
+		}
+		return widIdx;
+	}
+
+	/**
+      * Locate a run boundary between two samples with sub-pixel precision.
+      * @param pixels The pixels of a scan line.
+      * @param x The position of the first sample past the boundary; the
+      * sample before it must be on the other side of the threshold.
+      * @param threshold The threshold.  Pixels below it are bars.
+      * @return The position of the boundary, in fixed point with
+      * <code>SUBPIXEL_BITS</code> fraction bits, on the same scale as
+      * <code>x</code> being the boundary between samples
+      * <code>x - 1</code> and <code>x</code>.
+      */
+	static int subPixelEdge(int[] pixels, int x, int threshold) {
+		// The samples are integers, so the line crosses the threshold at
+		// threshold - 0.5, which keeps the fraction strictly between 0 and
+		// 1 and treats rising and falling edges alike.
+		int a = pixels[x - 1], b = pixels[x];
+		int frac = ((((a - threshold) * 2) + 1) << SUBPIXEL_BITS) / ((a - b) * 2);
+		return ((x - 1) << SUBPIXEL_BITS) + frac + (1 << (SUBPIXEL_BITS - 1));
+	}
+
+	/**
+      * @return The number of pixels of the leading space which was skipped
+      * by the last call to {@link #extract(int, int[])}, or by the last
+      * call to {@link #extractSubPixel(int, int[], int[])} in fixed point.
+      */
+	int getFirstBarOffset() {
+		return firstBarOffset;
+	}
+}
@@ -0,0 +1,486 @@
+// ScanConfiguration.java
+// Copyright (c) 2002-2010 Ronald B. Cemer
+// All rights reserved.
+// This software is released under the BSD license.
+// Please see the accompanying LICENSE.txt for details.
+
+package com.roncemer.barcode;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+  * Immutable set of options which control how an
+  * <code>ImageBarCodeScanner</code> scans an image.  Instances are never
+  * modified; the <code>with...</code> methods return a modified copy.  A scan
+  * takes a snapshot of its scanner's configuration when it starts, so
+  * changing the configuration never affects scans which are in progress.
+  *
+  * @author Ronald B. Cemer
+  */
+public final class ScanConfiguration {
+	/**
+      * The default configuration: scan line spacing of 4, all scan
+      * directions enabled, single-threaded scanning.
+      */
+	public static final ScanConfiguration DEFAULT = new ScanConfiguration();
+
+	private int scanLineSpacing = 4;
+	private boolean enableHorizontalScanning = true;
+	private boolean enableVerticalScanning = true;
+	private boolean enableDiagonalScanning = true;
+	private boolean parallelScanning = false;
+	private ForkJoinPool forkJoinPool = null;
+	private boolean lazyEnhancement = false;
+	private boolean regionDetection = false;
+	private int[] additionalScanAngles = new int[0];
+	private int requiredVotes = 1;
+	private int expectedBarCodes = 0;
+	private boolean adaptiveBinarization = false;
+	private boolean subPixelEdges = false;
+	private ScanMetrics metrics = null;
+	private boolean progressiveScanning = false;
+	private long timeBudgetNanos = 0L;
+	private Executor executor = null;
+
+	private ScanConfiguration() {
+	}
+
+	private ScanConfiguration copy() {
+		ScanConfiguration c = new ScanConfiguration();
+		c.scanLineSpacing = scanLineSpacing;
+		c.enableHorizontalScanning = enableHorizontalScanning;
+		c.enableVerticalScanning = enableVerticalScanning;
+		c.enableDiagonalScanning = enableDiagonalScanning;
+		c.parallelScanning = parallelScanning;
+		c.forkJoinPool = forkJoinPool;
+		c.lazyEnhancement = lazyEnhancement;
+		c.regionDetection = regionDetection;
+		c.additionalScanAngles = additionalScanAngles;
+		c.requiredVotes = requiredVotes;
+		c.expectedBarCodes = expectedBarCodes;
+		c.adaptiveBinarization = adaptiveBinarization;
+		c.subPixelEdges = subPixelEdges;
+		c.metrics = metrics;
+		c.progressiveScanning = progressiveScanning;
+		c.timeBudgetNanos = timeBudgetNanos;
+		c.executor = executor;
+		return c;
+	}
+
+	/**
+      * @param scanLineSpacing How many pixels apart the scans of the image
+      * will be.  Must be at least 1.
+      * @return A copy of this configuration with the new scan line spacing.
+      */
+	public ScanConfiguration withScanLineSpacing(int scanLineSpacing) {
+		if (scanLineSpacing < 1) {
+			throw new IllegalArgumentException
+				("Scan line spacing must be at least 1: " + scanLineSpacing);
+		}
+		ScanConfiguration c = copy();
+		c.scanLineSpacing = scanLineSpacing;
+		return c;
+	}
+
+	/**
+      * @return The scan line spacing.
+      */
+	public int getScanLineSpacing() {
+		return scanLineSpacing;
+	}
+
+	/**
+      * @param enable <code>true</code> to enable horizontal scanning;
+      * <code>false</code> to disable it.
+      * @return A copy of this configuration with the new setting.
+      */
+	public ScanConfiguration withHorizontalScanning(boolean enable) {
+		ScanConfiguration c = copy();
+		c.enableHorizontalScanning = enable;
+		return c;
+	}
+
+	/**
+      * @return <code>true</code> if horizontal scanning is enabled.
+      */
+	public boolean getEnableHorizontalScanning() {
+		return enableHorizontalScanning;
+	}
+
+	/**
+      * @param enable <code>true</code> to enable vertical scanning;
+      * <code>false</code> to disable it.
+      * @return A copy of this configuration with the new setting.
+      */
+	public ScanConfiguration withVerticalScanning(boolean enable) {
+		ScanConfiguration c = copy();
+		c.enableVerticalScanning = enable;
+		return c;
+	}
+
+	/**
+      * @return <code>true</code> if vertical scanning is enabled.
+      */
+	public boolean getEnableVerticalScanning() {
+		return enableVerticalScanning;
+	}
+
+	/**
+      * @param enable <code>true</code> to enable diagonal scanning;
+      * <code>false</code> to disable it.
+      * @return A copy of this configuration with the new setting.
+      */
+	public ScanConfiguration withDiagonalScanning(boolean enable) {
+		ScanConfiguration c = copy();
+		c.enableDiagonalScanning = enable;
+		return c;
+	}
+
+	/**
+      * @return <code>true</code> if diagonal scanning is enabled.
+      */
+	public boolean getEnableDiagonalScanning() {
+		return enableDiagonalScanning;
+	}
+
+	/**
+      * @param enable <code>true</code> to split each scan across the threads
+      * of a fork-join pool; <code>false</code> to scan on the calling thread.
+      * @return A copy of this configuration with the new setting.
+      */
+	public ScanConfiguration withParallelScanning(boolean enable) {
+		ScanConfiguration c = copy();
+		c.parallelScanning = enable;
+		return c;
+	}
+
+	/**
+      * @return <code>true</code> if parallel scanning is enabled.
+      */
+	public boolean getParallelScanning() {
+		return parallelScanning;
+	}
+
+	/**
+      * @param pool The fork-join pool to use for parallel scanning, or
+      * <code>null</code> to use the common pool.
+      * @return A copy of this configuration with the new pool.
+      */
+	public ScanConfiguration withForkJoinPool(ForkJoinPool pool) {
+		ScanConfiguration c = copy();
+		c.forkJoinPool = pool;
+		return c;
+	}
+
+	/**
+      * @return The fork-join pool used for parallel scanning, or
+      * <code>null</code> if the common pool is used.
+      */
+	public ForkJoinPool getForkJoinPool() {
+		return forkJoinPool;
+	}
+
+	/**
+      * @param enable <code>true</code> to enhance only the pixels which the
+      * scan lines actually sample, when each scan line is extracted;
+      * <code>false</code> to enhance the whole image before each pass.
+      * Lazy enhancement computes the edge strength of each sample of a scan
+      * line when the line is first enhanced, and keeps it with the line for
+      * the later passes, at two bytes per sample.  It saves the most when
+      * the scan lines sample a small part of the image: on a 4000x3000
+      * frame it scans horizontal lines alone about three times as fast, and
+      * all directions at a spacing of 8 about a third faster, but all
+      * directions at the default spacing of 4 sample about as many pixels
+      * as the image has, and take about as long as whole-image enhancement.
+      * Edges
+      * are carried along each scan line rather than along image rows, so the
+      * enhanced pixels of vertical and diagonal scan lines differ from those
+      * of whole-image enhancement, and so can the results: a bar code may be
+      * found by different scan lines, with different hit and vote counts,
+      * and vertical and diagonal lines may decode bar codes, including
+      * misreads, which whole-image enhancement does not produce, or miss
+      * some which it finds.  On the sample images, with all directions
+      * enabled, 11 of 36 scans report different counts and one gains a
+      * misread.  Horizontal scan lines are enhanced exactly as before.
+      * @return A copy of this configuration with the new setting.
+      */
+	public ScanConfiguration withLazyEnhancement(boolean enable) {
+		ScanConfiguration c = copy();
+		c.lazyEnhancement = enable;
+		return c;
+	}
+
+	/**
+      * @return <code>true</code> if lazy, scan-line-only enhancement is
+      * enabled.
+      */
+	public boolean getLazyEnhancement() {
+		return lazyEnhancement;
+	}
+
+	/**
+      * @param enable <code>true</code> to find the regions of the image
+      * which look like bar codes before scanning, and scan only inside them;
+      * <code>false</code> to scan the whole image.  The regions are found
+      * from the density and coherence of the Sobel gradients, and each is
+      * scanned only in the enabled direction (or two directions) closest to
+      * that of its gradients, so a large image with a small bar code is
+      * scanned many times faster.  Bar codes too small, blurred or faint to
+      * produce a region are missed.
+      * @return A copy of this configuration with the new setting.
+      */
+	public ScanConfiguration withRegionDetection(boolean enable) {
+		ScanConfiguration c = copy();
+		c.regionDetection = enable;
+		return c;
+	}
+
+	/**
+      * @return <code>true</code> if only candidate regions are scanned.
+      */
+	public boolean getRegionDetection() {
+		return regionDetection;
+	}
+
+	/**
+      * @param angles The directions, in degrees increasing clockwise from
+      * left-to-right, in which to scan in addition to the horizontal,
+      * vertical and diagonal directions enabled by their own settings.
+      * Each angle is reduced to the range 0-179, and duplicates are
+      * dropped.  The pixel indices of the scan lines at each angle are
+      * computed once per image size and shared by all passes and scans.
+      * With region detection, these angles are also candidates for the
+      * direction in which each region is scanned.
+      * @return A copy of this configuration with the new scan angles.
+      */
+	public ScanConfiguration withAdditionalScanAngles(int[] angles) {
+		TreeSet set = new TreeSet();
+		for (int i = 0; i < angles.length; i++) {
+			set.add(Integer.valueOf(((angles[i] % 180) + 180) % 180));
+		}
+		ScanConfiguration c = copy();
+		c.additionalScanAngles = new int[set.size()];
+		int n = 0;
+		for (Iterator it = set.iterator(); it.hasNext(); ) {
+			c.additionalScanAngles[n++] = ((Integer)it.next()).intValue();
+		}
+		return c;
+	}
+
+	/**
+      * @return The additional scan angles, in degrees, in ascending order.
+      */
+	public int[] getAdditionalScanAngles() {
+		return additionalScanAngles.clone();
+	}
+
+	/**
+      * @param votes The number of independent confirmations a bar code needs
+      * to be returned: the number of scan lines which must decode it, each
+      * scan line of each pass counting once.  Must be at least 1, which
+      * returns every bar code decoded by any scan line.  Requiring two or
+      * more votes drops most misreads, which are rarely repeated on another
+      * scan line, at the cost of missing bar codes which only one scan line
+      * crosses cleanly.  With more than one vote required, the listener
+      * passed to a scan is notified once per bar code, when it is
+      * confirmed, rather than on every hit, so it never hears of a misread
+      * which is not returned.
+      * @return A copy of this configuration with the new setting.
+      */
+	public ScanConfiguration withRequiredVotes(int votes) {
+		if (votes < 1) {
+			throw new IllegalArgumentException("Required votes must be at least 1: " + votes);
+		}
+		ScanConfiguration c = copy();
+		c.requiredVotes = votes;
+		return c;
+	}
+
+	/**
+      * @return The number of votes a bar code needs to be returned.
+      */
+	public int getRequiredVotes() {
+		return requiredVotes;
+	}
+
+	/**
+      * @param count The number of distinct bar codes expected in each image,
+      * or 0 if unknown.  Once that many bar codes have each received the
+      * required number of votes, the scan stops without scanning the
+      * remaining scan lines, directions and passes.  An image with a single
+      * clean bar code is then typically finished within the first pass.
+      * Bar codes which would only have been found later in the scan are
+      * missed, and in parallel mode, which of several candidates are
+      * confirmed first may vary from one scan to the next.
+      * @return A copy of this configuration with the new setting.
+      */
+	public ScanConfiguration withExpectedBarCodes(int count) {
+		if (count < 0) {
+			throw new IllegalArgumentException("Expected bar codes must not be negative: " + count);
+		}
+		ScanConfiguration c = copy();
+		c.expectedBarCodes = count;
+		return c;
+	}
+
+	/**
+      * @return The number of distinct bar codes after which a scan stops, or
+      * 0 if it always runs to completion.
+      */
+	public int getExpectedBarCodes() {
+		return expectedBarCodes;
+	}
+
+	/**
+      * @param enable <code>true</code> to binarize each scan line from its
+      * own contrast, decoding it just twice: once with each edge placed
+      * midway between the brightest and darkest extremes around it, and
+      * once at the line's Otsu threshold.  <code>false</code> to decode each
+      * scan line at up to 16 global threshold levels between its darkest
+      * and lightest pixels.  The local edges follow uneven lighting and
+      * shadows which no single threshold can; the sweep copes better with
+      * faint, narrow bars whose swings are lost in noise.  Adaptive
+      * binarization always measures sub-pixel edges (see
+      * {@link #withSubPixelEdges(boolean)}): placed on whole pixels, the
+      * two decodes cannot tell narrow from wide modules two or three pixels
+      * wide, and on the sample images they miss most of the bar codes of
+      * the collages and add misreads.
+      * @return A copy of this configuration with the new setting.
+      */
+	public ScanConfiguration withAdaptiveBinarization(boolean enable) {
+		ScanConfiguration c = copy();
+		c.adaptiveBinarization = enable;
+		return c;
+	}
+
+	/**
+      * @return <code>true</code> if scan lines are binarized adaptively
+      * rather than by the threshold sweep.
+      */
+	public boolean getAdaptiveBinarization() {
+		return adaptiveBinarization;
+	}
+
+	/**
+      * @param enable <code>true</code> to measure the widths of bars and
+      * spaces to a sixteenth of a pixel, placing each edge where the line
+      * between the samples on either side of it crosses the threshold;
+      * <code>false</code> to measure them in whole pixels.  Whole pixels
+      * leave a bar one or two pixels per module wide only a few possible
+      * widths, so narrow and wide elements are told apart only at some
+      * thresholds; sub-pixel widths let such bar codes be read at lower
+      * resolution, and with fewer scan lines.  Adaptive binarization
+      * measures sub-pixel widths whatever this setting.
+      * @return A copy of this configuration with the new setting.
+      */
+	public ScanConfiguration withSubPixelEdges(boolean enable) {
+		ScanConfiguration c = copy();
+		c.subPixelEdges = enable;
+		return c;
+	}
+
+	/**
+      * @return <code>true</code> if the widths of bars and spaces are
+      * measured to a fraction of a pixel, as they always are with adaptive
+      * binarization.
+      */
+	public boolean getSubPixelEdges() {
+		return subPixelEdges || adaptiveBinarization;
+	}
+
+	/**
+      * @param metrics The metrics to count the work of each scan into, or
+      * <code>null</code> to count nothing.
+      * @return A copy of this configuration with the new metrics.
+      */
+	public ScanConfiguration withMetrics(ScanMetrics metrics) {
+		ScanConfiguration c = copy();
+		c.metrics = metrics;
+		return c;
+	}
+
+	/**
+      * @return The metrics each scan counts its work into, or
+      * <code>null</code> if metrics are disabled.
+      */
+	public ScanMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+      * @param enable <code>true</code> to scan coarse to fine: first every
+      * eighth scan line (32 pixels apart at the default spacing of 4), then
+      * the lines halfway between those, and so on down to the scan line
+      * spacing, running every pass over each level before moving on to the
+      * next, and alternating between the scan directions within each;
+      * <code>false</code> to run each pass over every scan line in turn.
+      * Either way, a complete scan decodes the same scan lines and returns
+      * the same bar codes, but a progressive scan finds large bar codes
+      * early, which pays off when the scan is cut short by a time budget or
+      * a deadline, or stopped once the expected bar codes are found.  Unless
+      * enhancing lazily, a progressive scan keeps the enhanced image of each
+      * pass for the finer levels, which takes up to three more bytes per
+      * pixel than an ordinary scan.
+      * @return A copy of this configuration with the new setting.
+      */
+	public ScanConfiguration withProgressiveScanning(boolean enable) {
+		ScanConfiguration c = copy();
+		c.progressiveScanning = enable;
+		return c;
+	}
+
+	/**
+      * @return <code>true</code> if scans are progressive.
+      */
+	public boolean getProgressiveScanning() {
+		return progressiveScanning;
+	}
+
+	/**
+      * @param budget The longest a scan may take, after which it stops and
+      * returns the bar codes found so far, or 0 for no limit.
+      * @param unit The unit of <code>budget</code>.
+      * @return A copy of this configuration with the new time budget.
+      */
+	public ScanConfiguration withTimeBudget(long budget, TimeUnit unit) {
+		if (budget < 0L) {
+			throw new IllegalArgumentException("Time budget must not be negative: " + budget);
+		}
+		ScanConfiguration c = copy();
+		c.timeBudgetNanos = unit.toNanos(budget);
+		return c;
+	}
+
+	/**
+      * @return The longest a scan may take, in nanoseconds, or 0 for no
+      * limit.
+      */
+	public long getTimeBudgetNanos() {
+		return timeBudgetNanos;
+	}
+
+	/**
+      * @param executor The executor which runs asynchronous scans, or
+      * <code>null</code> for the default: a shared pool of one daemon
+      * thread per processor.  Each thread keeps its own scan buffers, so an
+      * executor which reuses a few platform threads allocates less per
+      * scan than one which starts a new thread for each, such as a virtual
+      * thread per scan, and the number of threads bounds the memory the
+      * buffers hold.
+      * @return A copy of this configuration with the new executor.
+      */
+	public ScanConfiguration withExecutor(Executor executor) {
+		ScanConfiguration c = copy();
+		c.executor = executor;
+		return c;
+	}
+
+	/**
+      * @return The executor which runs asynchronous scans, or
+      * <code>null</code> if the default is used.
+      */
+	public Executor getExecutor() {
+		return executor;
+	}
+}
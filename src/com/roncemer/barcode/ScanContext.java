@@ -0,0 +1,192 @@
+// ScanContext.java
+// Copyright (c) 2002-2010 Ronald B. Cemer
+// All rights reserved.
+// This software is released under the BSD license.
+// Please see the accompanying LICENSE.txt for details.
+
+package com.roncemer.barcode;
+
+/**
+  * Reusable scratch buffers for scanning images and decoding scan lines.
+  * A context is owned by one thread at a time.  Each thread has a context
+  * of its own, which is obtained with {@link #acquire()} and handed back
+  * with {@link #release()}; the buffers only grow, so once they have reached
+  * the size needed for the images being scanned, scanning allocates no
+  * further memory.
+  * <p>
+  * The whole-image buffers are the exception to growing without bound:
+  * a thread would otherwise keep the buffers of the largest image it ever
+  * scanned until it dies, several bytes per pixel.  A whole-image buffer of
+  * more than <code>javabar.scanBufferLimit</code> elements (a system
+  * property, by default 4194304, enough for a 2560 x 1600 image) is
+  * allocated for the one scan which needs it and then left to the garbage
+  * collector, so each thread keeps at most a few times that many bytes.
+  *
+  * @author Ronald B. Cemer
+  */
+public final class ScanContext {
+	private static final ThreadLocal<ScanContext> perThread =
+		ThreadLocal.withInitial(ScanContext::new);
+	// The most elements a whole-image buffer kept between scans may have.
+	private static final int BUFFER_LIMIT = Integer.getInteger("javabar.scanBufferLimit", 1 << 22);
+
+	// Whether this is the per-thread context and it is currently acquired.
+	private boolean inUse = false;
+	// Whole-image buffers, and whether each is currently in use.  These are
+	// leased separately from the context itself, since in parallel mode the
+	// thread which prepares the image also scans lines with its context.
+	static final int GRADIENTS = 0;
+	private final int[][] imageBuffers = { new int[0] };
+	private final boolean[] imageBufferInUse = new boolean[1];
+	// Whole-image buffers of one unsigned byte per pixel, likewise.  A
+	// progressive scan keeps one enhanced image per enhancing pass, in the
+	// slots from ENHANCED_PIXELS on.
+	static final int SOURCE_PIXELS = 0;
+	static final int ENHANCED_PIXELS = 1;
+	static final int ENHANCED_PIXEL_BUFFERS = 4;
+	private final byte[][] pixelBuffers = { new byte[0], new byte[0], new byte[0], new byte[0], new byte[0] };
+	private final boolean[] pixelBufferInUse = new boolean[1 + ENHANCED_PIXEL_BUFFERS];
+	// Pixels of the scan line being decoded.
+	private int[] scanLine = new int[0];
+	// Run lengths of the scan line being decoded.
+	private int[] barWidths = new int[0];
+	// Multi-threshold run length extraction state of the current scan line.
+	private final RunLengthExtractor runLengthExtractor = new RunLengthExtractor();
+	// Adaptive binarization state of the current scan line.
+	private final AdaptiveBinarizer adaptiveBinarizer = new AdaptiveBinarizer();
+	// Decoder scratch.
+	private int[] widthThresh = new int[16];
+	private int[] charWidths = new int[16];
+	private final StringBuilder sb = new StringBuilder(32);
+	// Metrics counted since they were last added to a ScanMetrics.
+	private final long[] metricCounts = new long[ScanMetrics.COUNTERS];
+
+	/**
+      * Construct a new, empty <code>ScanContext</code>.  Most callers should
+      * use {@link #acquire()} instead, which reuses the current thread's
+      * context.
+      */
+	public ScanContext() {
+	}
+
+	/**
+      * Acquire the current thread's context.  If it is already in use
+      * further up the call stack (for example, by a listener which scans
+      * another image), a new context is returned instead.
+      * @return A context for exclusive use by the caller until it calls
+      * {@link #release()}.
+      */
+	public static ScanContext acquire() {
+		ScanContext context = perThread.get();
+		if (context.inUse) return new ScanContext();
+		context.inUse = true;
+		return context;
+	}
+
+	/**
+      * Hand a context obtained from {@link #acquire()} back to its thread.
+      */
+	public void release() {
+		inUse = false;
+	}
+
+	/**
+      * @param minLength The minimum number of elements needed.
+      * @return A buffer for width thresholds, whose contents are undefined.
+      */
+	public int[] getWidthThresh(int minLength) {
+		if (widthThresh.length < minLength) widthThresh = new int[minLength];
+		return widthThresh;
+	}
+
+	/**
+      * @param minLength The minimum number of elements needed.
+      * @return A buffer for the normalized widths of a character, whose
+      * contents are undefined.
+      */
+	public int[] getCharWidths(int minLength) {
+		if (charWidths.length < minLength) charWidths = new int[minLength];
+		return charWidths;
+	}
+
+	/**
+      * @return An empty <code>StringBuilder</code> for assembling a bar code.
+      */
+	public StringBuilder getStringBuilder() {
+		sb.setLength(0);
+		return sb;
+	}
+
+	RunLengthExtractor getRunLengthExtractor() {
+		return runLengthExtractor;
+	}
+
+	AdaptiveBinarizer getAdaptiveBinarizer() {
+		return adaptiveBinarizer;
+	}
+
+	long[] getMetricCounts() {
+		return metricCounts;
+	}
+
+	int[] getScanLine(int minLength) {
+		if (scanLine.length < minLength) scanLine = new int[minLength];
+		return scanLine;
+	}
+
+	int[] getBarWidths(int minLength) {
+		if (barWidths.length < minLength) barWidths = new int[minLength];
+		return barWidths;
+	}
+
+	/**
+      * Lease one of the current thread's whole-image buffers.  If it is
+      * already leased further up the call stack, a new buffer is returned
+      * instead, as it is if <code>minLength</code> exceeds the limit on
+      * buffers kept between scans.  The contents are undefined.
+      * @param which <code>GRADIENTS</code>.
+      */
+	static int[] acquireImageBuffer(int which, int minLength) {
+		ScanContext context = perThread.get();
+		if (context.imageBufferInUse[which] || (minLength > BUFFER_LIMIT)) return new int[minLength];
+		context.imageBufferInUse[which] = true;
+		if (context.imageBuffers[which].length < minLength) {
+			context.imageBuffers[which] = new int[minLength];
+		}
+		return context.imageBuffers[which];
+	}
+
+	/**
+      * Hand back a buffer obtained from {@link #acquireImageBuffer(int, int)}.
+      */
+	static void releaseImageBuffer(int which, int[] buffer) {
+		ScanContext context = perThread.get();
+		if (buffer == context.imageBuffers[which]) context.imageBufferInUse[which] = false;
+	}
+
+	/**
+      * Lease one of the current thread's whole-image byte-per-pixel buffers.
+      * If it is already leased further up the call stack, a new buffer is
+      * returned instead, as it is if <code>minLength</code> exceeds the limit
+      * on buffers kept between scans.  The contents are undefined.
+      * @param which <code>SOURCE_PIXELS</code>, or <code>ENHANCED_PIXELS</code>
+      * plus less than <code>ENHANCED_PIXEL_BUFFERS</code>.
+      */
+	static byte[] acquirePixelBuffer(int which, int minLength) {
+		ScanContext context = perThread.get();
+		if (context.pixelBufferInUse[which] || (minLength > BUFFER_LIMIT)) return new byte[minLength];
+		context.pixelBufferInUse[which] = true;
+		if (context.pixelBuffers[which].length < minLength) {
+			context.pixelBuffers[which] = new byte[minLength];
+		}
+		return context.pixelBuffers[which];
+	}
+
+	/**
+      * Hand back a buffer obtained from {@link #acquirePixelBuffer(int, int)}.
+      */
+	static void releasePixelBuffer(int which, byte[] buffer) {
+		ScanContext context = perThread.get();
+		if (buffer == context.pixelBuffers[which]) context.pixelBufferInUse[which] = false;
+	}
+}
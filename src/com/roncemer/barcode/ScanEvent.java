@@ -0,0 +1,53 @@
+// ScanEvent.java
+// Copyright (c) 2002-2010 Ronald B. Cemer
+// All rights reserved.
+// This software is released under the BSD license.
+// Please see the accompanying LICENSE.txt for details.
+
+package com.roncemer.barcode;
+
+import jdk.jfr.*;
+
+/**
+  * Flight Recorder event covering one scan of an image by an
+  * <code>ImageBarCodeScanner</code>, from the start of the scan to its
+  * end.  It is enabled by default, and like every Flight Recorder event,
+  * costs next to nothing while no recording is running or while it is
+  * disabled in the recording's settings.
+  *
+  * @author Ronald B. Cemer
+  */
+@Name("com.roncemer.barcode.Scan")
+@Label("Bar Code Scan")
+@Category({ "JavaBar" })
+@Description("Scan of an image for bar codes")
+@StackTrace(false)
+final class ScanEvent extends Event {
+	@Label("Width")
+	@Description("Width of the image, in pixels")
+	int width;
+
+	@Label("Height")
+	@Description("Height of the image, in pixels")
+	int height;
+
+	@Label("Scan Lines")
+	@Description("Number of scan lines in each pass")
+	int scanLines;
+
+	@Label("Passes")
+	@Description("Number of passes over the scan lines, or over one level of them in a progressive scan, which were executed")
+	int passes;
+
+	@Label("Results")
+	@Description("Number of distinct bar codes found")
+	int results;
+
+	@Label("Stopped Early")
+	@Description("Whether the scan stopped before its last pass")
+	boolean stoppedEarly;
+
+	@Label("Complete")
+	@Description("Whether the scan finished before its deadline")
+	boolean complete;
+}
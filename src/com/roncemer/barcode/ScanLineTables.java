@@ -0,0 +1,186 @@
+// ScanLineTables.java
+// Copyright (c) 2002-2010 Ronald B. Cemer
+// All rights reserved.
+// This software is released under the BSD license.
+// Please see the accompanying LICENSE.txt for details.
+
+package com.roncemer.barcode;
+
+import java.util.*;
+
+/**
+  * Cache of the pixel index tables of scan lines at arbitrary angles.
+  * <p>
+  * A line at an angle other than a multiple of 45 degrees does not step by
+  * the same whole number of pixels from each sample to the next, so its
+  * samples are found as in Bresenham's algorithm.  Rather than
+  * working this out for every line on every pass, the index of every
+  * sample of every line crossing a rectangle is computed once per
+  * rectangle, row stride, scan line spacing and angle, and kept in a
+  * least-recently-used cache shared by all scanners, so extracting a scan
+  * line becomes a plain gather through the table.
+  * <p>
+  * This class should never be instantiated, since all methods are static.
+  *
+  * @author Ronald B. Cemer
+  */
+final class ScanLineTables {
+	// Maximum total number of samples of all cached tables: 64 MB.
+	private static final long maxCachedSamples = 16L * 1024L * 1024L;
+
+	/**
+      * The scan lines crossing a rectangle at one angle, spaced evenly apart
+      * across the rectangle.  Immutable once built.
+      */
+	static final class Table {
+		// Index of each sample, (y * stride) + x, of all lines in turn.
+		final int[] index;
+		// Index in index[] of the first sample of each line, plus the end
+		// of the last line.
+		final int[] lineStart;
+		final int nLines;
+		final int stride;
+
+		Table(int[] index, int[] lineStart, int nLines, int stride) {
+			this.index = index;
+			this.lineStart = lineStart;
+			this.nLines = nLines;
+			this.stride = stride;
+		}
+	}
+
+	private static final class Key {
+		final int rx, ry, rw, rh, stride, spacing, angle;
+
+		Key(int rx, int ry, int rw, int rh, int stride, int spacing, int angle) {
+			this.rx = rx;
+			this.ry = ry;
+			this.rw = rw;
+			this.rh = rh;
+			this.stride = stride;
+			this.spacing = spacing;
+			this.angle = angle;
+		}
+
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) return false;
+			Key k = (Key)o;
+			return (rx == k.rx) && (ry == k.ry) && (rw == k.rw) && (rh == k.rh) &&
+				(stride == k.stride) && (spacing == k.spacing) && (angle == k.angle);
+		}
+
+		public int hashCode() {
+			int h = rx;
+			h = (h * 31) + ry;
+			h = (h * 31) + rw;
+			h = (h * 31) + rh;
+			h = (h * 31) + stride;
+			h = (h * 31) + spacing;
+			return (h * 31) + angle;
+		}
+	}
+
+	// Tables in least-recently-used order, and their total number of
+	// samples.  Both are guarded by the lock on the cache.
+	private static final LinkedHashMap cache = new LinkedHashMap(16, 0.75f, true);
+	private static long cachedSamples = 0L;
+
+	private ScanLineTables() {
+	}
+
+	/**
+      * Get the scan lines crossing a rectangle at an angle, building them if
+      * they are not in the cache.
+      * @param rx The left edge of the rectangle.
+      * @param ry The top edge of the rectangle.
+      * @param rw The width of the rectangle.
+      * @param rh The height of the rectangle.
+      * @param stride The distance between the first pixels of consecutive
+      * rows of the image the indices are for.
+      * @param spacing The distance between neighboring lines, in pixels.
+      * @param angle The direction of the lines, in degrees, 0-179,
+      * increasing clockwise.
+      * @return The table.
+      */
+	static Table get(int rx, int ry, int rw, int rh, int stride, int spacing, int angle) {
+		Key key = new Key(rx, ry, rw, rh, stride, spacing, angle);
+		synchronized (cache) {
+			Table table = (Table)cache.get(key);
+			if (table != null) return table;
+		}
+		// Built outside the lock; two threads may build the same table, and
+		// the second simply replaces the first.
+		Table table = build(rx, ry, rw, rh, stride, spacing, angle);
+		synchronized (cache) {
+			Table old = (Table)cache.put(key, table);
+			if (old != null) cachedSamples -= old.index.length;
+			cachedSamples += table.index.length;
+			Iterator it = cache.values().iterator();
+			while ((cachedSamples > maxCachedSamples) && (cache.size() > 1)) {
+				Table eldest = (Table)it.next();
+				if (eldest == table) continue;
+				cachedSamples -= eldest.index.length;
+				it.remove();
+			}
+		}
+		return table;
+	}
+
+	/**
+      * Build the scan lines crossing a rectangle at an angle.  The lines are
+      * <code>spacing</code> pixels apart, measured square to the lines, and
+      * ordered across the rectangle from the top (or left) edge.  As in
+      * Bresenham's algorithm, each line steps one pixel at a time along its
+      * major axis, taking the pixel nearest the line on the other axis, so
+      * that no pixel is sampled twice and the samples are evenly spaced.
+      * Lines closer to horizontal run left to right, and lines closer to
+      * vertical run top to bottom.
+      */
+	static Table build(int rx, int ry, int rw, int rh, int stride, int spacing, int angle) {
+		double rad = Math.toRadians(angle);
+		double ux = Math.cos(rad), uy = Math.sin(rad);
+		boolean xMajor = Math.abs(ux) >= Math.abs(uy);
+		// Offsets of the lines are measured along the normal (-uy, ux), from
+		// the center of the rectangle.
+		double cx = rx + ((rw - 1) / 2.0), cy = ry + ((rh - 1) / 2.0);
+		double reach = ((Math.abs(uy) * (rw - 1)) + (Math.abs(ux) * (rh - 1))) / 2.0;
+		int nLines = ((int)Math.floor((2.0 * reach) / spacing)) + 1;
+		double firstOffset = -((nLines - 1) * spacing) / 2.0;
+		// Minor axis coordinate change per step along the major axis.
+		double slope = xMajor ? (uy / ux) : (ux / uy);
+		int major = xMajor ? rw : rh;
+		int[] index = new int[(int)Math.min(
+			(long)nLines * major, ((long)rw * rh / spacing) + (2L * major))];
+		int[] lineStart = new int[nLines + 1];
+		int n = 0, kept = 0;
+		for (int line = 0; line < nLines; line++) {
+			double off = firstOffset + (line * spacing);
+			double px = cx - (uy * off), py = cy + (ux * off);
+			lineStart[kept] = n;
+			if ((n + major) > index.length) {
+				int[] newIndex = new int[Math.max(index.length * 2, n + major)];
+				System.arraycopy(index, 0, newIndex, 0, n);
+				index = newIndex;
+			}
+			if (xMajor) {
+				for (int x = rx; x < (rx + rw); x++) {
+					int y = (int)Math.floor(py + ((x - px) * slope) + 0.5);
+					if ((y >= ry) && (y < (ry + rh))) index[n++] = (y * stride) + x;
+				}
+			} else {
+				for (int y = ry; y < (ry + rh); y++) {
+					int x = (int)Math.floor(px + ((y - py) * slope) + 0.5);
+					if ((x >= rx) && (x < (rx + rw))) index[n++] = (y * stride) + x;
+				}
+			}
+			if (n > lineStart[kept]) kept++;
+		}
+		lineStart[kept] = n;
+		if (n < index.length) {
+			int[] trimmed = new int[n];
+			System.arraycopy(index, 0, trimmed, 0, n);
+			index = trimmed;
+		}
+		return new Table(index, lineStart, kept, stride);
+	}
+}
@@ -0,0 +1,291 @@
+// ScanLoadGenerator.java
+// Copyright (c) 2002-2010 Ronald B. Cemer
+// All rights reserved.
+// This software is released under the BSD license.
+// Please see the accompanying LICENSE.txt for details.
+
+package com.roncemer.barcode;
+
+import java.awt.image.*;
+import java.io.*;
+import java.net.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.atomic.*;
+import javax.imageio.*;
+
+import com.roncemer.util.*;
+
+/**
+  * Load generator for <code>ScanServer</code>, which replays a set of
+  * images to it from a number of concurrent clients for a fixed time and
+  * reports the sustained requests per second and the latency seen by the
+  * clients.<p>
+  * Usage: java com.roncemer.barcode.ScanLoadGenerator [options]
+  * [file|directory|glob]...
+  * <br>
+  * The images default to the <code>sampleBarCodeImages</code> directory.
+  * They are read into memory before the run, and each client sends them
+  * in turn, starting at a different one.  Requests rejected by the server
+  * (status 503) are counted separately, and the client backs off for a
+  * millisecond before its next request.  A request which cannot connect
+  * within 10 seconds, or gets no response within two minutes, fails.  The
+  * latencies and throughput of the warm-up period are not counted.
+  * <p>
+  * Options:
+  * <pre>
+  *   -url u          Server to send the images to
+  *                   (default: http://127.0.0.1:8765/scan)
+  *   -clients n      Number of concurrent clients (default: 4)
+  *   -seconds n      Length of the measured run (default: 30)
+  *   -warmup n       Seconds of load before measuring (default: 5)
+  *   -gray           Send raw gray frames rather than the image files
+  *   -deadline ms    Ask the server to answer within this many milliseconds
+  * </pre>
+  * The exit status is 0 if every request succeeded or was rejected, 1 if
+  * some failed, and 2 for a usage error.
+  *
+  * @author Ronald B. Cemer
+  */
+public class ScanLoadGenerator {
+	/**
+      * One request body, ready to send.
+      */
+	private static final class Request {
+		final String query;
+		final byte[] body;
+
+		Request(String query, byte[] body) {
+			this.query = query;
+			this.body = body;
+		}
+	}
+
+	// Longest a client waits to connect, and for the response.
+	private static final int connectTimeoutMs = 10000;
+	private static final int readTimeoutMs = 120000;
+
+	private final String url;
+	private final List<Request> requests;
+	private final int nClients;
+	// Whether the measured part of the run has started, and ended.
+	private volatile boolean measuring = false, stopped = false;
+	private final AtomicLong nOk = new AtomicLong();
+	private final AtomicLong nRejected = new AtomicLong();
+	private final AtomicLong nFailed = new AtomicLong();
+	// Latency of each measured request, in nanoseconds.  Guarded by the lock
+	// on the list.
+	private final ArrayList<Long> latencies = new ArrayList<Long>();
+	private String firstError = null;
+
+	/**
+      * Construct a new <code>ScanLoadGenerator</code>.
+      * @param url The URL to send the images to.
+      * @param requests The request bodies to replay.
+      * @param nClients The number of concurrent clients.
+      */
+	private ScanLoadGenerator(String url, List<Request> requests, int nClients) {
+		this.url = url;
+		this.requests = requests;
+		this.nClients = nClients;
+	}
+
+	/**
+      * Read an image file as a request: the file itself, or its pixels
+      * converted to gray.
+      */
+	private static Request read(File file, boolean gray) throws IOException {
+		if (!gray) return new Request("", Files.readAllBytes(file.toPath()));
+		BufferedImage image = ImageIO.read(file);
+		if (image == null) throw new IOException("Unsupported image format: " + file);
+		int w = image.getWidth(), h = image.getHeight();
+		byte[] pixels = new byte[w * h];
+		int[] row = new int[w];
+		for (int y = 0, idx = 0; y < h; y++) {
+			image.getRGB(0, y, w, 1, row, 0, w);
+			for (int x = 0; x < w; x++, idx++) pixels[idx] = (byte)ImageUtils.rgbToGrayscale(row[x]);
+		}
+		return new Request("width=" + w + "&height=" + h, pixels);
+	}
+
+	/**
+      * Run the load: warm up, measure, and stop the clients.
+      * @param warmupSeconds Seconds of load before measuring.
+      * @param seconds Seconds of measured load.
+      * @return The length of the measured period, in nanoseconds.
+      */
+	private long run(int warmupSeconds, int seconds) throws InterruptedException {
+		Thread[] clients = new Thread[nClients];
+		for (int i = 0; i < nClients; i++) {
+			final int first = i;
+			clients[i] = new Thread("ScanLoadGenerator-" + i) {
+				public void run() {
+					for (int next = first; !stopped; next++) {
+						send(requests.get(next % requests.size()));
+					}
+				}
+			};
+			clients[i].start();
+		}
+		Thread.sleep(warmupSeconds * 1000L);
+		long start = System.nanoTime();
+		measuring = true;
+		Thread.sleep(seconds * 1000L);
+		measuring = false;
+		long elapsed = System.nanoTime() - start;
+		stopped = true;
+		for (int i = 0; i < nClients; i++) clients[i].join();
+		return elapsed;
+	}
+
+	private void send(Request request) {
+		boolean counted = measuring;
+		long start = System.nanoTime();
+		int status;
+		try {
+			HttpURLConnection conn = (HttpURLConnection)new URL(url + request.query).openConnection();
+			conn.setConnectTimeout(connectTimeoutMs);
+			conn.setReadTimeout(readTimeoutMs);
+			conn.setDoOutput(true);
+			conn.setRequestMethod("POST");
+			conn.setFixedLengthStreamingMode(request.body.length);
+			conn.setRequestProperty("Content-Type", "application/octet-stream");
+			OutputStream out = conn.getOutputStream();
+			out.write(request.body);
+			out.close();
+			status = conn.getResponseCode();
+			// Read the whole response, so that the connection is reused.
+			InputStream in = (status < 400) ? conn.getInputStream() : conn.getErrorStream();
+			if (in != null) {
+				byte[] buf = new byte[4096];
+				while (in.read(buf) > 0) {
+				}
+				in.close();
+			}
+		} catch (IOException e) {
+			synchronized (this) {
+				if (firstError == null) firstError = e.toString();
+			}
+			status = -1;
+		}
+		long latency = System.nanoTime() - start;
+		if (!(counted && measuring)) {
+			// Started or finished outside the measured period.
+		} else if (status == 200) {
+			nOk.incrementAndGet();
+			synchronized (latencies) { latencies.add(latency); }
+		} else if (status == 503) {
+			nRejected.incrementAndGet();
+		} else {
+			nFailed.incrementAndGet();
+			if (status > 0) {
+				synchronized (this) {
+					if (firstError == null) firstError = "HTTP status " + status;
+				}
+			}
+		}
+		if (status == 503) {
+			try {
+				Thread.sleep(1L);
+			} catch (InterruptedException e) {
+			}
+		}
+	}
+
+	private long percentile(double percentile) {
+		long[] sorted;
+		synchronized (latencies) {
+			sorted = new long[latencies.size()];
+			for (int i = 0; i < sorted.length; i++) sorted[i] = latencies.get(i);
+		}
+		Arrays.sort(sorted);
+		return BatchBarCodeScanner.percentile(sorted, percentile);
+	}
+
+	private static void usage(String error) {
+		if (error != null) System.err.println(error);
+		System.err.println(
+			"Usage: java com.roncemer.barcode.ScanLoadGenerator [options]" +
+			" [file|directory|glob]...\n" +
+			"  -url u          Server to send the images to\n" +
+			"                  (default: http://127.0.0.1:8765/scan)\n" +
+			"  -clients n      Number of concurrent clients (default: 4)\n" +
+			"  -seconds n      Length of the measured run (default: 30)\n" +
+			"  -warmup n       Seconds of load before measuring (default: 5)\n" +
+			"  -gray           Send raw gray frames rather than the image files\n" +
+			"  -deadline ms    Ask the server to answer within this many milliseconds");
+		System.exit(2);
+	}
+
+	private static int intArg(String[] args, int i, int min) {
+		if (i >= args.length) usage("Missing value for " + args[i - 1]);
+		try {
+			int n = Integer.parseInt(args[i]);
+			if (n >= min) return n;
+		} catch (NumberFormatException e) {
+		}
+		usage("Invalid value for " + args[i - 1] + ": " + args[i]);
+		return 0;
+	}
+
+	public static void main(String[]args) throws Exception {
+		String url = "http://127.0.0.1:8765/scan";
+		int nClients = 4, seconds = 30, warmupSeconds = 5, deadlineMs = 0;
+		boolean gray = false;
+		List<String> paths = new ArrayList<String>();
+		for (int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			if (arg.equals("-url")) {
+				if (++i >= args.length) usage("Missing value for -url");
+				url = args[i];
+			} else if (arg.equals("-clients")) {
+				nClients = intArg(args, ++i, 1);
+			} else if (arg.equals("-seconds")) {
+				seconds = intArg(args, ++i, 1);
+			} else if (arg.equals("-warmup")) {
+				warmupSeconds = intArg(args, ++i, 0);
+			} else if (arg.equals("-gray")) {
+				gray = true;
+			} else if (arg.equals("-deadline")) {
+				deadlineMs = intArg(args, ++i, 1);
+			} else if (arg.startsWith("-")) {
+				usage("Unknown option: " + arg);
+			} else {
+				paths.add(arg);
+			}
+		}
+		if (paths.isEmpty()) paths.add("sampleBarCodeImages");
+
+		List<File> files = BatchBarCodeScanner.expandArguments(paths);
+		List<Request> requests = new ArrayList<Request>();
+		long bytes = 0L;
+		for (File file : files) {
+			Request request = read(file, gray);
+			String query = request.query;
+			if (deadlineMs > 0) query += ((query.length() > 0) ? "&" : "") + "deadlineMs=" + deadlineMs;
+			requests.add(new Request((query.length() > 0) ? ("?" + query) : "", request.body));
+			bytes += request.body.length;
+		}
+		if (requests.isEmpty()) usage("No images found.");
+		System.err.println(
+			"Replaying " + requests.size() + " images (" + (bytes / 1024) + " KB) from " +
+			nClients + " clients to " + url);
+
+		ScanLoadGenerator load = new ScanLoadGenerator(url, requests, nClients);
+		long elapsed = load.run(warmupSeconds, seconds);
+		double secs = elapsed / 1.0e9;
+		long ok = load.nOk.get();
+		System.err.println(
+			ok + " requests, " + load.nRejected.get() + " rejected, " + load.nFailed.get() +
+			" failed, in " + String.format(Locale.ROOT, "%.2f", secs) + " s (" +
+			String.format(Locale.ROOT, "%.2f", ok / secs) + " requests/s)");
+		System.err.println(
+			"Latency: p50 " + BatchBarCodeScanner.millis(load.percentile(50.0)) +
+			" ms, p90 " + BatchBarCodeScanner.millis(load.percentile(90.0)) +
+			" ms, p99 " + BatchBarCodeScanner.millis(load.percentile(99.0)) +
+			" ms, max " + BatchBarCodeScanner.millis(load.percentile(100.0)) + " ms");
+		if (load.firstError != null) System.err.println("First error: " + load.firstError);
+		System.exit((load.nFailed.get() > 0) ? 1 : 0);
+	}
+}
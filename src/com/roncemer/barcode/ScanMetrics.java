@@ -0,0 +1,257 @@
+// ScanMetrics.java
+// Copyright (c) 2002-2010 Ronald B. Cemer
+// All rights reserved.
+// This software is released under the BSD license.
+// Please see the accompanying LICENSE.txt for details.
+
+package com.roncemer.barcode;
+
+import java.util.concurrent.atomic.*;
+
+/**
+  * Counters of where the time of an <code>ImageBarCodeScanner</code> goes:
+  * the nanoseconds spent in each stage of a scan, the number of scan
+  * lines, threshold steps and decoder calls, and the number of scan lines
+  * which found a bar code in each scan direction and pass.  Metrics are
+  * enabled by giving an instance to
+  * {@link ScanConfiguration#withMetrics(ScanMetrics)}; one instance may
+  * collect the metrics of any number of scanners and threads.
+  * <p>
+  * Each scanning thread counts into a plain array of its own
+  * <code>ScanContext</code> and adds them to the shared counters only when
+  * it finishes its share of a pass, so enabled metrics cost a few reads of
+  * the clock per scan line and allocate nothing.  The shared counters are
+  * striped (<code>LongAdder</code>s), so threads finishing at the same time
+  * do not contend for them.  The counters are read while scans are in
+  * progress without stopping them, so a snapshot of several of them may be
+  * slightly inconsistent.
+  *
+  * @author Ronald B. Cemer
+  */
+public final class ScanMetrics {
+	/**
+      * Stage: computing the Sobel gradients of an image.
+      */
+	public static final int STAGE_GRADIENTS = 0;
+	/**
+      * Stage: enhancing an image for a pass, from its gradients.
+      */
+	public static final int STAGE_ENHANCE = 1;
+	/**
+      * Stage: extracting the pixels of scan lines, including lazy
+      * enhancement.
+      */
+	public static final int STAGE_EXTRACT = 2;
+	/**
+      * Stage: turning scan lines into run lengths at each threshold.
+      */
+	public static final int STAGE_BINARIZE = 3;
+	/**
+      * Stage: decoding run lengths.
+      */
+	public static final int STAGE_DECODE = 4;
+	/**
+      * The number of stages.
+      */
+	public static final int STAGES = 5;
+
+	/**
+      * Direction: horizontal scan lines.
+      */
+	public static final int DIRECTION_HORIZONTAL = 0;
+	/**
+      * Direction: vertical scan lines.
+      */
+	public static final int DIRECTION_VERTICAL = 1;
+	/**
+      * Direction: upper-left to lower-right diagonal scan lines.
+      */
+	public static final int DIRECTION_DIAGONAL_DOWN = 2;
+	/**
+      * Direction: lower-left to upper-right diagonal scan lines.
+      */
+	public static final int DIRECTION_DIAGONAL_UP = 3;
+	/**
+      * Direction: scan lines at any other angle.
+      */
+	public static final int DIRECTION_OTHER = 4;
+	/**
+      * The number of directions.
+      */
+	public static final int DIRECTIONS = 5;
+
+	/**
+      * The number of passes counted separately: one per combination of
+      * enhancement threshold and intensity.  Passes beyond these are
+      * counted with the last.
+      */
+	public static final int PASSES = 5;
+
+	// Indices of the counters.
+	static final int SCANS = 0;
+	static final int LINES = 1;
+	static final int THRESHOLD_STEPS = 2;
+	static final int DECODER_CALLS = 3;
+	static final int HITS = 4;
+	static final int STAGE_NANOS = 5;
+	// Scan lines and scan lines with hits, by direction and pass.
+	static final int DIRECTION_LINES = STAGE_NANOS + STAGES;
+	static final int DIRECTION_HIT_LINES = DIRECTION_LINES + (DIRECTIONS * PASSES);
+	static final int COUNTERS = DIRECTION_HIT_LINES + (DIRECTIONS * PASSES);
+
+	private final LongAdder[] counters = new LongAdder[COUNTERS];
+
+	/**
+      * Construct a new <code>ScanMetrics</code> object with all counters at
+      * zero.
+      */
+	public ScanMetrics() {
+		for (int i = 0; i < COUNTERS; i++) counters[i] = new LongAdder();
+	}
+
+	/**
+      * Add a thread's counts to the shared counters and zero them.
+      * @param counts The counts, indexed like the counters.
+      */
+	void add(long[] counts) {
+		for (int i = 0; i < COUNTERS; i++) {
+			if (counts[i] != 0L) {
+				counters[i].add(counts[i]);
+				counts[i] = 0L;
+			}
+		}
+	}
+
+	/**
+      * Add to one of the shared counters directly, for counts which are
+      * made once per scan.
+      */
+	void add(int counter, long n) {
+		counters[counter].add(n);
+	}
+
+	/**
+      * @return The index of the counters of a scan direction and pass
+      * within a group of direction counters.
+      */
+	static int directionIndex(int scanAngle, int pass) {
+		int direction;
+		switch (scanAngle) {
+		case BarCodeResult.SCAN_HORIZONTAL: direction = DIRECTION_HORIZONTAL; break;
+		case BarCodeResult.SCAN_VERTICAL: direction = DIRECTION_VERTICAL; break;
+		case BarCodeResult.SCAN_DIAGONAL_DOWN: direction = DIRECTION_DIAGONAL_DOWN; break;
+		case BarCodeResult.SCAN_DIAGONAL_UP: direction = DIRECTION_DIAGONAL_UP; break;
+		default: direction = DIRECTION_OTHER; break;
+		}
+		return (direction * PASSES) + Math.min(pass, PASSES - 1);
+	}
+
+	/**
+      * Set every counter back to zero.
+      */
+	public void reset() {
+		for (int i = 0; i < COUNTERS; i++) counters[i].reset();
+	}
+
+	/**
+      * @return The number of images and single scan lines scanned.
+      */
+	public long getScanCount() {
+		return counters[SCANS].sum();
+	}
+
+	/**
+      * @return The number of scan lines decoded, over all passes.
+      */
+	public long getLineCount() {
+		return counters[LINES].sum();
+	}
+
+	/**
+      * @return The number of distinct binarizations of scan lines which
+      * were handed to the decoders.
+      */
+	public long getThresholdStepCount() {
+		return counters[THRESHOLD_STEPS].sum();
+	}
+
+	/**
+      * @return The number of calls to decoders.
+      */
+	public long getDecoderCallCount() {
+		return counters[DECODER_CALLS].sum();
+	}
+
+	/**
+      * @return The number of times a decoder found a bar code, counting
+      * every scan line and threshold on which the same bar code was found.
+      */
+	public long getHitCount() {
+		return counters[HITS].sum();
+	}
+
+	/**
+      * @param stage One of the <code>STAGE_...</code> constants.
+      * @return The nanoseconds spent in the stage, summed over all threads.
+      * The stages of parallel scans add up to more than their elapsed time.
+      */
+	public long getStageNanos(int stage) {
+		return counters[STAGE_NANOS + stage].sum();
+	}
+
+	/**
+      * @param direction One of the <code>DIRECTION_...</code> constants.
+      * @param pass The pass, from 0 to <code>PASSES - 1</code>.
+      * @return The number of scan lines decoded in the direction and pass.
+      */
+	public long getLineCount(int direction, int pass) {
+		return counters[DIRECTION_LINES + (direction * PASSES) + pass].sum();
+	}
+
+	/**
+      * @param direction One of the <code>DIRECTION_...</code> constants.
+      * @param pass The pass, from 0 to <code>PASSES - 1</code>.
+      * @return The number of scan lines in the direction and pass on which
+      * at least one bar code was found.
+      */
+	public long getHitLineCount(int direction, int pass) {
+		return counters[DIRECTION_HIT_LINES + (direction * PASSES) + pass].sum();
+	}
+
+	/**
+      * @param direction One of the <code>DIRECTION_...</code> constants.
+      * @param pass The pass, from 0 to <code>PASSES - 1</code>.
+      * @return The fraction of the scan lines in the direction and pass on
+      * which at least one bar code was found, or 0 if there were none.
+      */
+	public double getHitRate(int direction, int pass) {
+		long lines = getLineCount(direction, pass);
+		return (lines == 0L) ? 0.0 : ((double)getHitLineCount(direction, pass) / (double)lines);
+	}
+
+	/**
+      * @return A summary of the counters, on several lines.
+      */
+	public String toString() {
+		StringBuilder sb = new StringBuilder(512);
+		sb.append("scans=").append(getScanCount());
+		sb.append(" lines=").append(getLineCount());
+		sb.append(" thresholdSteps=").append(getThresholdStepCount());
+		sb.append(" decoderCalls=").append(getDecoderCallCount());
+		sb.append(" hits=").append(getHitCount()).append('\n');
+		String[] stageNames = { "gradients", "enhance", "extract", "binarize", "decode" };
+		for (int i = 0; i < STAGES; i++) {
+			if (i > 0) sb.append(' ');
+			sb.append(stageNames[i]).append("Ms=");
+			sb.append(Math.round(getStageNanos(i) / 1.0e4) / 100.0);
+		}
+		String[] directionNames = { "horizontal", "vertical", "diagonalDown", "diagonalUp", "other" };
+		for (int i = 0; i < DIRECTIONS; i++) {
+			sb.append('\n').append(directionNames[i]).append(" hitLines/lines by pass:");
+			for (int pass = 0; pass < PASSES; pass++) {
+				sb.append(' ').append(getHitLineCount(i, pass)).append('/').append(getLineCount(i, pass));
+			}
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,42 @@
+// ScanResult.java
+// Copyright (c) 2002-2010 Ronald B. Cemer
+// All rights reserved.
+// This software is released under the BSD license.
+// Please see the accompanying LICENSE.txt for details.
+
+package com.roncemer.barcode;
+
+/**
+  * The outcome of scanning an image: the bar codes found, and whether the
+  * scan ran to completion or was cut short by its time budget or
+  * deadline.
+  *
+  * @author Ronald B. Cemer
+  */
+public final class ScanResult {
+	private final BarCodeResult[] results;
+	private final boolean complete;
+
+	ScanResult(BarCodeResult[] results, boolean complete) {
+		this.results = results;
+		this.complete = complete;
+	}
+
+	/**
+      * @return The bar codes found, one per distinct symbology and bar code,
+      * in the order in which a complete scan would return them.
+      */
+	public BarCodeResult[] getResults() {
+		return results;
+	}
+
+	/**
+      * @return <code>true</code> if the scan ran to completion, or stopped
+      * because the expected bar codes were found or the listener asked it to;
+      * <code>false</code> if it ran out of time first, so that some scan
+      * lines or passes were skipped.
+      */
+	public boolean isComplete() {
+		return complete;
+	}
+}
@@ -0,0 +1,678 @@
+// ScanServer.java
+// Copyright (c) 2002-2010 Ronald B. Cemer
+// All rights reserved.
+// This software is released under the BSD license.
+// Please see the accompanying LICENSE.txt for details.
+
+package com.roncemer.barcode;
+
+import java.awt.Dimension;
+import java.awt.image.*;
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import javax.imageio.*;
+
+import com.roncemer.util.*;
+import com.sun.net.httpserver.*;
+
+/**
+  * Long-running scanning service, which accepts images over HTTP on the
+  * loopback interface and answers each with its bar codes as a JSON
+  * object.  Running one server for many clients saves each of them the
+  * start-up and JIT warm-up of its own <code>ImageBarCodeScanner</code>.<p>
+  * Usage: java com.roncemer.barcode.ScanServer [options]
+  * <p>
+  * <code>POST /scan</code> scans the request body, which is either an
+  * image file in any format <code>ImageIO</code> can read, or, given
+  * <code>?width=w&amp;height=h</code>, a raw frame of
+  * <code>w * h</code> gray bytes, one per pixel, row by row.  The response
+  * is a JSON object like the lines of <code>BatchBarCodeScanner</code>,
+  * with the time the frame spent queued and scanning.  A
+  * <code>deadlineMs=n</code> parameter bounds the time from the frame's
+  * arrival to the end of its scan: the scan stops at the deadline, and a
+  * frame which waits past it in the queue is answered without being
+  * scanned, in both cases with <code>"complete":false</code>.  A request
+  * whose frame is not scanned within a minute, or by a second past its
+  * deadline, is answered with status 504.  A body which cannot be read as
+  * a frame is answered with status 400, or 413 if it is over 64 MB.
+  * <code>GET /stats</code> returns the server's counters: requests served,
+  * rejected and failed, the queue length, the number and mean size of the
+  * batches, the throughput and the percentiles of the latency over the
+  * most recent requests.
+  * <p>
+  * Requests are received on the scanner's executor if its configuration
+  * names one (see {@link ScanConfiguration#withExecutor(Executor)}), and
+  * otherwise on virtual threads where the Java runtime has them, since
+  * they only wait for their frames to be scanned.  They are queued for a
+  * fixed pool of scanning threads, which keep their scan buffers
+  * from one frame to the next.  Each scanning thread takes the frames
+  * which are already waiting as one batch, up to a number of frames and of
+  * pixels, and scans them back to back; small frames are then scanned with
+  * their buffers still in the CPU caches, and the thread wakes once per
+  * batch rather than once per frame.  The queue is bounded: when it is
+  * full, requests are rejected at once with status 503 and a
+  * <code>Retry-After</code> header, rather than waiting for ever longer.
+  * <p>
+  * Options:
+  * <pre>
+  *   -port n         Port to listen on (default: 8765)
+  *   -threads n      Number of scanning threads (default: one per CPU)
+  *   -queue n        Most frames waiting to be scanned (default: 64)
+  *   -batch n        Most frames scanned as one batch (default: 8)
+  *   -batchpixels n  Most pixels scanned as one batch (default: 1048576)
+  *   -warmup n       Scans of a rendered label before serving (default: 200)
+  *   -spacing n      Scan line spacing (default: 4)
+  *   -regions        Scan only candidate bar code regions
+  *   -lazy           Enhance only the pixels of the scan lines
+  *   -checkdigits    Include check digits in the results
+  *   -votes n        Scan lines needed to confirm a bar code (default: 1)
+  *   -expect n       Stop once n bar codes are confirmed (default: scan all)
+  *   -progressive    Scan coarse to fine, finding large bar codes first
+  *   -budget ms      Stop each scan after this many milliseconds
+  * </pre>
+  *
+  * @author Ronald B. Cemer
+  */
+public class ScanServer {
+	// Largest request body accepted.
+	private static final int maxBodyBytes = 64 << 20;
+	// Number of recent requests whose latencies are kept.
+	private static final int latencyWindow = 8192;
+	// Longest a request waits for its frame to be scanned, and how long past
+	// its deadline, if it has one.
+	private static final long resultTimeoutNanos = 60000000000L;
+	private static final long deadlineGraceNanos = 1000000000L;
+
+	private final ImageBarCodeScanner scanner;
+	private final boolean includeCheckDigits;
+	private final int nThreads, maxBatch, maxBatchPixels;
+	private final BlockingQueue<Frame> queue;
+	private HttpServer server;
+	private Thread[] workers;
+	private volatile boolean stopping = false;
+	private final long startNs = System.nanoTime();
+
+	// Counters.
+	private final LongAdder nScanned = new LongAdder();
+	private final LongAdder nRejected = new LongAdder();
+	private final LongAdder nErrors = new LongAdder();
+	private final LongAdder nBatches = new LongAdder();
+	private final LongAdder queueNanos = new LongAdder();
+	// Latency of the most recent requests and the time each completed, in
+	// a ring, and the number of requests recorded.  Guarded by the lock on
+	// the arrays.
+	private final long[] latencies = new long[latencyWindow];
+	private final long[] completions = new long[latencyWindow];
+	private long nRecorded = 0L;
+
+	/**
+      * Thrown when a request body exceeds the largest accepted, which is
+      * answered with status 413 rather than 400.
+      */
+	private static final class BodyTooLargeException extends IllegalArgumentException {
+		BodyTooLargeException(String message) {
+			super(message);
+		}
+	}
+
+	/**
+      * A frame of gray pixels waiting to be scanned, and the future through
+      * which its request waits for the result.
+      */
+	private static final class Frame {
+		final byte[] pixels;
+		final int w, h;
+		final long queuedNs;
+		// Whether the request set a deadline, and the deadline.
+		boolean hasDeadline;
+		long deadline;
+		final CompletableFuture<ScanResult> result = new CompletableFuture<ScanResult>();
+		long scanNs;
+
+		Frame(byte[] pixels, int w, int h) {
+			this.pixels = pixels;
+			this.w = w;
+			this.h = h;
+			this.queuedNs = System.nanoTime();
+		}
+	}
+
+	/**
+      * The executor which runs the HTTP exchanges when the configuration
+      * names none, created when it is first needed: a new virtual thread
+      * per exchange if the Java runtime supports them; otherwise a pool of
+      * daemon threads which grows with the number of concurrent exchanges
+      * and shrinks when idle.  Exchange threads don't scan, so they keep no
+      * scan buffers.
+      */
+	private static final class ExchangeExecutor {
+		static final Executor executor = create();
+
+		private static Executor create() {
+			try {
+				// Looked up reflectively, so that the server still runs on
+				// Java runtimes without virtual threads.
+				return (Executor)Executors.class
+					.getMethod("newVirtualThreadPerTaskExecutor")
+					.invoke(null);
+			} catch (Exception e) {
+				// No such method, or virtual threads are a disabled preview.
+			}
+			return Executors.newCachedThreadPool(new ThreadFactory() {
+				private int next = 0;
+
+				public synchronized Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "ScanServer-exchange-" + (next++));
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+	}
+
+	/**
+      * Construct a new <code>ScanServer</code>.
+      * @param scanner The scanner to scan the frames with.  It is shared by
+      * all of the scanning threads, and its configuration's executor, if
+      * any, runs the HTTP exchanges.
+      * @param includeCheckDigits <code>true</code> to return check digits;
+      * <code>false</code> to strip them off.
+      * @param nThreads The number of scanning threads.
+      * @param queueCapacity The most frames which may wait to be scanned.
+      * @param maxBatch The most frames a scanning thread takes at once.
+      * @param maxBatchPixels The most pixels a scanning thread takes at
+      * once, unless a single frame has more.
+      */
+	public ScanServer(
+		ImageBarCodeScanner scanner,
+		boolean includeCheckDigits,
+		int nThreads,
+		int queueCapacity,
+		int maxBatch,
+		int maxBatchPixels) {
+
+		this.scanner = scanner;
+		this.includeCheckDigits = includeCheckDigits;
+		this.nThreads = nThreads;
+		this.maxBatch = maxBatch;
+		this.maxBatchPixels = maxBatchPixels;
+		queue = new ArrayBlockingQueue<Frame>(queueCapacity);
+	}
+
+	/**
+      * Scan a rendered label a number of times, so that the scanner's code
+      * is compiled before the first request arrives.
+      * @param nScans The number of scans.
+      */
+	public void warmUp(int nScans) {
+		RasterBarCodeRenderer renderer = new UPCABarCodeRenderer();
+		Dimension size = renderer.getSize("03600029145", 2, 80, 16);
+		BarCodeRaster raster = new BarCodeRaster(size.width + 40, size.height + 40, false);
+		renderer.render(raster, 20, 20, "03600029145", 2, 80, 16);
+		BufferedImage image = raster.getImage();
+		for (int i = 0; i < nScans; i++) scanner.scanImage(image, includeCheckDigits, null);
+	}
+
+	/**
+      * Start the scanning threads and listen for requests.
+      * @param address The address to listen on, normally on the loopback
+      * interface.
+      * @throws IOException If the server cannot listen on the address.
+      */
+	public synchronized void start(InetSocketAddress address) throws IOException {
+		server = HttpServer.create(address, 0);
+		server.createContext("/scan", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				handleScan(exchange);
+			}
+		});
+		server.createContext("/stats", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				handleStats(exchange);
+			}
+		});
+		Executor executor = scanner.getExecutor();
+		server.setExecutor((executor != null) ? executor : ExchangeExecutor.executor);
+		workers = new Thread[nThreads];
+		for (int i = 0; i < nThreads; i++) {
+			workers[i] = new Thread("ScanServer-" + i) {
+				public void run() {
+					scanFrames();
+				}
+			};
+			workers[i].setDaemon(true);
+			workers[i].start();
+		}
+		server.start();
+	}
+
+	/**
+      * Stop listening, fail the frames still queued, and stop the scanning
+      * threads once they finish their current batches.
+      * @param delaySeconds How long to give exchanges in progress to finish.
+      */
+	public synchronized void stop(int delaySeconds) {
+		stopping = true;
+		if (server != null) server.stop(delaySeconds);
+		for (Frame frame; (frame = queue.poll()) != null; ) {
+			frame.result.completeExceptionally(new IllegalStateException("Server stopped"));
+		}
+		if (workers != null) {
+			for (int i = 0; i < workers.length; i++) workers[i].interrupt();
+		}
+	}
+
+	/**
+      * @return The port the server listens on.
+      */
+	public synchronized int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	// Body of each scanning thread: take a batch of the frames waiting, and
+	// scan them in turn.
+	private void scanFrames() {
+		List<Frame> batch = new ArrayList<Frame>(maxBatch);
+		while (!stopping) {
+			try {
+				Frame first = queue.take();
+				batch.add(first);
+				int pixels = first.w * first.h;
+				while ((batch.size() < maxBatch) && (pixels < maxBatchPixels)) {
+					Frame frame = queue.poll();
+					if (frame == null) break;
+					batch.add(frame);
+					pixels += frame.w * frame.h;
+				}
+			} catch (InterruptedException e) {
+				break;
+			}
+			nBatches.increment();
+			try {
+				for (int i = 0; i < batch.size(); i++) {
+					Frame frame = batch.get(i);
+					long start = System.nanoTime();
+					queueNanos.add(start - frame.queuedNs);
+					try {
+						ScanResult result;
+						if (!frame.hasDeadline) {
+							result = scanner.scanImage(
+								frame.pixels, 0, frame.w, frame.w, frame.h, includeCheckDigits, null);
+						} else if ((start - frame.deadline) < 0L) {
+							result = scanner.scanImage(
+								frame.pixels, 0, frame.w, frame.w, frame.h, includeCheckDigits, null,
+								frame.deadline);
+						} else {
+							result = new ScanResult(new BarCodeResult[0], false);
+						}
+						frame.scanNs = System.nanoTime() - start;
+						frame.result.complete(result);
+					} catch (Throwable t) {
+						// Fail only this frame; the thread goes on with the rest.
+						frame.result.completeExceptionally(t);
+					}
+				}
+			} finally {
+				// No request is left waiting on a frame of the batch, however
+				// the loop ended.
+				for (int i = 0; i < batch.size(); i++) {
+					batch.get(i).result.completeExceptionally(
+						new IllegalStateException("Frame not scanned"));
+				}
+				batch.clear();
+			}
+		}
+	}
+
+	private void handleScan(HttpExchange exchange) throws IOException {
+		long start = System.nanoTime();
+		try {
+			if (!exchange.getRequestMethod().equals("POST")) {
+				exchange.getResponseHeaders().set("Allow", "POST");
+				respond(exchange, 405, error("Use POST"));
+				return;
+			}
+			Frame frame = null;
+			int status = 400;
+			String problem = null;
+			try {
+				frame = readFrame(exchange, start);
+			} catch (BodyTooLargeException e) {
+				status = 413;
+				problem = e.getMessage();
+			} catch (IllegalArgumentException e) {
+				problem = e.getMessage();
+			} catch (IOException e) {
+				// Such as an IIOException from ImageIO on a malformed image.
+				problem = "Cannot read image: " + e;
+			} catch (RuntimeException e) {
+				// Image reader plugins may throw anything on a malformed image.
+				problem = "Cannot read image: " + e;
+			}
+			if (problem != null) {
+				nErrors.increment();
+				respond(exchange, status, error(problem));
+				return;
+			}
+			if (stopping || (!queue.offer(frame))) {
+				nRejected.increment();
+				exchange.getResponseHeaders().set("Retry-After", "1");
+				respond(exchange, 503, error("Queue full"));
+				return;
+			}
+			// If stop() drained the queue between the check and the offer,
+			// take the frame back, unless a scanning thread already has it.
+			if (stopping && queue.remove(frame)) {
+				nRejected.increment();
+				respond(exchange, 503, error("Server stopped"));
+				return;
+			}
+			ScanResult result;
+			try {
+				long timeout = resultTimeoutNanos;
+				if (frame.hasDeadline) timeout = frame.deadline + deadlineGraceNanos - System.nanoTime();
+				result = frame.result.get(Math.max(timeout, 0L), TimeUnit.NANOSECONDS);
+			} catch (TimeoutException e) {
+				// Don't scan the frame for nobody if it is still queued.
+				queue.remove(frame);
+				nErrors.increment();
+				respond(exchange, 504, error("Scan timed out"));
+				return;
+			} catch (ExecutionException e) {
+				nErrors.increment();
+				respond(exchange, 500, error(e.getCause().toString()));
+				return;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				nErrors.increment();
+				respond(exchange, 503, error("Interrupted"));
+				return;
+			}
+			StringBuilder sb = new StringBuilder(256);
+			sb.append("{\"width\":").append(frame.w);
+			sb.append(",\"height\":").append(frame.h);
+			sb.append(",\"queueMs\":").append(BatchBarCodeScanner.millis(
+				System.nanoTime() - frame.queuedNs - frame.scanNs));
+			sb.append(",\"scanMs\":").append(BatchBarCodeScanner.millis(frame.scanNs));
+			sb.append(",\"complete\":").append(result.isComplete());
+			BatchBarCodeScanner.appendBarCodes(sb, result.getResults());
+			sb.append("}\n");
+			respond(exchange, 200, sb);
+			nScanned.increment();
+			record(System.nanoTime() - start);
+		} finally {
+			exchange.close();
+		}
+	}
+
+	/**
+      * Read the frame of a request: raw gray pixels if the query gives the
+      * width and height, and otherwise an image file.
+      * @param arrivalNs When the request arrived, which its deadline counts
+      * from.
+      */
+	private static Frame readFrame(HttpExchange exchange, long arrivalNs) throws IOException {
+		Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+		int deadlineMs = query.containsKey("deadlineMs") ? intParam(query, "deadlineMs") : 0;
+		byte[] body = readBody(exchange);
+		Frame frame;
+		if (query.containsKey("width") || query.containsKey("height")) {
+			int w = intParam(query, "width"), h = intParam(query, "height");
+			if (((long)w * (long)h) != body.length) {
+				throw new IllegalArgumentException(
+					"Expected " + ((long)w * (long)h) + " bytes of pixels, got " + body.length);
+			}
+			frame = new Frame(body, w, h);
+		} else {
+			BufferedImage image = ImageIO.read(new ByteArrayInputStream(body));
+			if (image == null) throw new IllegalArgumentException("Unsupported image format");
+			int w = image.getWidth(), h = image.getHeight();
+			byte[] pixels = new byte[w * h];
+			if (image.getType() == BufferedImage.TYPE_BYTE_GRAY) {
+				image.getRaster().getDataElements(0, 0, w, h, pixels);
+			} else {
+				int[] row = new int[w];
+				for (int y = 0, idx = 0; y < h; y++) {
+					image.getRGB(0, y, w, 1, row, 0, w);
+					for (int x = 0; x < w; x++, idx++) {
+						pixels[idx] = (byte)ImageUtils.rgbToGrayscale(row[x]);
+					}
+				}
+			}
+			frame = new Frame(pixels, w, h);
+		}
+		if (deadlineMs > 0) {
+			frame.hasDeadline = true;
+			frame.deadline = arrivalNs + TimeUnit.MILLISECONDS.toNanos(deadlineMs);
+		}
+		return frame;
+	}
+
+	private static byte[] readBody(HttpExchange exchange) throws IOException {
+		String length = exchange.getRequestHeaders().getFirst("Content-Length");
+		int expected = -1;
+		if (length != null) {
+			try {
+				expected = Integer.parseInt(length.trim());
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Invalid Content-Length: " + length);
+			}
+			if (expected < 0) throw new IllegalArgumentException("Invalid Content-Length: " + length);
+			if (expected > maxBodyBytes) {
+				throw new BodyTooLargeException("Body too large: " + length + " bytes");
+			}
+		}
+		InputStream in = exchange.getRequestBody();
+		ByteArrayOutputStream out = new ByteArrayOutputStream((expected >= 0) ? expected : 65536);
+		byte[] buf = new byte[65536];
+		for (int n; (n = in.read(buf)) > 0; ) {
+			if ((out.size() + n) > maxBodyBytes) {
+				throw new BodyTooLargeException("Body too large");
+			}
+			out.write(buf, 0, n);
+		}
+		return out.toByteArray();
+	}
+
+	private static Map<String, String> parseQuery(String query) {
+		Map<String, String> params = new HashMap<String, String>();
+		if (query == null) return params;
+		String[] pairs = query.split("&");
+		for (int i = 0; i < pairs.length; i++) {
+			int eq = pairs[i].indexOf('=');
+			if (eq > 0) params.put(pairs[i].substring(0, eq), pairs[i].substring(eq + 1));
+		}
+		return params;
+	}
+
+	private static int intParam(Map<String, String> query, String name) {
+		String value = query.get(name);
+		if (value == null) throw new IllegalArgumentException("Missing " + name);
+		try {
+			int n = Integer.parseInt(value);
+			if (n >= 1) return n;
+		} catch (NumberFormatException e) {
+		}
+		throw new IllegalArgumentException("Invalid " + name + ": " + value);
+	}
+
+	private static StringBuilder error(String message) {
+		StringBuilder sb = new StringBuilder(64);
+		sb.append("{\"error\":");
+		BatchBarCodeScanner.appendJson(sb, message);
+		sb.append("}\n");
+		return sb;
+	}
+
+	private static void respond(HttpExchange exchange, int status, StringBuilder sb)
+		throws IOException {
+
+		byte[] body = sb.toString().getBytes("UTF-8");
+		exchange.getResponseHeaders().set("Content-Type", "application/json");
+		exchange.sendResponseHeaders(status, body.length);
+		OutputStream out = exchange.getResponseBody();
+		out.write(body);
+		out.close();
+	}
+
+	private void record(long latencyNs) {
+		synchronized (latencies) {
+			int i = (int)(nRecorded++ % latencyWindow);
+			latencies[i] = latencyNs;
+			completions[i] = System.nanoTime();
+		}
+	}
+
+	private void handleStats(HttpExchange exchange) throws IOException {
+		try {
+			respond(exchange, 200, new StringBuilder(getStats()).append('\n'));
+		} finally {
+			exchange.close();
+		}
+	}
+
+	/**
+      * @return The server's counters, as a JSON object.
+      */
+	public String getStats() {
+		long[] recent;
+		double recentRate = 0.0;
+		synchronized (latencies) {
+			int n = (int)Math.min(nRecorded, (long)latencyWindow);
+			recent = new long[n];
+			System.arraycopy(latencies, 0, recent, 0, n);
+			if (n > 1) {
+				// Completions per second over the window, from the oldest
+				// recorded completion until now.
+				int oldest = (nRecorded > latencyWindow) ? (int)(nRecorded % latencyWindow) : 0;
+				long span = System.nanoTime() - completions[oldest];
+				if (span > 0L) recentRate = (n * 1.0e9) / span;
+			}
+		}
+		Arrays.sort(recent);
+		long scanned = nScanned.sum(), batches = nBatches.sum();
+		double uptime = (System.nanoTime() - startNs) / 1.0e9;
+		StringBuilder sb = new StringBuilder(512);
+		sb.append("{\"uptimeS\":").append(Math.round(uptime * 100.0) / 100.0);
+		sb.append(",\"scanned\":").append(scanned);
+		sb.append(",\"rejected\":").append(nRejected.sum());
+		sb.append(",\"errors\":").append(nErrors.sum());
+		sb.append(",\"queued\":").append(queue.size());
+		sb.append(",\"batches\":").append(batches);
+		sb.append(",\"meanBatchSize\":").append(
+			(batches == 0L) ? 0.0 : (Math.round((scanned * 100.0) / batches) / 100.0));
+		sb.append(",\"meanQueueMs\":").append(
+			BatchBarCodeScanner.millis((scanned == 0L) ? 0L : (queueNanos.sum() / scanned)));
+		sb.append(",\"requestsPerSecond\":").append(Math.round(recentRate * 100.0) / 100.0);
+		sb.append(",\"latencyMs\":{");
+		sb.append("\"p50\":").append(
+			BatchBarCodeScanner.millis(BatchBarCodeScanner.percentile(recent, 50.0)));
+		sb.append(",\"p90\":").append(
+			BatchBarCodeScanner.millis(BatchBarCodeScanner.percentile(recent, 90.0)));
+		sb.append(",\"p99\":").append(
+			BatchBarCodeScanner.millis(BatchBarCodeScanner.percentile(recent, 99.0)));
+		sb.append(",\"max\":").append(
+			BatchBarCodeScanner.millis(BatchBarCodeScanner.percentile(recent, 100.0)));
+		sb.append("}}");
+		return sb.toString();
+	}
+
+	private static void usage(String error) {
+		if (error != null) System.err.println(error);
+		System.err.println(
+			"Usage: java com.roncemer.barcode.ScanServer [options]\n" +
+			"  -port n         Port to listen on (default: 8765)\n" +
+			"  -threads n      Number of scanning threads (default: one per CPU)\n" +
+			"  -queue n        Most frames waiting to be scanned (default: 64)\n" +
+			"  -batch n        Most frames scanned as one batch (default: 8)\n" +
+			"  -batchpixels n  Most pixels scanned as one batch (default: 1048576)\n" +
+			"  -warmup n       Scans of a rendered label before serving (default: 200)\n" +
+			"  -spacing n      Scan line spacing (default: 4)\n" +
+			"  -regions        Scan only candidate bar code regions\n" +
+			"  -lazy           Enhance only the pixels of the scan lines\n" +
+			"  -checkdigits    Include check digits in the results\n" +
+			"  -votes n        Scan lines needed to confirm a bar code (default: 1)\n" +
+			"  -expect n       Stop once n bar codes are confirmed (default: scan all)\n" +
+			"  -progressive    Scan coarse to fine, finding large bar codes first\n" +
+			"  -budget ms      Stop each scan after this many milliseconds");
+		System.exit(2);
+	}
+
+	private static int intArg(String[] args, int i, int min) {
+		if (i >= args.length) usage("Missing value for " + args[i - 1]);
+		try {
+			int n = Integer.parseInt(args[i]);
+			if (n >= min) return n;
+		} catch (NumberFormatException e) {
+		}
+		usage("Invalid value for " + args[i - 1] + ": " + args[i]);
+		return 0;
+	}
+
+	public static void main(String[]args) throws Exception {
+		int port = 8765;
+		int nThreads = Runtime.getRuntime().availableProcessors();
+		int queueCapacity = 64, maxBatch = 8, maxBatchPixels = 1 << 20, warmup = 200;
+		boolean includeCheckDigits = false;
+		ScanConfiguration config = ScanConfiguration.DEFAULT;
+		for (int i = 0; i < args.length; i++) {
+			String arg = args[i];
+			if (arg.equals("-port")) {
+				port = intArg(args, ++i, 0);
+			} else if (arg.equals("-threads")) {
+				nThreads = intArg(args, ++i, 1);
+			} else if (arg.equals("-queue")) {
+				queueCapacity = intArg(args, ++i, 1);
+			} else if (arg.equals("-batch")) {
+				maxBatch = intArg(args, ++i, 1);
+			} else if (arg.equals("-batchpixels")) {
+				maxBatchPixels = intArg(args, ++i, 1);
+			} else if (arg.equals("-warmup")) {
+				warmup = intArg(args, ++i, 0);
+			} else if (arg.equals("-spacing")) {
+				config = config.withScanLineSpacing(intArg(args, ++i, 1));
+			} else if (arg.equals("-regions")) {
+				config = config.withRegionDetection(true);
+			} else if (arg.equals("-lazy")) {
+				config = config.withLazyEnhancement(true);
+			} else if (arg.equals("-checkdigits")) {
+				includeCheckDigits = true;
+			} else if (arg.equals("-votes")) {
+				config = config.withRequiredVotes(intArg(args, ++i, 1));
+			} else if (arg.equals("-expect")) {
+				config = config.withExpectedBarCodes(intArg(args, ++i, 1));
+			} else if (arg.equals("-progressive")) {
+				config = config.withProgressiveScanning(true);
+			} else if (arg.equals("-budget")) {
+				config = config.withTimeBudget(intArg(args, ++i, 1), TimeUnit.MILLISECONDS);
+			} else {
+				usage("Unknown option: " + arg);
+			}
+		}
+
+		ImageBarCodeScanner scanner = new ImageBarCodeScanner();
+		scanner.setConfiguration(config);
+		final ScanServer server = new ScanServer(
+			scanner, includeCheckDigits, nThreads, queueCapacity, maxBatch, maxBatchPixels);
+		long start = System.nanoTime();
+		server.warmUp(warmup);
+		if (warmup > 0) {
+			System.err.println(
+				"Warmed up with " + warmup + " scans in " +
+				BatchBarCodeScanner.millis(System.nanoTime() - start) + " ms");
+		}
+		server.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+		System.err.println("Listening on http://127.0.0.1:" + server.getPort() + "/scan");
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			public void run() {
+				server.stop(1);
+				System.err.println(server.getStats());
+			}
+		});
+		Thread.currentThread().join();
+	}
+}
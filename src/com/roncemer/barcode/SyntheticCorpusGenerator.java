@@ -0,0 +1,627 @@
+// SyntheticCorpusGenerator.java
+// Copyright (c) 2002-2010 Ronald B. Cemer
+// All rights reserved.
+// This software is released under the BSD license.
+// Please see the accompanying LICENSE.txt for details.
+
+package com.roncemer.barcode;
+
+import java.awt.*;
+import java.awt.image.*;
+import java.io.*;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.regex.*;
+import javax.imageio.*;
+
+/**
+  * Command-line application which renders a corpus of known bar codes with
+  * controlled degradations, and measures how well the scanner decodes such
+  * a corpus.<p>
+  * Usage:
+  * <pre>
+  *   java com.roncemer.barcode.SyntheticCorpusGenerator generate [options] &lt;directory>
+  *   java com.roncemer.barcode.SyntheticCorpusGenerator evaluate [options] &lt;directory>
+  * </pre>
+  * <code>generate</code> renders each bar code with
+  * <code>UPCABarCodeRenderer</code> or <code>Code39BarCodeRenderer</code>,
+  * then places it on a canvas through a random projective warp (rotation
+  * plus perspective), and applies contrast reduction, uneven lighting,
+  * Gaussian blur and Gaussian noise.  Each degradation is drawn uniformly between zero (or
+  * its minimum) and its maximum, from a random generator seeded per image,
+  * so a corpus can be regenerated exactly.  The images are written as
+  * <code>NNNNNN.png</code> (or <code>.jpg</code>), and the ground truth as
+  * one JSON line per image in <code>groundtruth.jsonl</code>.
+  * <p>
+  * <code>evaluate</code> scans every image of a corpus and reports the
+  * decode rate (the fraction of images whose bar code was found), the
+  * number of wrong bar codes reported, and the scan latency percentiles,
+  * overall and by symbology.
+  * <p>
+  * Options of <code>generate</code>:
+  * <pre>
+  *   -count n            Number of images (default: 1000)
+  *   -seed n             Random seed (default: 1)
+  *   -symbology s        upc, code39 or both (default: both)
+  *   -size WxH           Minimum canvas size (default: 640x480)
+  *   -module min:max     Narrow bar width in pixels (default: 1:4)
+  *   -rotation deg       Maximum rotation either way (default: 20)
+  *   -perspective f      Maximum corner displacement, as a fraction of the
+  *                       symbol height (default: 0.1)
+  *   -blur sigma         Maximum Gaussian blur sigma in pixels (default: 1)
+  *   -noise sigma        Maximum Gaussian noise sigma in levels (default: 8)
+  *   -contrast min:max   Contrast between bars and paper, 0-1 (default: 0.4:1)
+  *   -shading f          Maximum darkening of one end of the symbol by a
+  *                       gradient of light, 0-1 (default: 0)
+  *   -format f           png or jpg (default: png)
+  *   -threads n          Number of rendering threads (default: one per CPU)
+  * </pre>
+  * Options of <code>evaluate</code>:
+  * <pre>
+  *   -spacing n          Scan line spacing (default: 4)
+  *   -regions            Scan only candidate bar code regions
+  *   -lazy               Enhance only the pixels of the scan lines
+  *   -angles a,b,...     Also scan at these angles, in degrees
+  *   -votes n            Scan lines needed to confirm a bar code (default: 1)
+  *   -expect n           Stop once n bar codes are confirmed (default: scan all)
+  *   -adaptive           Binarize each scan line from its own edges
+  *                       (always with sub-pixel bar widths)
+  *   -subpixel           Measure bar widths to a fraction of a pixel
+  *   -progressive        Scan coarse to fine, finding large bar codes first
+  *   -budget ms          Stop each scan after this many milliseconds
+  *   -threads n          Number of scanning threads (default: one per CPU)
+  * </pre>
+  *
+  * @author Ronald B. Cemer
+  */
+public class SyntheticCorpusGenerator {
+	/**
+      * The name of the ground truth file of a corpus.
+      */
+	public static final String GROUND_TRUTH_FILE = "groundtruth.jsonl";
+
+	// Characters used for Code 39 bar codes.  '$' is left out, since
+	// Code39Constants gives it the same pattern as the start/end code.
+	private static final String code39Chars = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ-. /+%";
+
+	// Quiet zone on each side of a rendered symbol, in modules.
+	private static final int quietModules = 10;
+
+	// Generation parameters.
+	int count = 1000;
+	long seed = 1L;
+	boolean upc = true, code39 = true;
+	int minCanvasW = 640, minCanvasH = 480;
+	int minModule = 1, maxModule = 4;
+	double maxRotation = 20.0;
+	double maxPerspective = 0.1;
+	double maxBlur = 1.0;
+	double maxNoise = 8.0;
+	double minContrast = 0.4, maxContrast = 1.0;
+	double maxShading = 0.0;
+	String format = "png";
+	int nThreads = Runtime.getRuntime().availableProcessors();
+
+	/**
+      * A rendered, degraded image and its ground truth.
+      */
+	static final class Sample {
+		String symbology;
+		// The bar code as the decoder returns it without check digits.
+		String text;
+		int moduleWidth;
+		double rotation, perspective, blur, noise, contrast, shading;
+		// Corners of the symbol, including its quiet zone, on the canvas:
+		// top left, top right, bottom right, bottom left.
+		double[] corners = new double[8];
+		int w, h;
+		byte[] pixels;
+	}
+
+	/**
+      * Render the sample with a given index.  The result depends only on the
+      * generation parameters, the seed and the index.
+      * @param index The index of the sample.
+      * @return The sample.
+      */
+	Sample render(int index) {
+		Random rnd = new Random(mix(seed, index));
+		Sample s = new Sample();
+		boolean isUpc = upc && ((!code39) || rnd.nextBoolean());
+		BarCodeRenderer renderer;
+		int symbolModules;
+		if (isUpc) {
+			StringBuilder sb = new StringBuilder(11);
+			for (int i = 0; i < 11; i++) sb.append((char)('0' + rnd.nextInt(10)));
+			s.symbology = "UPC-A";
+			s.text = sb.toString();
+			renderer = new UPCABarCodeRenderer();
+			symbolModules = 95;
+		} else {
+			int len = 4 + rnd.nextInt(9);
+			StringBuilder sb = new StringBuilder(len);
+			for (int i = 0; i < len; i++) {
+				sb.append(code39Chars.charAt(rnd.nextInt(code39Chars.length())));
+			}
+			s.symbology = "Code 39";
+			s.text = sb.toString();
+			renderer = new Code39BarCodeRenderer();
+			symbolModules = (len + 2) * 13;
+		}
+		s.moduleWidth = minModule + rnd.nextInt(maxModule - minModule + 1);
+		s.rotation = (rnd.nextDouble() * 2.0 - 1.0) * maxRotation;
+		s.perspective = rnd.nextDouble() * maxPerspective;
+		s.blur = rnd.nextDouble() * maxBlur;
+		s.noise = rnd.nextDouble() * maxNoise;
+		s.contrast = minContrast + (rnd.nextDouble() * (maxContrast - minContrast));
+
+		// Render the symbol in black on white, with its quiet zone.
+		int quiet = quietModules * s.moduleWidth;
+		int barHeight = Math.max(30, (symbolModules * s.moduleWidth) / 4);
+		int sw = (symbolModules * s.moduleWidth) + (2 * quiet);
+		int sh = barHeight + (2 * quiet);
+		BufferedImage symbol = new BufferedImage(sw, sh, BufferedImage.TYPE_BYTE_GRAY);
+		Graphics2D g = symbol.createGraphics();
+		g.setColor(Color.WHITE);
+		g.fillRect(0, 0, sw, sh);
+		g.setColor(Color.BLACK);
+		g.translate(quiet, quiet);
+		renderer.render(g, s.text, s.moduleWidth, barHeight, 0);
+		g.dispose();
+		byte[] ink = ((DataBufferByte)symbol.getRaster().getDataBuffer()).getData();
+
+		// Place the rotated symbol at a random position, then displace each
+		// corner at random for the perspective.
+		double rad = Math.toRadians(s.rotation);
+		double cos = Math.cos(rad), sin = Math.sin(rad);
+		double halfW = (Math.abs(cos * sw) + Math.abs(sin * sh)) / 2.0;
+		double halfH = (Math.abs(sin * sw) + Math.abs(cos * sh)) / 2.0;
+		double jitter = s.perspective * sh;
+		int margin = (int)Math.ceil(jitter) + 8;
+		s.w = Math.max(minCanvasW, (int)Math.ceil(2.0 * halfW) + (2 * margin));
+		s.h = Math.max(minCanvasH, (int)Math.ceil(2.0 * halfH) + (2 * margin));
+		double cx = halfW + margin + (rnd.nextDouble() * (s.w - (2.0 * (halfW + margin))));
+		double cy = halfH + margin + (rnd.nextDouble() * (s.h - (2.0 * (halfH + margin))));
+		double[] src = { 0, 0, sw, 0, sw, sh, 0, sh };
+		for (int i = 0; i < 4; i++) {
+			double x = src[i * 2] - (sw / 2.0), y = src[(i * 2) + 1] - (sh / 2.0);
+			s.corners[i * 2] =
+				cx + (cos * x) - (sin * y) + ((rnd.nextDouble() * 2.0 - 1.0) * jitter);
+			s.corners[(i * 2) + 1] =
+				cy + (sin * x) + (cos * y) + ((rnd.nextDouble() * 2.0 - 1.0) * jitter);
+		}
+
+		// Warp the symbol onto the canvas by inverse mapping each canvas pixel
+		// into the symbol, with bilinear interpolation.
+		double paper = 200 + rnd.nextInt(56);
+		double bar = paper - (s.contrast * paper);
+		// Light falls off linearly across the symbol, in a random direction,
+		// by up to the shading factor.  Drawn only if enabled, so that
+		// corpora generated without shading stay the same.
+		double shadeX = 0.0, shadeY = 0.0;
+		if (maxShading > 0.0) {
+			s.shading = rnd.nextDouble() * maxShading;
+			double dir = rnd.nextDouble() * 2.0 * Math.PI;
+			double extent = 2.0 * Math.max(halfW, halfH);
+			shadeX = (Math.cos(dir) * s.shading) / extent;
+			shadeY = (Math.sin(dir) * s.shading) / extent;
+		}
+		double[] hm = homography(s.corners, src);
+		double[] canvas = new double[s.w * s.h];
+		for (int y = 0, idx = 0; y < s.h; y++) {
+			for (int x = 0; x < s.w; x++, idx++) {
+				double d = (hm[6] * x) + (hm[7] * y) + 1.0;
+				double u = ((hm[0] * x) + (hm[1] * y) + hm[2]) / d;
+				double v = ((hm[3] * x) + (hm[4] * y) + hm[5]) / d;
+				double white = 1.0;
+				if ((u >= 0.0) && (v >= 0.0) && (u < (sw - 1)) && (v < (sh - 1))) {
+					int iu = (int)u, iv = (int)v;
+					double fu = u - iu, fv = v - iv;
+					int i0 = (iv * sw) + iu;
+					double top = ((ink[i0] & 0xff) * (1.0 - fu)) + ((ink[i0 + 1] & 0xff) * fu);
+					double bot = ((ink[i0 + sw] & 0xff) * (1.0 - fu)) + ((ink[i0 + sw + 1] & 0xff) * fu);
+					white = ((top * (1.0 - fv)) + (bot * fv)) / 255.0;
+				}
+				double light = 1.0 - (s.shading / 2.0) - (((x - cx) * shadeX) + ((y - cy) * shadeY));
+				if (light > 1.0) light = 1.0; else if (light < 0.0) light = 0.0;
+				canvas[idx] = (bar + ((paper - bar) * white)) * light;
+			}
+		}
+		if (s.blur > 0.1) gaussianBlur(canvas, s.w, s.h, s.blur);
+		s.pixels = new byte[s.w * s.h];
+		for (int i = 0; i < canvas.length; i++) {
+			int p = (int)Math.round(canvas[i] + (rnd.nextGaussian() * s.noise));
+			if (p < 0) p = 0; else if (p > 255) p = 255;
+			s.pixels[i] = (byte)p;
+		}
+		return s;
+	}
+
+	// Scramble the seed and the index, since java.util.Random gives
+	// correlated first values for consecutive seeds.
+	private static long mix(long seed, int index) {
+		long z = seed + ((index + 1L) * 0x9e3779b97f4a7c15L);
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+      * Compute the projective transformation which maps four points to four
+      * other points.
+      * @param from The x and y coordinates of the four source points.
+      * @param to The x and y coordinates of the four destination points.
+      * @return The transformation <code>h0..h7</code>, which maps
+      * <code>(x, y)</code> to
+      * <code>((h0*x + h1*y + h2) / d, (h3*x + h4*y + h5) / d)</code> with
+      * <code>d = h6*x + h7*y + 1</code>.
+      */
+	static double[] homography(double[] from, double[] to) {
+		double[][] a = new double[8][9];
+		for (int i = 0; i < 4; i++) {
+			double x = from[i * 2], y = from[(i * 2) + 1];
+			double u = to[i * 2], v = to[(i * 2) + 1];
+			double[] r0 = a[i * 2], r1 = a[(i * 2) + 1];
+			r0[0] = x; r0[1] = y; r0[2] = 1; r0[6] = -u * x; r0[7] = -u * y; r0[8] = u;
+			r1[3] = x; r1[4] = y; r1[5] = 1; r1[6] = -v * x; r1[7] = -v * y; r1[8] = v;
+		}
+		// Gaussian elimination with partial pivoting.
+		for (int col = 0; col < 8; col++) {
+			int pivot = col;
+			for (int row = col + 1; row < 8; row++) {
+				if (Math.abs(a[row][col]) > Math.abs(a[pivot][col])) pivot = row;
+			}
+			double[] tmp = a[col]; a[col] = a[pivot]; a[pivot] = tmp;
+			for (int row = 0; row < 8; row++) {
+				if (row == col) continue;
+				double f = a[row][col] / a[col][col];
+				for (int k = col; k < 9; k++) a[row][k] -= f * a[col][k];
+			}
+		}
+		double[] hm = new double[8];
+		for (int i = 0; i < 8; i++) hm[i] = a[i][8] / a[i][i];
+		return hm;
+	}
+
+	// Separable Gaussian blur, in place.
+	private static void gaussianBlur(double[] img, int w, int h, double sigma) {
+		int radius = (int)Math.ceil(sigma * 3.0);
+		double[] kernel = new double[(2 * radius) + 1];
+		double sum = 0.0;
+		for (int i = -radius; i <= radius; i++) {
+			kernel[i + radius] = Math.exp(-(i * i) / (2.0 * sigma * sigma));
+			sum += kernel[i + radius];
+		}
+		for (int i = 0; i < kernel.length; i++) kernel[i] /= sum;
+		double[] line = new double[Math.max(w, h)];
+		for (int y = 0; y < h; y++) {
+			int row = y * w;
+			for (int x = 0; x < w; x++) {
+				double v = 0.0;
+				for (int k = -radius; k <= radius; k++) {
+					int xx = Math.min(Math.max(x + k, 0), w - 1);
+					v += img[row + xx] * kernel[k + radius];
+				}
+				line[x] = v;
+			}
+			System.arraycopy(line, 0, img, row, w);
+		}
+		for (int x = 0; x < w; x++) {
+			for (int y = 0; y < h; y++) {
+				double v = 0.0;
+				for (int k = -radius; k <= radius; k++) {
+					int yy = Math.min(Math.max(y + k, 0), h - 1);
+					v += img[(yy * w) + x] * kernel[k + radius];
+				}
+				line[y] = v;
+			}
+			for (int y = 0; y < h; y++) img[(y * w) + x] = line[y];
+		}
+	}
+
+	/**
+      * Render the corpus into a directory, in parallel, and write its ground
+      * truth.
+      * @param dir The directory, which is created if necessary.
+      */
+	void generate(final File dir) throws Exception {
+		if ((!dir.isDirectory()) && (!dir.mkdirs())) {
+			throw new IOException("Cannot create directory " + dir);
+		}
+		final String[] truth = new String[count];
+		ExecutorService pool = Executors.newFixedThreadPool(nThreads);
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		for (int i = 0; i < count; i++) {
+			final int index = i;
+			futures.add(pool.submit(new Callable<Object>() {
+				public Object call() throws IOException {
+					Sample s = render(index);
+					String name = String.format("%06d.%s", index, format);
+					BufferedImage image =
+						new BufferedImage(s.w, s.h, BufferedImage.TYPE_BYTE_GRAY);
+					byte[] data = ((DataBufferByte)image.getRaster().getDataBuffer()).getData();
+					System.arraycopy(s.pixels, 0, data, 0, s.pixels.length);
+					if (!ImageIO.write(image, format, new File(dir, name))) {
+						throw new IOException("No ImageIO writer for " + format);
+					}
+					truth[index] = groundTruth(name, s);
+					return null;
+				}
+			}));
+		}
+		pool.shutdown();
+		for (Future<?> f : futures) f.get();
+		Writer out = new BufferedWriter(new OutputStreamWriter(
+			new FileOutputStream(new File(dir, GROUND_TRUTH_FILE)), "UTF-8"));
+		try {
+			for (int i = 0; i < count; i++) out.write(truth[i]);
+		} finally {
+			out.close();
+		}
+	}
+
+	private static String groundTruth(String name, Sample s) {
+		StringBuilder sb = new StringBuilder(256);
+		sb.append("{\"file\":\"").append(name).append('"');
+		sb.append(",\"symbology\":\"").append(s.symbology).append('"');
+		// Code 39 text may contain '%', '/', '+', '.', '-' and ' ',
+		// none of which need escaping in JSON.
+		sb.append(",\"text\":\"").append(s.text).append('"');
+		sb.append(",\"width\":").append(s.w);
+		sb.append(",\"height\":").append(s.h);
+		sb.append(",\"moduleWidth\":").append(s.moduleWidth);
+		sb.append(String.format(Locale.ROOT,
+			",\"rotation\":%.2f,\"perspective\":%.3f,\"blur\":%.2f,\"noise\":%.2f,\"contrast\":%.3f,\"shading\":%.3f",
+			s.rotation, s.perspective, s.blur, s.noise, s.contrast, s.shading));
+		sb.append(",\"corners\":[");
+		for (int i = 0; i < 8; i++) {
+			if (i > 0) sb.append(',');
+			sb.append(String.format(Locale.ROOT, "%.1f", s.corners[i]));
+		}
+		sb.append("]}\n");
+		return sb.toString();
+	}
+
+	private static String field(String json, String name) {
+		Matcher m = Pattern.compile("\"" + name + "\":\"([^\"]*)\"").matcher(json);
+		return m.find() ? m.group(1) : null;
+	}
+
+	/**
+      * Scan every image of a corpus and print the decode rate, wrong
+      * decodes and latency percentiles to standard output.
+      * @param dir The corpus directory.
+      * @param scanner The scanner to evaluate.
+      * @param nThreads The number of scanning threads.
+      */
+	static void evaluate(final File dir, final ImageBarCodeScanner scanner, int nThreads)
+		throws Exception {
+
+		BufferedReader in = new BufferedReader(new InputStreamReader(
+			new FileInputStream(new File(dir, GROUND_TRUTH_FILE)), "UTF-8"));
+		final List<String[]> truth = new ArrayList<String[]>();
+		try {
+			for (String line; (line = in.readLine()) != null; ) {
+				if (line.trim().length() == 0) continue;
+				truth.add(new String[] {
+					field(line, "file"), field(line, "symbology"), field(line, "text")
+				});
+			}
+		} finally {
+			in.close();
+		}
+		final int n = truth.size();
+		final long[] latencies = new long[n];
+		final boolean[] found = new boolean[n];
+		final int[] wrong = new int[n];
+		final boolean[] incomplete = new boolean[n];
+		ExecutorService pool = Executors.newFixedThreadPool(nThreads);
+		List<Future<?>> futures = new ArrayList<Future<?>>();
+		long start = System.nanoTime();
+		for (int i = 0; i < n; i++) {
+			final int index = i;
+			futures.add(pool.submit(new Callable<Object>() {
+				public Object call() throws IOException {
+					String[] t = truth.get(index);
+					BufferedImage image = ImageIO.read(new File(dir, t[0]));
+					long t0 = System.nanoTime();
+					ScanResult scan = scanner.scanImage(image, false, null);
+					latencies[index] = System.nanoTime() - t0;
+					incomplete[index] = !scan.isComplete();
+					BarCodeResult[] results = scan.getResults();
+					for (int j = 0; j < results.length; j++) {
+						if (results[j].getSymbology().equals(t[1]) &&
+							results[j].getText().equals(t[2])) {
+							found[index] = true;
+						} else {
+							wrong[index]++;
+						}
+					}
+					return null;
+				}
+			}));
+		}
+		pool.shutdown();
+		for (Future<?> f : futures) f.get();
+		double seconds = (System.nanoTime() - start) / 1.0e9;
+
+		TreeMap<String, int[]> bySymbology = new TreeMap<String, int[]>();
+		int nFound = 0, nWrong = 0, nIncomplete = 0;
+		for (int i = 0; i < n; i++) {
+			if (incomplete[i]) nIncomplete++;
+			int[] counts = bySymbology.get(truth.get(i)[1]);
+			if (counts == null) bySymbology.put(truth.get(i)[1], counts = new int[3]);
+			counts[0]++;
+			if (found[i]) { counts[1]++; nFound++; }
+			counts[2] += wrong[i];
+			nWrong += wrong[i];
+		}
+		long[] sorted = latencies.clone();
+		Arrays.sort(sorted);
+		System.out.println(String.format(Locale.ROOT,
+			"%d images in %.2f s (%.2f images/s)", n, seconds, n / seconds));
+		System.out.println(String.format(Locale.ROOT,
+			"Decode rate: %.2f%% (%d/%d), wrong bar codes: %d",
+			(100.0 * nFound) / Math.max(n, 1), nFound, n, nWrong));
+		for (Map.Entry<String, int[]> e : bySymbology.entrySet()) {
+			int[] c = e.getValue();
+			System.out.println(String.format(Locale.ROOT,
+				"  %-8s %.2f%% (%d/%d), wrong: %d",
+				e.getKey(), (100.0 * c[1]) / c[0], c[1], c[0], c[2]));
+		}
+		if (nIncomplete > 0) {
+			System.out.println(nIncomplete + " scans ran out of time");
+		}
+		if (n > 0) {
+			System.out.println(String.format(Locale.ROOT,
+				"Scan latency: p50 %.2f ms, p90 %.2f ms, p99 %.2f ms, max %.2f ms",
+				BatchBarCodeScanner.percentile(sorted, 50.0) / 1.0e6,
+				BatchBarCodeScanner.percentile(sorted, 90.0) / 1.0e6,
+				BatchBarCodeScanner.percentile(sorted, 99.0) / 1.0e6,
+				sorted[n - 1] / 1.0e6));
+		}
+	}
+
+	private static void usage(String error) {
+		if (error != null) System.err.println(error);
+		System.err.println(
+			"Usage: java com.roncemer.barcode.SyntheticCorpusGenerator generate [options] <directory>\n" +
+			"  -count n            Number of images (default: 1000)\n" +
+			"  -seed n             Random seed (default: 1)\n" +
+			"  -symbology s        upc, code39 or both (default: both)\n" +
+			"  -size WxH           Minimum canvas size (default: 640x480)\n" +
+			"  -module min:max     Narrow bar width in pixels (default: 1:4)\n" +
+			"  -rotation deg       Maximum rotation either way (default: 20)\n" +
+			"  -perspective f      Maximum corner displacement / symbol height (default: 0.1)\n" +
+			"  -blur sigma         Maximum Gaussian blur sigma (default: 1)\n" +
+			"  -noise sigma        Maximum Gaussian noise sigma (default: 8)\n" +
+			"  -contrast min:max   Contrast between bars and paper, 0-1 (default: 0.4:1)\n" +
+			"  -shading f          Maximum darkening by a gradient of light, 0-1 (default: 0)\n" +
+			"  -format f           png or jpg (default: png)\n" +
+			"  -threads n          Number of rendering threads (default: one per CPU)\n" +
+			"   or: java com.roncemer.barcode.SyntheticCorpusGenerator evaluate [options] <directory>\n" +
+			"  -spacing n          Scan line spacing (default: 4)\n" +
+			"  -regions            Scan only candidate bar code regions\n" +
+			"  -lazy               Enhance only the pixels of the scan lines\n" +
+			"  -angles a,b,...     Also scan at these angles, in degrees\n" +
+			"  -votes n            Scan lines needed to confirm a bar code (default: 1)\n" +
+			"  -expect n           Stop once n bar codes are confirmed (default: scan all)\n" +
+			"  -adaptive           Binarize each scan line from its own edges\n" +
+			"                      (always with sub-pixel bar widths)\n" +
+			"  -subpixel           Measure bar widths to a fraction of a pixel\n" +
+			"  -progressive        Scan coarse to fine, finding large bar codes first\n" +
+			"  -budget ms          Stop each scan after this many milliseconds\n" +
+			"  -threads n          Number of scanning threads (default: one per CPU)");
+		System.exit(2);
+	}
+
+	private static String value(String[] args, int i) {
+		if (i >= args.length) usage("Missing value for " + args[i - 1]);
+		return args[i];
+	}
+
+	private static double[] range(String s) {
+		int colon = s.indexOf(':');
+		if (colon < 0) return new double[] { Double.parseDouble(s), Double.parseDouble(s) };
+		return new double[] {
+			Double.parseDouble(s.substring(0, colon)), Double.parseDouble(s.substring(colon + 1))
+		};
+	}
+
+	public static void main(String[]args) throws Exception {
+		if (args.length < 2) usage(null);
+		boolean evaluate = args[0].equals("evaluate");
+		if ((!evaluate) && (!args[0].equals("generate"))) usage("Unknown command: " + args[0]);
+		SyntheticCorpusGenerator gen = new SyntheticCorpusGenerator();
+		ScanConfiguration config = ScanConfiguration.DEFAULT;
+		String dir = null;
+		try {
+			for (int i = 1; i < args.length; i++) {
+				String arg = args[i];
+				if (arg.equals("-count")) {
+					gen.count = Integer.parseInt(value(args, ++i));
+				} else if (arg.equals("-seed")) {
+					gen.seed = Long.parseLong(value(args, ++i));
+				} else if (arg.equals("-symbology")) {
+					String s = value(args, ++i);
+					gen.upc = s.equals("upc") || s.equals("both");
+					gen.code39 = s.equals("code39") || s.equals("both");
+					if ((!gen.upc) && (!gen.code39)) usage("Unknown symbology: " + s);
+				} else if (arg.equals("-size")) {
+					String s = value(args, ++i);
+					int x = s.indexOf('x');
+					if (x < 0) usage("Invalid size: " + s);
+					gen.minCanvasW = Integer.parseInt(s.substring(0, x));
+					gen.minCanvasH = Integer.parseInt(s.substring(x + 1));
+				} else if (arg.equals("-module")) {
+					double[] r = range(value(args, ++i));
+					gen.minModule = Math.max(1, (int)r[0]);
+					gen.maxModule = Math.max(gen.minModule, (int)r[1]);
+				} else if (arg.equals("-rotation")) {
+					gen.maxRotation = Double.parseDouble(value(args, ++i));
+				} else if (arg.equals("-perspective")) {
+					gen.maxPerspective = Double.parseDouble(value(args, ++i));
+				} else if (arg.equals("-blur")) {
+					gen.maxBlur = Double.parseDouble(value(args, ++i));
+				} else if (arg.equals("-noise")) {
+					gen.maxNoise = Double.parseDouble(value(args, ++i));
+				} else if (arg.equals("-contrast")) {
+					double[] r = range(value(args, ++i));
+					gen.minContrast = r[0];
+					gen.maxContrast = r[1];
+				} else if (arg.equals("-shading")) {
+					gen.maxShading = Double.parseDouble(value(args, ++i));
+				} else if (arg.equals("-format")) {
+					gen.format = value(args, ++i);
+				} else if (arg.equals("-threads")) {
+					gen.nThreads = Math.max(1, Integer.parseInt(value(args, ++i)));
+				} else if (arg.equals("-spacing")) {
+					config = config.withScanLineSpacing(Integer.parseInt(value(args, ++i)));
+				} else if (arg.equals("-regions")) {
+					config = config.withRegionDetection(true);
+				} else if (arg.equals("-lazy")) {
+					config = config.withLazyEnhancement(true);
+				} else if (arg.equals("-angles")) {
+					String[] parts = value(args, ++i).split(",");
+					int[] angles = new int[parts.length];
+					for (int j = 0; j < parts.length; j++) {
+						angles[j] = Integer.parseInt(parts[j].trim());
+					}
+					config = config.withAdditionalScanAngles(angles);
+				} else if (arg.equals("-votes")) {
+					config = config.withRequiredVotes(Integer.parseInt(value(args, ++i)));
+				} else if (arg.equals("-expect")) {
+					config = config.withExpectedBarCodes(Integer.parseInt(value(args, ++i)));
+				} else if (arg.equals("-adaptive")) {
+					config = config.withAdaptiveBinarization(true);
+				} else if (arg.equals("-subpixel")) {
+					config = config.withSubPixelEdges(true);
+				} else if (arg.equals("-progressive")) {
+					config = config.withProgressiveScanning(true);
+				} else if (arg.equals("-budget")) {
+					config = config.withTimeBudget(
+						Long.parseLong(value(args, ++i)), TimeUnit.MILLISECONDS);
+				} else if (arg.startsWith("-")) {
+					usage("Unknown option: " + arg);
+				} else {
+					dir = arg;
+				}
+			}
+		} catch (NumberFormatException e) {
+			usage("Invalid number: " + e.getMessage());
+		}
+		if (dir == null) usage("Please specify the corpus directory.");
+		if (evaluate) {
+			ImageBarCodeScanner scanner = new ImageBarCodeScanner();
+			scanner.setConfiguration(config);
+			evaluate(new File(dir), scanner, gen.nThreads);
+		} else {
+			long start = System.nanoTime();
+			gen.generate(new File(dir));
+			System.err.println(String.format(Locale.ROOT,
+				"%d images written to %s in %.2f s",
+				gen.count, dir, (System.nanoTime() - start) / 1.0e9));
+		}
+	}
+}
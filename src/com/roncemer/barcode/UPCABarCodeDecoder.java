@@ -23,6 +23,23 @@ import java.util.*;
 public class UPCABarCodeDecoder
 	extends BarCodeDecoder
 	implements UPCAConstants {
+	// Each digit is looked up by a key of three bits per normalized width,
+	// first width in the high bits.  Digits of the left and right halves
+	// have the same widths, and a bar code scanned from right to left has
+	// each digit's widths reversed.
+	private static final byte[] forwardDigits = new byte[1 << 12];
+	private static final byte[] reverseDigits = new byte[1 << 12];
+	// Number of bars and spaces in a bar code.
+	private static final int barsAndSpaces = 59;
+	static {
+		Arrays.fill(forwardDigits, (byte)-1);
+		Arrays.fill(reverseDigits, (byte)-1);
+		for (int i = 0; i <= 9; i++) {
+			int[] p = codePatterns[i];
+			forwardDigits[(p[0] << 9) | (p[1] << 6) | (p[2] << 3) | p[3]] = (byte)i;
+			reverseDigits[(p[3] << 9) | (p[2] << 6) | (p[1] << 3) | p[0]] = (byte)i;
+		}
+	}
 
 	/**
       * Decode a UPC-A barcode given relative widths of alternating bars and
@@ -38,24 +55,23 @@ public class UPCABarCodeDecoder
       * code.
       * @param includeCheckDigits <code>true</code> to return check digits;
       * <code>false</code> to strip them off.
-      * @param listener The <code>BarCodeDecoderListener</code> to be notified
-      * each time a bar code is decoded, or <code>null</code> if none.
-      * @return A <code>String</code> array containing all decoded bar codes.
-      * This array will be of zero length if no bar codes were successfully
-      * decoded.
+      * @param context The calling thread's scratch buffers.
+      * @param sink The <code>BarCodeSink</code> which receives each decoded
+      * bar code.
+      * @return <code>true</code> if decoding ran to completion;
+      * <code>false</code> if the sink aborted it.
       */
-	public String[] decode(
+	public boolean decode(
 		int[]widths,
 		int numBarsAndSpaces,
 		boolean includeCheckDigits,
-		BarCodeDecoderListener listener) {
+		ScanContext context,
+		BarCodeSink sink) {
 
-		abortedByListener = false;
-		int[] widthThresh = new int[10];
-		int[] charWidths = new int[4];
-		ArrayList barCodes = new ArrayList();
-		StringBuffer sb = new StringBuffer(12);
-		for (int startIdx = 0; (startIdx + 59) <= numBarsAndSpaces; startIdx += 2) {
+		boolean aborted = false;
+		int[] widthThresh = context.getWidthThresh(10);
+		StringBuilder sb = context.getStringBuilder();
+		for (int startIdx = 0; (startIdx + barsAndSpaces) <= numBarsAndSpaces; startIdx += 2) {
 			// Calculate width thresholds based on start code.
 			calculateWidthThresh(widthThresh, widths, startIdx, startEndCode);
 			// Look for start code.
@@ -80,51 +96,28 @@ public class UPCABarCodeDecoder
 ///         calculateWidthThresh
 ///         (widthThresh, widths, idx, centerDivider);
 				}
+				int key = 0;
 				for (int i = 0; i < 4; i++, idx++) {
-					charWidths[i] = normalizeWidth(widthThresh, widths[idx], ((idx & 0x01) == 0));
+					key = (key << 3) |
+						normalizeWidth(widthThresh, widths[idx], ((idx & 0x01) == 0));
 				}
-				boolean validChar = false;
-				for (int i = 0; i <= 9; i++) {
-					validChar = true;
-					if ((reversed) || (charCount == 0)) {
-						boolean validCharReversed = true;
-						for (int j = 0; j < 4; j++) {
-							if (charWidths[j] != codePatterns[i][3 - j]) {
-								if (reversed) validChar = false;
-								validCharReversed = false;
-								break;
-							}
-						}
-						if (validCharReversed) reversed = true;
-					}
-					if (!reversed) {
-						for (int j = 0; j < 4; j++) {
-							if (charWidths[j] != codePatterns[i][j]) {
-								validChar = false;
-								break;
-							}
-						}
-					}
-					if (validChar) {
-						sb.append((char) ((int) '0' + i));
-///
-///if ( (sb.length() >= 7) && (sb.toString().startsWith("01111085358")) )
-///if (sb.length() >= 3)
-///    System.out.println(sb.toString());
-						break;
+				// The first digit tells which way the bar code is being read.
+				int digit;
+				if (charCount == 0) {
+					digit = reverseDigits[key];
+					if (digit >= 0) {
+						reversed = true;
+					} else {
+						digit = forwardDigits[key];
 					}
-				}				// for (int i = 0; i <= 9; i++)
-				if (!validChar) {
-///
-///if ( (sb.length() >= 7) && (sb.toString().startsWith("01111085358")) ) {
-///if (sb.length() >= 3) {
-///    System.out.print("                ");
-///    for (int i = 0; i < 4; i++) System.out.print(charWidths[i]);
-///    System.out.println();
-///}
+				} else {
+					digit = reversed ? reverseDigits[key] : forwardDigits[key];
+				}
+				if (digit < 0) {
 					allValidChars = false;
 					break;
 				}
+				sb.append((char)('0' + digit));
 ///int[] save = new int[10];
 ///System.arraycopy(widthThresh, 0, save, 0, 10);
 ///     calculateWidthThresh(widthThresh, widths, idx-4, charWidths);
@@ -163,21 +156,51 @@ public class UPCABarCodeDecoder
 			int cs = (10 - (((csOdd * 3) + csEven) % 10)) % 10;
 			if (cs == (sb.charAt(11) - '0')) {
 				if (!includeCheckDigits) sb.setLength(11);
-				String bc = sb.toString();
-				barCodes.add(bc);
-				if (listener != null) {
-					if (!listener.barCodeFound(bc, this)) {
-						abortedByListener = true;
-						startIdx = numBarsAndSpaces;
-						break;
-					}
+				if (!sink.barCodeFound(sb.toString(), this, startIdx, idx)) {
+					aborted = true;
+					startIdx = numBarsAndSpaces;
+					break;
 				}
 				startIdx = (idx - 2) & 0xfffffffe;
 			}
 		}						// for (int startIdx = 0; ...
-		String[]result = new String[barCodes.size()];
-		barCodes.toArray(result);
-		return result;
+		return !aborted;
+	}
+
+	/**
+      * @return <code>"UPC-A"</code>.
+      */
+	public String getSymbology() {
+		return "UPC-A";
+	}
+
+	/**
+      * @return 59: the start code, twelve digits of four elements each, the
+      * center divider and the end code.
+      */
+	public int getMinBarsAndSpaces() {
+		return barsAndSpaces;
+	}
+
+	/**
+      * @return 59, since UPC-A bar codes have a fixed length.
+      */
+	public int getMaxBarsAndSpaces() {
+		return barsAndSpaces;
+	}
+
+	/**
+      * @return 9.
+      */
+	public int getQuietZoneModules() {
+		return 9;
+	}
+
+	/**
+      * @return 4.
+      */
+	public int getMaxElementModules() {
+		return 4;
 	}
 
 	private final int divRound(int num, int denom) {
@@ -12,10 +12,15 @@ import java.awt.geom.*;
 import javax.swing.*;
 
 /**
-  * This class renders UPCA bar codes to a <code>Graphics</code> surface.
+  * This class renders UPCA bar codes to a <code>Graphics</code> surface,
+  * or into a <code>BarCodeRaster</code>.
   */
 public class UPCABarCodeRenderer
-	implements BarCodeRenderer, UPCAConstants {
+	implements RasterBarCodeRenderer, UPCAConstants {
+	// Number of modules in a bar code.
+	private static final int totalModules = 95;
+	// Glyphs of the large and small digits of the last label rendered.
+	private volatile GlyphCache.Glyphs largeGlyphs, smallGlyphs;
 
 	/**
       * Render a UPCA bar code to a <code>Graphics</code> surface.
@@ -63,37 +68,7 @@ public class UPCABarCodeRenderer
 			 smallFont = largeFont.deriveFont(trans);
 			 smallFontMetrics = g.getFontMetrics(smallFont);
 		}
-		// Toss all but the first 11 numeric digits.
-		StringBuffer sb = new StringBuffer();
-		int len = barCode.length();
-		for (int i = 0; i < len; i++) {
-			char c = barCode.charAt(i);
-			if ("0123456789".indexOf(c) >= 0) {
-				sb.append(c);
-				if (sb.length() == 11) {
-					break;
-				}
-			}
-		}
-		// Add leading zeroes if fewer than 11 digits.
-		while (sb.length() < 11) {
-			sb.insert(0, '0');
-		}
-		// Append check digit.
-		int csOdd =
-			(sb.charAt(0) - '0') +
-			(sb.charAt(2) - '0') +
-			(sb.charAt(4) - '0') +
-			(sb.charAt(6) - '0') +
-			(sb.charAt(8) - '0') + (sb.charAt(10) - '0');
-		int csEven =
-			(sb.charAt(1) - '0') +
-			(sb.charAt(3) - '0') +
-			(sb.charAt(5) - '0') +
-			(sb.charAt(7) - '0') + (sb.charAt(9) - '0');
-		int cs = (10 - (((csOdd * 3) + csEven) % 10)) % 10;
-		sb.append(Integer.toString(cs));
-		barCode = sb.toString();
+		barCode = normalize(barCode);
 
 		// Render the bar code.
 		int x = 0;
@@ -136,6 +111,154 @@ public class UPCABarCodeRenderer
 		}
 	}
 
+	// Toss all but the first 11 numeric digits, pad them to 11 digits with
+	// leading zeroes, and append the check digit.
+	private static String normalize(String barCode) {
+		StringBuffer sb = new StringBuffer();
+		int len = barCode.length();
+		for (int i = 0; i < len; i++) {
+			char c = barCode.charAt(i);
+			if ("0123456789".indexOf(c) >= 0) {
+				sb.append(c);
+				if (sb.length() == 11) {
+					break;
+				}
+			}
+		}
+		// Add leading zeroes if fewer than 11 digits.
+		while (sb.length() < 11) {
+			sb.insert(0, '0');
+		}
+		// Append check digit.
+		int csOdd =
+			(sb.charAt(0) - '0') +
+			(sb.charAt(2) - '0') +
+			(sb.charAt(4) - '0') +
+			(sb.charAt(6) - '0') +
+			(sb.charAt(8) - '0') + (sb.charAt(10) - '0');
+		int csEven =
+			(sb.charAt(1) - '0') +
+			(sb.charAt(3) - '0') +
+			(sb.charAt(5) - '0') +
+			(sb.charAt(7) - '0') + (sb.charAt(9) - '0');
+		int cs = (10 - (((csOdd * 3) + csEven) % 10)) % 10;
+		sb.append(Integer.toString(cs));
+		return sb.toString();
+	}
+
+	/**
+      * Get the size of a rendered UPCA bar code.
+      * @param barCode The bar code.  Its digits don't affect the size.
+      * @param narrowBarWidth The width of a narrow bar.
+      * @param barHeight The height of the bars.
+      * @param textHeight The height of the text to be renderered under the
+      * bar code, or zero for none.
+      * @return The width and height of the bar code, in pixels.
+      */
+	public Dimension getSize(
+		String barCode,
+		int narrowBarWidth,
+		int barHeight,
+		int textHeight) {
+
+		int width = totalModules * narrowBarWidth;
+		if (textHeight <= 0) return new Dimension(width, barHeight);
+		GlyphCache.Glyphs smallGlyphs =
+			GlyphCache.get(this.smallGlyphs, textHeight, largeCharWidth(narrowBarWidth), 0.75);
+		this.smallGlyphs = smallGlyphs;
+		width += 2 * (smallGlyphs.stringWidth("0") + (narrowBarWidth * 2));
+		return new Dimension(width, barHeight + textHeight);
+	}
+
+	/**
+      * Render a UPCA bar code into a <code>BarCodeRaster</code>, laid out as
+      * by {@link #render(Graphics, String, int, int, int)}.
+      * @param raster The raster to render into.
+      * @param x The column of the bar code's left edge.
+      * @param y The row of the bar code's top edge.
+      * @param barCode The bar code, as for
+      * {@link #render(Graphics, String, int, int, int)}.
+      * @param narrowBarWidth The width of a narrow bar.
+      * @param barHeight The height of the bars.
+      * @param textHeight The height of the text to be renderered under the
+      * bar code, or zero for none.
+      */
+	public void render(
+		BarCodeRaster raster,
+		int x,
+		int y,
+		String barCode,
+		int narrowBarWidth,
+		int barHeight,
+		int textHeight) {
+
+		if (textHeight < 0) textHeight = 0;
+		barCode = normalize(barCode);
+		GlyphCache.Glyphs largeGlyphs = null, smallGlyphs = null;
+		int barsX = x;
+		if (textHeight > 0) {
+			double charWidth = largeCharWidth(narrowBarWidth);
+			largeGlyphs = GlyphCache.get(this.largeGlyphs, textHeight, charWidth, 1.0);
+			smallGlyphs = GlyphCache.get(this.smallGlyphs, textHeight, charWidth, 0.75);
+			this.largeGlyphs = largeGlyphs;
+			this.smallGlyphs = smallGlyphs;
+			barsX += smallGlyphs.stringWidth(barCode.substring(0, 1)) + (narrowBarWidth * 2);
+		}
+		// Runs of every bar, and of the start, center and end codes only,
+		// which extend below the others by half the text height.  Each run
+		// is an offset from the left edge of the bars and a width.
+		int[] runs = new int[totalModules + 1];
+		int[] guardRuns = new int[totalModules + 1];
+		int nRuns = 0, nGuardRuns = 0;
+		int pos = 0;
+		boolean black = true;
+		for (int i = -1; i <= 13; i++) {
+			int[] pattern;
+			if ((i == -1) || (i == 13)) {
+				pattern = startEndCode;
+			} else if (i == 6) {
+				pattern = centerDivider;
+			} else {
+				pattern = codePatterns[barCode.charAt((i < 6) ? i : (i - 1)) - '0'];
+			}
+			boolean guard = (pattern == startEndCode) || (pattern == centerDivider);
+			for (int j = 0; j < pattern.length; j++) {
+				int w = pattern[j] * narrowBarWidth;
+				if (black) {
+					runs[nRuns * 2] = pos;
+					runs[(nRuns * 2) + 1] = w;
+					nRuns++;
+					if (guard) {
+						guardRuns[nGuardRuns * 2] = pos;
+						guardRuns[(nGuardRuns * 2) + 1] = w;
+						nGuardRuns++;
+					}
+				}
+				black = !black;
+				pos += w;
+			}
+		}
+		raster.paintBand(barsX, y, pos, barHeight, runs, nRuns);
+		raster.paintBand(barsX, y + barHeight, pos, textHeight / 2, guardRuns, nGuardRuns);
+		if (textHeight > 0) {
+			int baseline = y + barHeight + textHeight;
+			int startEndCodeWidth = startEndCode.length * narrowBarWidth;
+			int halfWidth = (6 * 7 * narrowBarWidth) + (centerDivider.length * narrowBarWidth);
+			smallGlyphs.draw(raster, barCode.substring(0, 1), x, baseline);
+			largeGlyphs.draw(raster, barCode.substring(1, 6), barsX + startEndCodeWidth, baseline);
+			largeGlyphs.draw(
+				raster, barCode.substring(6, 11), barsX + startEndCodeWidth + halfWidth, baseline);
+			smallGlyphs.draw(
+				raster, barCode.substring(11, 12), barsX + pos + (narrowBarWidth * 2), baseline);
+		}
+	}
+
+	// Width of each of the ten larger digits, which are stretched to span
+	// the twelve characters of the bar code.
+	private static double largeCharWidth(int narrowBarWidth) {
+		return (12.0 * 7.0 * narrowBarWidth) / 10.0;
+	}
+
 	private static boolean render(
 		Graphics g,
 		int[] pattern,
@@ -17,43 +17,30 @@ import java.util.*;
   * @author Ronald B. Cemer
   */
 public class ImageUtils {
-	private static final int[][] sobelHorizMatrix = {
-		{-1, 0, 1},
-		{-2, 0, 2},
-		{-1, 0, 1}
-	};
-
-	private static final int[][] sobelVertMatrix = {
-		{-1, -2, -1},
-		{0, 0, 0},
-		{1, 2, 1}
-	};
-
-	private static final int convolve3x3
-		(int[]src, int w, int x, int y, int[][]matrix3x3) {
-/// int result = 0;
-/// x--;
-/// y--;
-/// for (int yy = 0; yy <= 2; yy++) {
-///     int idx = ((y+yy)*w)+x;
-///     for (int xx = 0; xx <= 2; xx++, idx++) {
-///     result += src[idx]*matrix3x3[yy][xx];
-///     }
-/// }
-/// return result;
-		int xm = x - 1, xp = x + 1;
-		int idx1 = y * w;
-		int idx0 = idx1 - w, idx2 = idx1 + w;
-		return
-			(src[idx0 + xm] * matrix3x3[0][0]) +
-			(src[idx0 + x] * matrix3x3[0][1]) +
-			(src[idx0 + xp] * matrix3x3[0][2]) +
-			(src[idx1 + xm] * matrix3x3[1][0]) +
-			(src[idx1 + x] * matrix3x3[1][1]) +
-			(src[idx1 + xp] * matrix3x3[1][2]) +
-			(src[idx2 + xm] * matrix3x3[2][0]) +
-			(src[idx2 + x] * matrix3x3[2][1]) +
-			(src[idx2 + xp] * matrix3x3[2][2]);
+	// Sobel kernel: the SIMD one if the Vector API is available, otherwise
+	// the scalar one.  Set the system property javabar.vector to false to
+	// force the scalar kernel.
+	private static final SobelKernel sobelKernel = loadSobelKernel();
+
+	private static SobelKernel loadSobelKernel() {
+		if (!"false".equals(System.getProperty("javabar.vector"))) {
+			try {
+				return (SobelKernel)Class.forName("com.roncemer.util.VectorSobelKernel")
+					.getDeclaredConstructor().newInstance();
+			} catch (Throwable t) {
+				// jdk.incubator.vector is not in the module graph.
+			}
+		}
+		return new ScalarSobelKernel();
+	}
+
+	/**
+      * @return <code>true</code> if the Sobel operations use the
+      * <code>jdk.incubator.vector</code> SIMD kernel; <code>false</code> if
+      * they use the scalar fallback.
+      */
+	public static boolean isVectorized() {
+		return !(sobelKernel instanceof ScalarSobelKernel);
 	}
 
 	/**
@@ -76,13 +63,15 @@ public class ImageUtils {
 			dest[x] = 0;
 			dest[lastLineOffset + x] = 0;
 		}
+		int[] sxRow = new int[w], syRow = new int[w];
 		int sx, sy;
 		for (int y = 1; y < hMinus1; y++) {
 			int idx = y * w;
 			dest[idx++] = 0;
+			sobelKernel.gradients(src, w, y, sxRow, syRow);
 			for (int x = 1; x < wMinus1; x++, idx++) {
-				sx = convolve3x3(src, w, x, y, sobelHorizMatrix);
-				sy = convolve3x3(src, w, x, y, sobelVertMatrix);
+				sx = sxRow[x];
+				sy = syRow[x];
 				if (((sx * sx) + (sy * sy)) >= thresh) {
 					dest[idx] = 255;
 				} else {
@@ -106,56 +95,665 @@ public class ImageUtils {
 	public static final void sobelEnhance
 		(int[]src, int[]dest, int w, int h, int thresh, int intensity) {
 
+		sobelEnhance(src, dest, w, h, thresh, intensity, 0, h);
+	}
+
+	/**
+      * Perform edge enhancement using Sobel edge detection on a horizontal
+      * band of an image.  Each row is enhanced independently of the others,
+      * so several threads may enhance disjoint bands of the same image
+      * concurrently.
+      * @param src An array containing the monochrome source pixels.  Each
+      * element in this array should be in the range of 0-255.
+      * @param dest An array to receive the monochrome destination pixels.
+      * @param w The width of the image, in pixels.
+      * @param h The height of the image, in pixels.
+      * @param thresh The threshold for edge detection, in the range of 0-255.
+      * @param intensity The intensity of the edge enhancement (0-255).
+      * @param firstRow The first row of the band (inclusive).
+      * @param endRow The end row of the band (exclusive).
+      */
+	public static final void sobelEnhance(
+		int[]src,
+		int[]dest,
+		int w,
+		int h,
+		int thresh,
+		int intensity,
+		int firstRow,
+		int endRow) {
+
 		thresh *= thresh;
 		int wMinus1 = w - 1;
 		int hMinus1 = h - 1;
 		int lastLineOffset = hMinus1 * w;
-		for (int x = 0; x < w; x++) {
-			dest[x] = src[x];
-			int idx = lastLineOffset + x;
-			dest[idx] = idx;
+		if (firstRow == 0) {
+			for (int x = 0; x < w; x++) dest[x] = src[x];
+		}
+		if (endRow == h) {
+			for (int x = 0; x < w; x++) dest[lastLineOffset + x] = src[lastLineOffset + x];
+		}
+		int[] sxRow = new int[w], syRow = new int[w], gradRow = new int[w];
+		int yEnd = Math.min(endRow, hMinus1);
+		for (int y = Math.max(firstRow, 1); y < yEnd; y++) {
+			sobelKernel.gradients(src, w, y, sxRow, syRow);
+			for (int x = 1; x < wMinus1; x++) gradRow[x] = packGradient(sxRow[x], syRow[x]);
+			enhanceRow(src, dest, w, y * w, gradRow, 0, thresh, intensity);
 		}
+	}
+
+	/**
+      * Compute the Sobel gradients of every pixel of an image, packed as by
+      * {@link #packGradient(int, int)}.  The gradients depend only on the
+      * source image, so they can be computed once and then used to enhance
+      * the image with any number of thresholds and intensities.
+      * @param src An array containing the monochrome source pixels.  Each
+      * element in this array should be in the range of 0-255.
+      * @param grad An array to receive the packed gradients.  Pixels on the
+      * border of the image get zero gradients.
+      * @param w The width of the image, in pixels.
+      * @param h The height of the image, in pixels.
+      */
+	public static final void sobelGradients(int[]src, int[]grad, int w, int h) {
+		sobelGradients(src, grad, w, h, 0, h);
+	}
+
+	/**
+      * Compute the packed Sobel gradients of a horizontal band of an image.
+      * Several threads may compute disjoint bands of the same image
+      * concurrently.
+      * @param src An array containing the monochrome source pixels.  Each
+      * element in this array should be in the range of 0-255.
+      * @param grad An array to receive the packed gradients.
+      * @param w The width of the image, in pixels.
+      * @param h The height of the image, in pixels.
+      * @param firstRow The first row of the band (inclusive).
+      * @param endRow The end row of the band (exclusive).
+      */
+	public static final void sobelGradients(
+		int[]src,
+		int[]grad,
+		int w,
+		int h,
+		int firstRow,
+		int endRow) {
+
+		int zero = packGradient(0, 0);
+		int wMinus1 = w - 1;
+		int hMinus1 = h - 1;
+		int[] sxRow = new int[w], syRow = new int[w];
+		for (int y = firstRow; y < endRow; y++) {
+			int idx = y * w;
+			if ((y == 0) || (y >= hMinus1)) {
+				Arrays.fill(grad, idx, idx + w, zero);
+				continue;
+			}
+			sobelKernel.gradients(src, w, y, sxRow, syRow);
+			grad[idx] = zero;
+			for (int x = 1; x < wMinus1; x++) grad[idx + x] = packGradient(sxRow[x], syRow[x]);
+			if (w > 1) grad[idx + wMinus1] = zero;
+		}
+	}
+
+	/**
+      * Perform edge enhancement on an image using Sobel gradients computed
+      * by {@link #sobelGradients(int[], int[], int, int)}.  The result is
+      * identical to that of
+      * {@link #sobelEnhance(int[], int[], int, int, int, int)}, but costs
+      * only a cheap per-pixel pass.
+      * @param src An array containing the monochrome source pixels.  Each
+      * element in this array should be in the range of 0-255.
+      * @param grad The packed gradients of the source pixels.
+      * @param dest An array to receive the monochrome destination pixels.
+      * @param w The width of the image, in pixels.
+      * @param h The height of the image, in pixels.
+      * @param thresh The threshold for edge detection, in the range of 0-255.
+      * @param intensity The intensity of the edge enhancement (0-255).
+      */
+	public static final void sobelEnhance
+		(int[]src, int[]grad, int[]dest, int w, int h, int thresh, int intensity) {
+
+		sobelEnhance(src, grad, dest, w, h, thresh, intensity, 0, h);
+	}
+
+	/**
+      * Perform edge enhancement on a horizontal band of an image using
+      * precomputed Sobel gradients.  Several threads may enhance disjoint
+      * bands of the same image concurrently.
+      * @param src An array containing the monochrome source pixels.  Each
+      * element in this array should be in the range of 0-255.
+      * @param grad The packed gradients of the source pixels.
+      * @param dest An array to receive the monochrome destination pixels.
+      * @param w The width of the image, in pixels.
+      * @param h The height of the image, in pixels.
+      * @param thresh The threshold for edge detection, in the range of 0-255.
+      * @param intensity The intensity of the edge enhancement (0-255).
+      * @param firstRow The first row of the band (inclusive).
+      * @param endRow The end row of the band (exclusive).
+      */
+	public static final void sobelEnhance(
+		int[]src,
+		int[]grad,
+		int[]dest,
+		int w,
+		int h,
+		int thresh,
+		int intensity,
+		int firstRow,
+		int endRow) {
+
+		thresh *= thresh;
+		int hMinus1 = h - 1;
+		int lastLineOffset = hMinus1 * w;
+		if (firstRow == 0) {
+			for (int x = 0; x < w; x++) dest[x] = src[x];
+		}
+		if (endRow == h) {
+			for (int x = 0; x < w; x++) dest[lastLineOffset + x] = src[lastLineOffset + x];
+		}
+		int yEnd = Math.min(endRow, hMinus1);
+		for (int y = Math.max(firstRow, 1); y < yEnd; y++) {
+			int rowIdx = y * w;
+			enhanceRow(src, dest, w, rowIdx, grad, rowIdx, thresh, intensity);
+		}
+	}
+
+	// Enhance one interior row, given the packed gradient of each pixel x of
+	// the row at grad[gradOffset + x].  thresh is already squared.
+	private static final void enhanceRow(
+		int[]src,
+		int[]dest,
+		int w,
+		int rowIdx,
+		int[]grad,
+		int gradOffset,
+		int thresh,
+		int intensity) {
+
+		int wMinus1 = w - 1;
 		int sx, sy, pix;
-		for (int y = 1; y < hMinus1; y++) {
+		int idx = rowIdx;
+		dest[idx] = src[idx];
+		idx++;
+		int thisLineStartIdx = idx;
+		boolean foundEdge = false, prevFoundEdge = false;
+		boolean isWhite = false;
+		for (int x = 1; x < wMinus1; x++, idx++) {
+			int g = grad[gradOffset + x];
+			sx = gradientX(g);
+			sy = gradientY(g);
+			if (((sx * sx) + (sy * sy)) >= thresh) {
+				foundEdge = true;
+				isWhite = ((sx + sy) > 0);
+			}
+			if (foundEdge) {
+				if (!prevFoundEdge) {
+					prevFoundEdge = true;
+					for (int idx2 = thisLineStartIdx; idx2 < idx;
+						 idx2++) {
+						if (!isWhite) {
+							pix = src[idx2] + intensity;
+						} else {
+							pix = src[idx2] - intensity;
+						}
+						if (pix < 0) pix = 0; else if (pix > 255) pix = 255;
+						dest[idx2] = pix;
+					}
+				}
+				if (isWhite) {
+					pix = src[idx] + intensity;
+				} else {
+					pix = src[idx] - intensity;
+				}
+				if (pix < 0) pix = 0; else if (pix > 255) pix = 255;
+				dest[idx] = pix;
+			} else {
+				dest[idx] = src[idx];
+			}
+		}
+		dest[idx] = src[idx];
+	}
+
+	/**
+      * Compute the packed Sobel gradients of an image stored as one unsigned
+      * byte per pixel.  The result is identical to that of
+      * {@link #sobelGradients(int[], int[], int, int)} for the same pixels.
+      * @param src An array containing the monochrome source pixels, each an
+      * unsigned byte.
+      * @param offset The index of the top-left pixel in <code>src</code>.
+      * @param stride The distance between the first pixels of consecutive
+      * rows in <code>src</code>.  Must be at least <code>w</code>.
+      * @param grad An array to receive the packed gradients, <code>w</code>
+      * per row.  Pixels on the border of the image get zero gradients.
+      * @param w The width of the image, in pixels.
+      * @param h The height of the image, in pixels.
+      */
+	public static final void sobelGradients
+		(byte[]src, int offset, int stride, int[]grad, int w, int h) {
+
+		sobelGradients(src, offset, stride, grad, w, h, 0, h);
+	}
+
+	/**
+      * Compute the packed Sobel gradients of a horizontal band of an image
+      * stored as one unsigned byte per pixel.  Several threads may compute
+      * disjoint bands of the same image concurrently.
+      * @param src An array containing the monochrome source pixels, each an
+      * unsigned byte.
+      * @param offset The index of the top-left pixel in <code>src</code>.
+      * @param stride The distance between the first pixels of consecutive
+      * rows in <code>src</code>.
+      * @param grad An array to receive the packed gradients, <code>w</code>
+      * per row.
+      * @param w The width of the image, in pixels.
+      * @param h The height of the image, in pixels.
+      * @param firstRow The first row of the band (inclusive).
+      * @param endRow The end row of the band (exclusive).
+      */
+	public static final void sobelGradients(
+		byte[]src,
+		int offset,
+		int stride,
+		int[]grad,
+		int w,
+		int h,
+		int firstRow,
+		int endRow) {
+
+		int zero = packGradient(0, 0);
+		int wMinus1 = w - 1;
+		int hMinus1 = h - 1;
+		int[] sxRow = new int[w], syRow = new int[w];
+		for (int y = firstRow; y < endRow; y++) {
 			int idx = y * w;
-			dest[idx] = src[idx];
-			idx++;
-			int thisLineStartIdx = idx;
-			boolean foundEdge = false, prevFoundEdge = false;
-			boolean isWhite = false;
-			for (int x = 1; x < wMinus1; x++, idx++) {
-				sx = convolve3x3(src, w, x, y, sobelHorizMatrix);
-				sy = convolve3x3(src, w, x, y, sobelVertMatrix);
-				if (((sx * sx) + (sy * sy)) >= thresh) {
+			if ((y == 0) || (y >= hMinus1)) {
+				Arrays.fill(grad, idx, idx + w, zero);
+				continue;
+			}
+			sobelKernel.gradients(src, offset + (y * stride), stride, w, sxRow, syRow);
+			grad[idx] = zero;
+			for (int x = 1; x < wMinus1; x++) grad[idx + x] = packGradient(sxRow[x], syRow[x]);
+			if (w > 1) grad[idx + wMinus1] = zero;
+		}
+	}
+
+	/**
+      * Perform edge enhancement on an image stored as one unsigned byte per
+      * pixel, using Sobel gradients computed by
+      * {@link #sobelGradients(byte[], int, int, int[], int, int)}.  The
+      * result is identical to that of
+      * {@link #sobelEnhance(int[], int[], int[], int, int, int, int)} for the
+      * same pixels.
+      * @param src An array containing the monochrome source pixels, each an
+      * unsigned byte.
+      * @param offset The index of the top-left pixel in <code>src</code>.
+      * @param stride The distance between the first pixels of consecutive
+      * rows in <code>src</code>.
+      * @param grad The packed gradients of the source pixels, <code>w</code>
+      * per row.
+      * @param dest An array to receive the monochrome destination pixels,
+      * <code>w</code> per row.
+      * @param w The width of the image, in pixels.
+      * @param h The height of the image, in pixels.
+      * @param thresh The threshold for edge detection, in the range of 0-255.
+      * @param intensity The intensity of the edge enhancement (0-255).
+      */
+	public static final void sobelEnhance(
+		byte[]src,
+		int offset,
+		int stride,
+		int[]grad,
+		byte[]dest,
+		int w,
+		int h,
+		int thresh,
+		int intensity) {
+
+		sobelEnhance(src, offset, stride, grad, dest, w, h, thresh, intensity, 0, h);
+	}
+
+	/**
+      * Perform edge enhancement on a horizontal band of an image stored as
+      * one unsigned byte per pixel, using precomputed Sobel gradients.
+      * Several threads may enhance disjoint bands of the same image
+      * concurrently.
+      * @param src An array containing the monochrome source pixels, each an
+      * unsigned byte.
+      * @param offset The index of the top-left pixel in <code>src</code>.
+      * @param stride The distance between the first pixels of consecutive
+      * rows in <code>src</code>.
+      * @param grad The packed gradients of the source pixels, <code>w</code>
+      * per row.
+      * @param dest An array to receive the monochrome destination pixels,
+      * <code>w</code> per row.
+      * @param w The width of the image, in pixels.
+      * @param h The height of the image, in pixels.
+      * @param thresh The threshold for edge detection, in the range of 0-255.
+      * @param intensity The intensity of the edge enhancement (0-255).
+      * @param firstRow The first row of the band (inclusive).
+      * @param endRow The end row of the band (exclusive).
+      */
+	public static final void sobelEnhance(
+		byte[]src,
+		int offset,
+		int stride,
+		int[]grad,
+		byte[]dest,
+		int w,
+		int h,
+		int thresh,
+		int intensity,
+		int firstRow,
+		int endRow) {
+
+		thresh *= thresh;
+		int hMinus1 = h - 1;
+		for (int y = firstRow; y < endRow; y++) {
+			int srcIdx = offset + (y * stride), destIdx = y * w;
+			if ((y == 0) || (y == hMinus1)) {
+				System.arraycopy(src, srcIdx, dest, destIdx, w);
+			} else {
+				enhanceRow(src, srcIdx, dest, destIdx, w, grad, thresh, intensity);
+			}
+		}
+	}
+
+	// Enhance one interior row of a byte-per-pixel image, given the packed
+	// gradient of each pixel x of the row at grad[destIdx + x].  thresh is
+	// already squared.
+	private static final void enhanceRow(
+		byte[]src,
+		int srcIdx,
+		byte[]dest,
+		int destIdx,
+		int w,
+		int[]grad,
+		int thresh,
+		int intensity) {
+
+		int wMinus1 = w - 1;
+		int sx, sy, pix;
+		dest[destIdx] = src[srcIdx];
+		int firstIdx = srcIdx + 1;
+		int delta = destIdx - srcIdx;
+		boolean foundEdge = false;
+		boolean isWhite = false;
+		int idx = firstIdx;
+		for (int x = 1; x < wMinus1; x++, idx++) {
+			int g = grad[destIdx + x];
+			sx = gradientX(g);
+			sy = gradientY(g);
+			if (((sx * sx) + (sy * sy)) >= thresh) {
+				if (!foundEdge) {
 					foundEdge = true;
+					// The pixels before the first edge are enhanced with
+					// the sense of the first edge.
 					isWhite = ((sx + sy) > 0);
+					int back = isWhite ? -intensity : intensity;
+					for (int idx2 = firstIdx; idx2 < idx; idx2++) {
+						pix = (src[idx2] & 0xff) + back;
+						if (pix < 0) pix = 0; else if (pix > 255) pix = 255;
+						dest[idx2 + delta] = (byte)pix;
+					}
 				}
-				if (foundEdge) {
-					if (!prevFoundEdge) {
-						prevFoundEdge = true;
-						for (int idx2 = thisLineStartIdx; idx2 < idx;
-							 idx2++) {
-							if (!isWhite) {
-								pix = src[idx2] + intensity;
-							} else {
-								pix = src[idx2] - intensity;
-							}
-							if (pix < 0) pix = 0; else if (pix > 255) pix = 255;
-							dest[idx2] = pix;
-						}
+				isWhite = ((sx + sy) > 0);
+			}
+			if (foundEdge) {
+				pix = isWhite ? ((src[idx] & 0xff) + intensity) : ((src[idx] & 0xff) - intensity);
+				if (pix < 0) pix = 0; else if (pix > 255) pix = 255;
+				dest[idx + delta] = (byte)pix;
+			} else {
+				dest[idx + delta] = src[idx];
+			}
+		}
+		if (w > 1) dest[idx + delta] = src[idx];
+	}
+
+	/**
+      * Compute the Sobel gradients of a single pixel of an image stored as
+      * one unsigned byte per pixel, packed into one <code>int</code>.
+      * @param src An array containing the monochrome source pixels, each an
+      * unsigned byte.
+      * @param offset The index of the top-left pixel in <code>src</code>.
+      * @param stride The distance between the first pixels of consecutive
+      * rows in <code>src</code>.
+      * @param w The width of the image, in pixels.
+      * @param h The height of the image, in pixels.
+      * @param x The x coordinate of the pixel.
+      * @param y The y coordinate of the pixel.
+      * @return The packed gradients, which are never zero.  Pixels on the
+      * border of the image have zero gradients.
+      */
+	public static final int sobelGradient
+		(byte[]src, int offset, int stride, int w, int h, int x, int y) {
+
+		if ((x <= 0) || (y <= 0) || (x >= (w - 1)) || (y >= (h - 1))) {
+			return packGradient(0, 0);
+		}
+		int idx1 = offset + (y * stride) + x;
+		int idx0 = idx1 - stride, idx2 = idx1 + stride;
+		int ul = src[idx0 - 1] & 0xff, u = src[idx0] & 0xff, ur = src[idx0 + 1] & 0xff;
+		int l = src[idx1 - 1] & 0xff, r = src[idx1 + 1] & 0xff;
+		int dl = src[idx2 - 1] & 0xff, d = src[idx2] & 0xff, dr = src[idx2 + 1] & 0xff;
+		return packGradient(
+			(ur - ul) + ((r - l) << 1) + (dr - dl),
+			(dl - ul) + ((d - u) << 1) + (dr - ur));
+	}
+
+	/**
+      * Compute the Sobel gradients of a single pixel, packed into one
+      * <code>int</code>.  The packed value is never zero, so zero can be used
+      * to mark gradients which have not been computed yet.
+      * @param src An array containing the monochrome source pixels.  Each
+      * element in this array should be in the range of 0-255.
+      * @param w The width of the image, in pixels.
+      * @param h The height of the image, in pixels.
+      * @param x The x coordinate of the pixel.
+      * @param y The y coordinate of the pixel.
+      * @return The packed gradients; see {@link #gradientX(int)} and
+      * {@link #gradientY(int)}.  Pixels on the border of the image have
+      * zero gradients.
+      */
+	public static final int sobelGradient(int[]src, int w, int h, int x, int y) {
+		if ((x <= 0) || (y <= 0) || (x >= (w - 1)) || (y >= (h - 1))) {
+			return packGradient(0, 0);
+		}
+		int idx1 = y * w;
+		int idx0 = idx1 - w, idx2 = idx1 + w;
+		int ul = src[idx0 + x - 1], u = src[idx0 + x], ur = src[idx0 + x + 1];
+		int l = src[idx1 + x - 1], r = src[idx1 + x + 1];
+		int dl = src[idx2 + x - 1], d = src[idx2 + x], dr = src[idx2 + x + 1];
+		return packGradient(
+			(ur - ul) + ((r - l) << 1) + (dr - dl),
+			(dl - ul) + ((d - u) << 1) + (dr - ur));
+	}
+
+	/**
+      * Pack a pair of Sobel gradients into one <code>int</code>.  Each
+      * gradient is clamped to the range -2047..2047, which holds every
+      * gradient of pixels in the range 0-255.
+      * @param sx The horizontal gradient.
+      * @param sy The vertical gradient.
+      * @return The packed gradients, which are never zero.
+      */
+	public static final int packGradient(int sx, int sy) {
+		if (sx < -2047) sx = -2047; else if (sx > 2047) sx = 2047;
+		if (sy < -2047) sy = -2047; else if (sy > 2047) sy = 2047;
+		return ((sx + 2048) << 12) | (sy + 2048);
+	}
+
+	/**
+      * @param packed Gradients packed by {@link #packGradient(int, int)}.
+      * @return The horizontal gradient.
+      */
+	public static final int gradientX(int packed) {
+		return (packed >> 12) - 2048;
+	}
+
+	/**
+      * @param packed Gradients packed by {@link #packGradient(int, int)}.
+      * @return The vertical gradient.
+      */
+	public static final int gradientY(int packed) {
+		return (packed & 0xfff) - 2048;
+	}
+
+	/**
+      * Perform edge enhancement along a line of pixels, using their
+      * precomputed Sobel gradients.  This applies the same rule as
+      * {@link #sobelEnhance(int[], int[], int, int, int, int)}, except that
+      * edges are carried along the line instead of along the image row, so
+      * it can be applied to the pixels of a vertical or diagonal scan line
+      * without enhancing the rest of the image.  Only for a whole image row
+      * is the result the same as that of whole-image enhancement; along any
+      * other line the enhanced pixels differ wherever the last edge before
+      * a pixel in its row is not the last edge before it on the line.
+      * @param line On entry, the monochrome pixels of the line; on exit,
+      * the enhanced pixels.
+      * @param grad The packed gradients of the pixels of the line.
+      * @param n The number of pixels in the line.
+      * @param thresh The threshold for edge detection, in the range of 0-255.
+      * @param intensity The intensity of the edge enhancement (0-255).
+      */
+	public static final void sobelEnhanceLine
+		(int[]line, int[]grad, int n, int thresh, int intensity) {
+
+		thresh *= thresh;
+		boolean foundEdge = false;
+		boolean isWhite = false;
+		int pix;
+		for (int i = 0; i < n; i++) {
+			int g = grad[i];
+			int sx = gradientX(g), sy = gradientY(g);
+			if (((sx * sx) + (sy * sy)) >= thresh) {
+				if (!foundEdge) {
+					foundEdge = true;
+					// Enhance the pixels before the first edge with the
+					// opposite sense.
+					int back = ((sx + sy) > 0) ? -intensity : intensity;
+					for (int j = 0; j < i; j++) {
+						pix = line[j] + back;
+						if (pix < 0) pix = 0; else if (pix > 255) pix = 255;
+						line[j] = pix;
 					}
-					if (isWhite) {
-						pix = src[idx] + intensity;
-					} else {
-						pix = src[idx] - intensity;
+				}
+				isWhite = ((sx + sy) > 0);
+			}
+			if (foundEdge) {
+				pix = isWhite ? (line[i] + intensity) : (line[i] - intensity);
+				if (pix < 0) pix = 0; else if (pix > 255) pix = 255;
+				line[i] = pix;
+			}
+		}
+	}
+
+	/**
+      * Reduce packed Sobel gradients to what edge enhancement needs of them:
+      * the magnitude of the gradient, rounded down, shifted left one bit,
+      * with the low bit set if the pixel is on the light side of an edge
+      * (<code>sx + sy &gt; 0</code>).  The magnitude is at least a threshold
+      * <code>t</code> exactly when <code>sx * sx + sy * sy &gt;= t * t</code>.
+      * @param packed Gradients packed by {@link #packGradient(int, int)}.
+      * @return The edge strength.
+      */
+	public static final short edgeStrength(int packed) {
+		int sx = gradientX(packed), sy = gradientY(packed);
+		int magnitude = (int)Math.sqrt((double)((sx * sx) + (sy * sy)));
+		return (short)((magnitude << 1) | (((sx + sy) > 0) ? 1 : 0));
+	}
+
+	/**
+      * Compute the edge strengths (see {@link #edgeStrength(int)}) of the
+      * pixels along a straight line of an image stored as one unsigned byte
+      * per pixel.  This gives the same values as computing the gradients of
+      * each pixel with {@link #sobelGradient(byte[], int, int, int, int, int, int)}
+      * and reducing them, in one pass.
+      * @param src An array containing the monochrome source pixels, each an
+      * unsigned byte.
+      * @param offset The index of the top-left pixel in <code>src</code>.
+      * @param stride The distance between the first pixels of consecutive
+      * rows in <code>src</code>.
+      * @param w The width of the image, in pixels.
+      * @param h The height of the image, in pixels.
+      * @param x The x coordinate of the first pixel of the line.
+      * @param y The y coordinate of the first pixel of the line.
+      * @param dx The step in x from one pixel of the line to the next.
+      * @param dy The step in y from one pixel of the line to the next.
+      * @param edges The array to store the edge strengths in.
+      * @param n The number of pixels in the line.
+      */
+	public static final void sobelEdgeStrengths(
+		byte[] src,
+		int offset,
+		int stride,
+		int w,
+		int h,
+		int x,
+		int y,
+		int dx,
+		int dy,
+		short[] edges,
+		int n) {
+
+		int idx = offset + (y * stride) + x, step = (dy * stride) + dx;
+		for (int i = 0; i < n; i++, x += dx, y += dy, idx += step) {
+			if ((x <= 0) || (y <= 0) || (x >= (w - 1)) || (y >= (h - 1))) {
+				edges[i] = 0;
+				continue;
+			}
+			int idx0 = idx - stride, idx2 = idx + stride;
+			// The gradients of byte pixels never reach the clamp of
+			// packGradient(), so they are used as they are.
+			int urdl = (src[idx0 + 1] & 0xff) - (src[idx2 - 1] & 0xff);
+			int drul = (src[idx2 + 1] & 0xff) - (src[idx0 - 1] & 0xff);
+			int sx = urdl + drul + (((src[idx + 1] & 0xff) - (src[idx - 1] & 0xff)) << 1);
+			int sy = (drul - urdl) + (((src[idx2] & 0xff) - (src[idx0] & 0xff)) << 1);
+			int magnitude = (int)Math.sqrt((double)((sx * sx) + (sy * sy)));
+			edges[i] = (short)((magnitude << 1) | (((sx + sy) > 0) ? 1 : 0));
+		}
+	}
+
+	/**
+      * Perform edge enhancement along a line of pixels, like
+      * {@link #sobelEnhanceLine(int[], int[], int, int, int)}, given the
+      * edge strengths of the pixels rather than their gradients.  Computing
+      * the edge strengths once lets a line be enhanced at several
+      * thresholds and intensities cheaply.
+      * @param line On entry, the monochrome pixels of the line; on exit,
+      * the enhanced pixels.
+      * @param edges The edge strengths of the pixels of the line; see
+      * {@link #edgeStrength(int)}.
+      * @param n The number of pixels in the line.
+      * @param thresh The threshold for edge detection, in the range of 0-255.
+      * @param intensity The intensity of the edge enhancement (0-255).
+      */
+	public static final void sobelEnhanceLine
+		(int[]line, short[]edges, int n, int thresh, int intensity) {
+
+		boolean foundEdge = false;
+		boolean isWhite = false;
+		int pix;
+		for (int i = 0; i < n; i++) {
+			int e = edges[i];
+			if ((e >> 1) >= thresh) {
+				if (!foundEdge) {
+					foundEdge = true;
+					// Enhance the pixels before the first edge with the
+					// opposite sense.
+					int back = ((e & 1) != 0) ? -intensity : intensity;
+					for (int j = 0; j < i; j++) {
+						pix = line[j] + back;
+						if (pix < 0) pix = 0; else if (pix > 255) pix = 255;
+						line[j] = pix;
 					}
-					if (pix < 0) pix = 0; else if (pix > 255) pix = 255;
-					dest[idx] = pix;
-				} else {
-					dest[idx] = src[idx];
 				}
+				isWhite = ((e & 1) != 0);
+			}
+			if (foundEdge) {
+				pix = isWhite ? (line[i] + intensity) : (line[i] - intensity);
+				if (pix < 0) pix = 0; else if (pix > 255) pix = 255;
+				line[i] = pix;
 			}
-			dest[idx] = src[idx];
 		}
 	}
 
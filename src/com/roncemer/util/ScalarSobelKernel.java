@@ -0,0 +1,43 @@
+// ScalarSobelKernel.java
+// Copyright (c) 2002-2010 Ronald B. Cemer
+// All rights reserved.
+// This software is released under the BSD license.
+// Please see the accompanying LICENSE.txt for details.
+
+package com.roncemer.util;
+
+/**
+  * Plain Java Sobel kernel.  Used when the Vector API is not available.
+  *
+  * @author Ronald B. Cemer
+  */
+final class ScalarSobelKernel implements SobelKernel {
+	public void gradients(int[] src, int w, int y, int[] sx, int[] sy) {
+		int idx1 = y * w;
+		int idx0 = idx1 - w, idx2 = idx1 + w;
+		int wMinus1 = w - 1;
+		for (int x = 1; x < wMinus1; x++) {
+			int ul = src[idx0 + x - 1], u = src[idx0 + x], ur = src[idx0 + x + 1];
+			int l = src[idx1 + x - 1], r = src[idx1 + x + 1];
+			int dl = src[idx2 + x - 1], d = src[idx2 + x], dr = src[idx2 + x + 1];
+			//    -1  0  1          -1 -2 -1
+			// sx -2  0  2       sy  0  0  0
+			//    -1  0  1           1  2  1
+			sx[x] = (ur - ul) + ((r - l) << 1) + (dr - dl);
+			sy[x] = (dl - ul) + ((d - u) << 1) + (dr - ur);
+		}
+	}
+
+	public void gradients(byte[] src, int rowIdx, int stride, int w, int[] sx, int[] sy) {
+		int idx1 = rowIdx;
+		int idx0 = idx1 - stride, idx2 = idx1 + stride;
+		int wMinus1 = w - 1;
+		for (int x = 1; x < wMinus1; x++) {
+			int ul = src[idx0 + x - 1] & 0xff, u = src[idx0 + x] & 0xff, ur = src[idx0 + x + 1] & 0xff;
+			int l = src[idx1 + x - 1] & 0xff, r = src[idx1 + x + 1] & 0xff;
+			int dl = src[idx2 + x - 1] & 0xff, d = src[idx2 + x] & 0xff, dr = src[idx2 + x + 1] & 0xff;
+			sx[x] = (ur - ul) + ((r - l) << 1) + (dr - dl);
+			sy[x] = (dl - ul) + ((d - u) << 1) + (dr - ur);
+		}
+	}
+}
@@ -0,0 +1,43 @@
+// SobelKernel.java
+// Copyright (c) 2002-2010 Ronald B. Cemer
+// All rights reserved.
+// This software is released under the BSD license.
+// Please see the accompanying LICENSE.txt for details.
+
+package com.roncemer.util;
+
+/**
+  * Computes the Sobel gradients of one row of an image.  The Sobel
+  * coefficients are built into the implementations, which all produce
+  * identical results.
+  *
+  * @author Ronald B. Cemer
+  */
+interface SobelKernel {
+	/**
+      * Compute the horizontal and vertical Sobel gradients of the interior
+      * pixels of a row.
+      * @param src An array containing the monochrome source pixels.
+      * @param w The width of the image, in pixels.
+      * @param y The row, from 1 to the height of the image minus 2.
+      * @param sx Receives the horizontal gradient of each pixel
+      * <code>x</code> from 1 to <code>w - 2</code>, at index <code>x</code>.
+      * @param sy Receives the vertical gradient of each pixel, likewise.
+      */
+	public void gradients(int[] src, int w, int y, int[] sx, int[] sy);
+
+	/**
+      * Compute the horizontal and vertical Sobel gradients of the interior
+      * pixels of a row of an image stored as one unsigned byte per pixel.
+      * @param src An array containing the monochrome source pixels.
+      * @param rowIdx The index in <code>src</code> of the first pixel of the
+      * row, which must not be the first or last row of the image.
+      * @param stride The distance between the first pixels of consecutive
+      * rows.
+      * @param w The width of the image, in pixels.
+      * @param sx Receives the horizontal gradient of each pixel
+      * <code>x</code> from 1 to <code>w - 2</code>, at index <code>x</code>.
+      * @param sy Receives the vertical gradient of each pixel, likewise.
+      */
+	public void gradients(byte[] src, int rowIdx, int stride, int w, int[] sx, int[] sy);
+}
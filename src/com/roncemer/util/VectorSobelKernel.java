@@ -0,0 +1,109 @@
+// VectorSobelKernel.java
+// Copyright (c) 2002-2010 Ronald B. Cemer
+// All rights reserved.
+// This software is released under the BSD license.
+// Please see the accompanying LICENSE.txt for details.
+
+package com.roncemer.util;
+
+import jdk.incubator.vector.*;
+
+/**
+  * SIMD Sobel kernel built on the <code>jdk.incubator.vector</code> API.
+  * This class is only loaded if the JVM was started with
+  * <code>--add-modules jdk.incubator.vector</code>; otherwise
+  * <code>ImageUtils</code> falls back to <code>ScalarSobelKernel</code>.
+  *
+  * @author Ronald B. Cemer
+  */
+final class VectorSobelKernel implements SobelKernel {
+	private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+	// Byte species with as many lanes as SPECIES, for loading unsigned byte
+	// pixels, or null if the platform has no vector shape that small.
+	private static final VectorSpecies<Byte> BYTE_SPECIES = byteSpecies();
+
+	private static VectorSpecies<Byte> byteSpecies() {
+		try {
+			return VectorSpecies.of(byte.class, VectorShape.forBitSize(SPECIES.length() * 8));
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
+
+	// Load unsigned byte pixels, widened to int lanes.
+	private static IntVector load(byte[] src, int idx) {
+		return ((IntVector)ByteVector.fromArray(BYTE_SPECIES, src, idx)
+			.convertShape(VectorOperators.B2I, SPECIES, 0))
+			.lanewise(VectorOperators.AND, 0xff);
+	}
+
+	public void gradients(int[] src, int w, int y, int[] sx, int[] sy) {
+		int idx1 = y * w;
+		int idx0 = idx1 - w, idx2 = idx1 + w;
+		int wMinus1 = w - 1;
+		int lanes = SPECIES.length();
+		int x = 1;
+		for (; (x + lanes) <= wMinus1; x += lanes) {
+			IntVector ul = IntVector.fromArray(SPECIES, src, idx0 + x - 1);
+			IntVector u = IntVector.fromArray(SPECIES, src, idx0 + x);
+			IntVector ur = IntVector.fromArray(SPECIES, src, idx0 + x + 1);
+			IntVector l = IntVector.fromArray(SPECIES, src, idx1 + x - 1);
+			IntVector r = IntVector.fromArray(SPECIES, src, idx1 + x + 1);
+			IntVector dl = IntVector.fromArray(SPECIES, src, idx2 + x - 1);
+			IntVector d = IntVector.fromArray(SPECIES, src, idx2 + x);
+			IntVector dr = IntVector.fromArray(SPECIES, src, idx2 + x + 1);
+			ur.sub(ul)
+				.add(r.sub(l).lanewise(VectorOperators.LSHL, 1))
+				.add(dr.sub(dl))
+				.intoArray(sx, x);
+			dl.sub(ul)
+				.add(d.sub(u).lanewise(VectorOperators.LSHL, 1))
+				.add(dr.sub(ur))
+				.intoArray(sy, x);
+		}
+		for (; x < wMinus1; x++) {
+			// Scalar tail.
+			int ul = src[idx0 + x - 1], u = src[idx0 + x], ur = src[idx0 + x + 1];
+			int l = src[idx1 + x - 1], r = src[idx1 + x + 1];
+			int dl = src[idx2 + x - 1], d = src[idx2 + x], dr = src[idx2 + x + 1];
+			sx[x] = (ur - ul) + ((r - l) << 1) + (dr - dl);
+			sy[x] = (dl - ul) + ((d - u) << 1) + (dr - ur);
+		}
+	}
+
+	public void gradients(byte[] src, int rowIdx, int stride, int w, int[] sx, int[] sy) {
+		int idx1 = rowIdx;
+		int idx0 = idx1 - stride, idx2 = idx1 + stride;
+		int wMinus1 = w - 1;
+		int x = 1;
+		if (BYTE_SPECIES != null) {
+			int lanes = SPECIES.length();
+			for (; (x + lanes) <= wMinus1; x += lanes) {
+				IntVector ul = load(src, idx0 + x - 1);
+				IntVector u = load(src, idx0 + x);
+				IntVector ur = load(src, idx0 + x + 1);
+				IntVector l = load(src, idx1 + x - 1);
+				IntVector r = load(src, idx1 + x + 1);
+				IntVector dl = load(src, idx2 + x - 1);
+				IntVector d = load(src, idx2 + x);
+				IntVector dr = load(src, idx2 + x + 1);
+				ur.sub(ul)
+					.add(r.sub(l).lanewise(VectorOperators.LSHL, 1))
+					.add(dr.sub(dl))
+					.intoArray(sx, x);
+				dl.sub(ul)
+					.add(d.sub(u).lanewise(VectorOperators.LSHL, 1))
+					.add(dr.sub(ur))
+					.intoArray(sy, x);
+			}
+		}
+		for (; x < wMinus1; x++) {
+			// Scalar tail.
+			int ul = src[idx0 + x - 1] & 0xff, u = src[idx0 + x] & 0xff, ur = src[idx0 + x + 1] & 0xff;
+			int l = src[idx1 + x - 1] & 0xff, r = src[idx1 + x + 1] & 0xff;
+			int dl = src[idx2 + x - 1] & 0xff, d = src[idx2 + x] & 0xff, dr = src[idx2 + x + 1] & 0xff;
+			sx[x] = (ur - ul) + ((r - l) << 1) + (dr - dl);
+			sy[x] = (dl - ul) + ((d - u) << 1) + (dr - ur);
+		}
+	}
+}